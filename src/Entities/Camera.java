@@ -1,7 +1,7 @@
 package Entities;
 
 import RenderEngine.DisplayManager;
-import Terrains.Terrain;
+import Terrains.TerrainGrid;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
 import org.lwjgl.opengl.Display;
@@ -37,7 +37,7 @@ public class Camera {
     public Camera() { }
 
     // Based on given keyboard inputs, move the camera
-    public void move(Terrain terrain) {
+    public void move(TerrainGrid terrain) {
 
         // Change in the mouse cursor position since the last frame
         float dx = Mouse.getDX() / HORIZONTAL_SENSITIVITY;
@@ -61,7 +61,7 @@ public class Camera {
         position.y += currentUpwardsSpeed * delta;
 
         // Get the terrain height at the updated camera position
-        float terrainHeight = terrain.getHeightOfTerrain(position.x, position.z) + PLAYER_HEIGHT;
+        float terrainHeight = terrain.getHeight(position.x, position.z) + PLAYER_HEIGHT;
 
         // Collision detection with the terrain at this position in the world
         if(position.y < terrainHeight) {
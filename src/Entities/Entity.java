@@ -1,111 +1,150 @@
 package Entities;
 
 import Models.TexturedModel;
+import RenderEngine.RenderQueue;
 import org.lwjgl.util.vector.Vector3f;
 
+import java.nio.FloatBuffer;
+
+/*
+    Something placed in the world with a model. The entity itself is only a handle into the shared EntityStore, which
+    keeps its model, atlas index, position, rotation, scale & transformation matrix together with every other
+    entity's, in dense arrays the per frame systems walk in order. Game code can keep using entities as objects.
+ */
 public class Entity {
 
-    // Properties of an entity
-    private TexturedModel model; // A texture for this entity
-    private Vector3f position; // Position in the world
-    private float rotX, rotY, rotZ; // Rotation variables
-    private float scale; // Scale is how large this entity will be
+    private static final EntityStore store = new EntityStore();
+
+    private final long handle; // Into the entity store, stale once the entity is destroyed
+    private final Vector3f position = new Vector3f(); // Returned by getPosition(), a copy of what's in the store
 
-    private int textureIndex = 0; // Index into the texture atlas for an entity
+    // Where the entity is in the render queue it was added to, if any (kept up to date by the queue)
+    private RenderQueue renderQueue;
+    private int renderBatch = -1;
+    private int renderSlot = -1;
 
     public Entity(TexturedModel model, Vector3f position, float rotX, float rotY, float rotZ, float scale) {
-        this.model = model;
-        this.position = position;
-        this.rotX = rotX;
-        this.rotY = rotY;
-        this.rotZ = rotZ;
-        this.scale = scale;
+        this(model, 0, position, rotX, rotY, rotZ, scale);
     }
 
     // Constructor with a texture index for entities using texture atlases
     public Entity(TexturedModel model, int index, Vector3f position, float rotX, float rotY, float rotZ, float scale) {
-        this.model = model;
-        this.position = position;
-        this.rotX = rotX;
-        this.rotY = rotY;
-        this.rotZ = rotZ;
-        this.scale = scale;
-        this.textureIndex = index;
+        this.handle = store.create(model, index, position.x, position.y, position.z, rotX, rotY, rotZ, scale);
+    }
+
+    // Take the entity out of the store, once it's no longer needed; it mustn't be used afterwards
+    public void destroy() {
+        if(renderQueue != null) {
+            renderQueue.remove(this);
+        }
+        store.destroy(handle);
     }
 
     // Based on given params, increase the position vector
     public void increasePosition(float dx, float dy, float dz) {
-        this.position.x += dx;
-        this.position.y += dy;
-        this.position.z += dz;
+        store.getTransforms().translate(getSlot(), dx, dy, dz);
     }
 
     // Based on the given params, increase the rotation properties of this entity
     public void increaseRotation(float rx, float ry, float rz) {
-        this.rotX += rx;
-        this.rotY += ry;
-        this.rotZ += rz;
+        store.getTransforms().rotate(getSlot(), rx, ry, rz);
+    }
+
+    // Append the entity's transformation matrix (column major) to an upload buffer
+    public void storeTransformationMatrix(FloatBuffer buffer) {
+        store.getTransforms().storeWorldMatrix(getSlot(), buffer);
     }
 
     // Returns the offset into the texture atlas which will be used to calculate new texture coordinates
     public float getTextureXOffset() {
-        int column = textureIndex % model.getTexture().getNumberOfRows();
+        TexturedModel model = getModel();
+        int column = store.getAtlasIndex(handle) % model.getTexture().getNumberOfRows();
         return (float) column / (float) model.getTexture().getNumberOfRows();
     }
 
     public float getTextureYOffset() {
-        int row = textureIndex / model.getTexture().getNumberOfRows();
+        TexturedModel model = getModel();
+        int row = store.getAtlasIndex(handle) / model.getTexture().getNumberOfRows();
         return (float) row / (float) model.getTexture().getNumberOfRows();
     }
 
     // Getters
     public TexturedModel getModel() {
-        return model;
+        return store.getModel(handle);
     }
 
+    // A copy, changing it doesn't move the entity; use setPosition() or increasePosition() for that
     public Vector3f getPosition() {
+        int slot = getSlot();
+        TransformStore transforms = store.getTransforms();
+        position.set(transforms.getX(slot), transforms.getY(slot), transforms.getZ(slot));
         return position;
     }
 
     public float getRotX() {
-        return rotX;
+        return store.getTransforms().getRotX(getSlot());
     }
 
     public float getRotY() {
-        return rotY;
+        return store.getTransforms().getRotY(getSlot());
     }
 
     public float getRotZ() {
-        return rotZ;
+        return store.getTransforms().getRotZ(getSlot());
     }
 
     public float getScale() {
-        return scale;
+        return store.getTransforms().getScale(getSlot());
     }
 
+    public long getHandle() { return handle; }
+
+    // Where the entity's components are in the store right now, they move when other entities are destroyed
+    public int getSlot() { return store.getSlot(handle); }
+
+    public boolean isVisible() { return store.isVisible(handle); } // As of the store's last cull()
+
+    public static EntityStore getStore() { return store; }
+
+    public RenderQueue getRenderQueue() { return renderQueue; }
+
+    public int getRenderBatch() { return renderBatch; }
+
+    public int getRenderSlot() { return renderSlot; }
+
 
     // Setters
     public void setModel(TexturedModel model) {
-        this.model = model;
+        store.setModel(handle, model);
+        if(renderQueue != null) {
+            renderQueue.modelChanged(this); // Moves it to the batch of its new model
+        }
     }
 
     public void setPosition(Vector3f position) {
-        this.position = position;
+        store.getTransforms().setPosition(getSlot(), position.x, position.y, position.z);
     }
 
     public void setRotX(float rotX) {
-        this.rotX = rotX;
+        store.getTransforms().setRotation(getSlot(), rotX, getRotY(), getRotZ());
     }
 
     public void setRotY(float rotY) {
-        this.rotY = rotY;
+        store.getTransforms().setRotation(getSlot(), getRotX(), rotY, getRotZ());
     }
 
     public void setRotZ(float rotZ) {
-        this.rotZ = rotZ;
+        store.getTransforms().setRotation(getSlot(), getRotX(), getRotY(), rotZ);
     }
 
     public void setScale(float scale) {
-        this.scale = scale;
+        store.getTransforms().setScale(getSlot(), scale);
+    }
+
+    public void setRenderQueue(RenderQueue renderQueue) { this.renderQueue = renderQueue; }
+
+    public void setRenderSlot(int renderBatch, int renderSlot) {
+        this.renderBatch = renderBatch;
+        this.renderSlot = renderSlot;
     }
 }
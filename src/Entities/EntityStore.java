@@ -0,0 +1,231 @@
+package Entities;
+
+import Models.BoundingVolume;
+import Models.RawModel;
+import Models.TexturedModel;
+import Tools.Frustum;
+
+import java.util.Arrays;
+
+/*
+    Every entity in the world, stored as components in dense arrays instead of one object per entity:
+        transform    position, rotation, scale & world matrix (the TransformStore)
+        renderable   the textured model it's drawn with
+        atlas index  which cell of its texture atlas it uses
+        bounds       its bounding sphere in world space, (x, y, z, radius)
+
+    An entity is named by a handle, which stays valid for as long as the entity lives. The components of the entities
+    are packed into slots 0 to getEntityCount() - 1 with no holes, so the systems below (transforms, bounds, culling)
+    walk contiguous memory; removing an entity moves the last one into its slot. Handles are looked up through a slot
+    map: a handle is an index into it (in the low 32 bits) with a generation (in the high 32 bits). An index is
+    reused once its entity is gone, but its generation goes up, so a handle kept after its entity was destroyed no
+    longer matches & is caught instead of silently naming whichever entity got the index next.
+
+    Creating, destroying & looking up an entity are all constant time. Code that walks many entities every frame
+    (the RenderQueue & EntityRenderer) keeps their slots instead of resolving each handle, & only looks them up
+    again after getLayoutVersion() has changed, which destroying an entity does.
+ */
+public class EntityStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Slot map, by index (the low half of a handle)
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private int[] slotOfIndex = new int[INITIAL_CAPACITY];
+    private int indexCount = 0; // Indices handed out so far, including freed ones
+    private int[] freeIndices = new int[64];
+    private int freeIndexCount = 0;
+
+    // Components, by slot
+    private final TransformStore transforms = new TransformStore();
+    private TexturedModel[] models = new TexturedModel[INITIAL_CAPACITY];
+    private int[] atlasIndices = new int[INITIAL_CAPACITY];
+    private float[] bounds = new float[INITIAL_CAPACITY * 4];
+    private long[] visible = new long[INITIAL_CAPACITY / 64]; // One bit per slot, filled by cull()
+    private long[] boundsDirty = new long[INITIAL_CAPACITY / 64]; // One bit per slot whose model changed
+    private int[] indexOfSlot = new int[INITIAL_CAPACITY];
+    private int boundsVersion = -1; // RawModel.getBoundsVersion() as of the last update()
+    private int layoutVersion = 0; // Goes up whenever entities move to other slots
+
+    private int capacity = INITIAL_CAPACITY;
+    private int count = 0;
+
+    public long create(TexturedModel model, int atlasIndex, float x, float y, float z, float rx, float ry, float rz,
+                       float scale) {
+        int index;
+        if(freeIndexCount > 0) {
+            index = freeIndices[--freeIndexCount];
+        }
+        else {
+            if(indexCount == generations.length) {
+                generations = Arrays.copyOf(generations, indexCount * 2);
+                slotOfIndex = Arrays.copyOf(slotOfIndex, indexCount * 2);
+            }
+            index = indexCount++;
+        }
+
+        if(count == capacity) {
+            grow();
+        }
+        int slot = transforms.allocate(x, y, z, rx, ry, rz, scale); // Always the next slot, they're both dense
+        models[slot] = model;
+        atlasIndices[slot] = atlasIndex;
+        indexOfSlot[slot] = index;
+        slotOfIndex[index] = slot;
+        count++;
+
+        return ((long) generations[index] << 32) | index;
+    }
+
+    // Destroy an entity, its handle (& any copy of it) is stale from now on
+    public void destroy(long handle) {
+        int slot = getSlot(handle);
+        int index = (int) handle;
+
+        // The last entity moves into the emptied slot
+        int last = transforms.remove(slot);
+        if(slot != last) {
+            models[slot] = models[last];
+            atlasIndices[slot] = atlasIndices[last];
+            System.arraycopy(bounds, last * 4, bounds, slot * 4, 4);
+            indexOfSlot[slot] = indexOfSlot[last];
+            slotOfIndex[indexOfSlot[slot]] = slot;
+            boundsDirty[slot >> 6] |= 1L << slot; // In case the moved entity's model had changed
+        }
+        models[last] = null;
+        boundsDirty[last >> 6] &= ~(1L << last);
+        count--;
+        layoutVersion++;
+
+        generations[index]++;
+        if(freeIndexCount == freeIndices.length) {
+            freeIndices = Arrays.copyOf(freeIndices, freeIndexCount * 2);
+        }
+        freeIndices[freeIndexCount++] = index;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        models = Arrays.copyOf(models, capacity);
+        atlasIndices = Arrays.copyOf(atlasIndices, capacity);
+        bounds = Arrays.copyOf(bounds, capacity * 4);
+        visible = Arrays.copyOf(visible, capacity / 64);
+        boundsDirty = Arrays.copyOf(boundsDirty, capacity / 64);
+        indexOfSlot = Arrays.copyOf(indexOfSlot, capacity);
+    }
+
+    public boolean isAlive(long handle) {
+        int index = (int) handle;
+        return index >= 0 && index < indexCount && generations[index] == (int) (handle >>> 32);
+    }
+
+    // Where an entity's components are right now; only valid until the next entity is destroyed
+    public int getSlot(long handle) {
+        if(!isAlive(handle)) {
+            throw new IllegalStateException("Stale entity handle: " + Long.toHexString(handle));
+        }
+        return slotOfIndex[(int) handle];
+    }
+
+    /*
+        Bring the world matrices of the entities that changed up to date, then their world bounding spheres: the
+        model's sphere centre moved by the world matrix & its radius scaled (scales are uniform). Must be called once
+        a frame before cull().
+
+        Only the spheres of entities that moved or got another model since the last update are redone, unless some
+        model's bounds changed (a placeholder mesh replaced by the real one, which only happens while loading), since
+        any entity could be using it; then all of them are.
+     */
+    public void update() {
+        transforms.updateWorldMatrices();
+
+        int words = (count + 63) >> 6;
+        if(RawModel.getBoundsVersion() != boundsVersion) {
+            boundsVersion = RawModel.getBoundsVersion();
+            for(int slot = 0; slot < count; slot++) {
+                updateBounds(slot);
+            }
+        }
+        else {
+            long[] changed = transforms.getChangedSlots();
+            for(int word = 0; word < words; word++) {
+                long bits = changed[word] | boundsDirty[word];
+                while(bits != 0) {
+                    updateBounds((word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1; // Clear the lowest set bit
+                }
+            }
+        }
+        transforms.clearChangedSlots();
+        Arrays.fill(boundsDirty, 0, words, 0);
+    }
+
+    // A model whose bounds aren't known gets an infinite sphere, so it's never culled
+    private void updateBounds(int slot) {
+        float[] m = transforms.getWorldMatrices();
+        BoundingVolume volume = models[slot].getRawModel().getBounds();
+        int offset = slot * 16;
+        if(volume == null) {
+            bounds[slot * 4] = m[offset + 12];
+            bounds[slot * 4 + 1] = m[offset + 13];
+            bounds[slot * 4 + 2] = m[offset + 14];
+            bounds[slot * 4 + 3] = Float.POSITIVE_INFINITY;
+            return;
+        }
+
+        float x = volume.getCenterX(), y = volume.getCenterY(), z = volume.getCenterZ();
+        bounds[slot * 4] = m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12];
+        bounds[slot * 4 + 1] = m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13];
+        bounds[slot * 4 + 2] = m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14];
+        bounds[slot * 4 + 3] = volume.getRadius() * Math.abs(transforms.getScale(slot));
+    }
+
+    // Work out which entities are inside the frustum (all of them when it's null) in one pass over the bounds
+    public void cull(Frustum frustum) {
+        int words = (count + 63) >> 6;
+        if(frustum == null) {
+            Arrays.fill(visible, 0, words, -1L);
+            return;
+        }
+
+        Arrays.fill(visible, 0, words, 0);
+        for(int slot = 0; slot < count; slot++) {
+            if(frustum.isSphereVisible(bounds[slot * 4], bounds[slot * 4 + 1], bounds[slot * 4 + 2],
+                    bounds[slot * 4 + 3])) {
+                visible[slot >> 6] |= 1L << slot;
+            }
+        }
+    }
+
+    // Getters
+    public boolean isVisible(long handle) { return isVisibleAt(getSlot(handle)); }
+
+    public TexturedModel getModel(long handle) { return models[getSlot(handle)]; }
+
+    public int getAtlasIndex(long handle) { return atlasIndices[getSlot(handle)]; }
+
+    // By slot, for code that keeps slots (see getLayoutVersion()) rather than resolving a handle every time
+    public boolean isVisibleAt(int slot) { return (visible[slot >> 6] & (1L << slot)) != 0; }
+
+    public TexturedModel getModelAt(int slot) { return models[slot]; }
+
+    public int getAtlasIndexAt(int slot) { return atlasIndices[slot]; }
+
+    // Slots looked up before this last changed may now belong to other entities (or none)
+    public int getLayoutVersion() { return layoutVersion; }
+
+    public TransformStore getTransforms() { return transforms; } // By slot, see getSlot()
+
+    public float[] getBounds() { return bounds; } // By slot, 4 floats each; replaced when the store grows
+
+    public int getEntityCount() { return count; }
+
+    // Setters
+    public void setModel(long handle, TexturedModel model) {
+        int slot = getSlot(handle);
+        models[slot] = model;
+        boundsDirty[slot >> 6] |= 1L << slot;
+    }
+
+    public void setAtlasIndex(long handle, int atlasIndex) { atlasIndices[getSlot(handle)] = atlasIndex; }
+}
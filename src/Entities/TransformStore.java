@@ -0,0 +1,212 @@
+package Entities;
+
+import Tools.MatrixMath;
+import Tools.WorldMatrixKernel;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/*
+    The positions, rotations & scales of entities, and the world (transformation) matrices made from them, kept as
+    structure of arrays: every property of every entity in one flat float array, indexed by the entity's slot. Nothing
+    is allocated per entity or per frame, and walking the matrices of many entities reads memory in order.
+
+    The slots are kept dense, 0 to getTransformCount() - 1 with no holes: removing a slot moves the last one into it.
+    So a slot isn't a stable name for an entity, the EntityStore keeps track of which entity is in which slot.
+
+    A world matrix is only recomputed when its entity has moved, turned or been scaled since it was last computed; a
+    dirty bit per slot says which ones have. updateWorldMatrices() brings all of them up to date at once (once per
+    frame, before anything reads them), and reading a single matrix brings just that one up to date.
+
+    updateWorldMatrices() walks the dirty bits as runs of consecutive slots that changed, however they fall across
+    the 64 bit words, and hands each run to the batch kernel in one call (see WorldMatrixKernel), so every changed
+    matrix goes through it: a run can be a single slot or thousands of them.
+
+    A second bit per slot records every change until clearChangedSlots(), whether or not the matrix has been
+    recomputed since, for whoever keeps something else derived from the transforms (eg. the EntityStore's bounds).
+
+    Matrices are stored column major, 16 floats per slot, which is the layout the shaders & the instance VBO expect,
+    so they're copied straight into an upload buffer.
+ */
+public class TransformStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private float[] positions = new float[INITIAL_CAPACITY * 3]; // x, y, z per slot
+    private float[] rotations = new float[INITIAL_CAPACITY * 3]; // Degrees about x, y, z per slot
+    private float[] scales = new float[INITIAL_CAPACITY];
+    private float[] worldMatrices = new float[INITIAL_CAPACITY * 16];
+    private long[] dirty = new long[INITIAL_CAPACITY / 64]; // One bit per slot
+    private long[] changed = new long[INITIAL_CAPACITY / 64]; // One bit per slot, until clearChangedSlots()
+    private WorldMatrixKernel kernel = WorldMatrixKernel.SCALAR;
+
+    private int capacity = INITIAL_CAPACITY;
+    private int count = 0;
+
+    // A new slot at the end for a transform
+    public int allocate(float x, float y, float z, float rx, float ry, float rz, float scale) {
+        if(count == capacity) {
+            grow();
+        }
+        int slot = count++;
+
+        setPosition(slot, x, y, z);
+        setRotation(slot, rx, ry, rz);
+        setScale(slot, scale);
+        return slot;
+    }
+
+    /*
+        Remove a slot by moving the last slot's transform (& its matrix, up to date or not) into it, returns the slot
+        that was moved, which is no longer in use; the slot itself if it was the last.
+     */
+    public int remove(int slot) {
+        int last = --count;
+        if(slot != last) {
+            System.arraycopy(positions, last * 3, positions, slot * 3, 3);
+            System.arraycopy(rotations, last * 3, rotations, slot * 3, 3);
+            scales[slot] = scales[last];
+            System.arraycopy(worldMatrices, last * 16, worldMatrices, slot * 16, 16);
+            moveBit(dirty, last, slot);
+            moveBit(changed, last, slot);
+        }
+        dirty[last >> 6] &= ~(1L << last);
+        changed[last >> 6] &= ~(1L << last);
+        return last;
+    }
+
+    private static void moveBit(long[] bits, int from, int to) {
+        if((bits[from >> 6] & (1L << from)) != 0) {
+            bits[to >> 6] |= 1L << to;
+        }
+        else {
+            bits[to >> 6] &= ~(1L << to);
+        }
+    }
+
+    private void grow() {
+        capacity *= 2;
+        positions = Arrays.copyOf(positions, capacity * 3);
+        rotations = Arrays.copyOf(rotations, capacity * 3);
+        scales = Arrays.copyOf(scales, capacity);
+        worldMatrices = Arrays.copyOf(worldMatrices, capacity * 16);
+        dirty = Arrays.copyOf(dirty, capacity / 64);
+        changed = Arrays.copyOf(changed, capacity / 64);
+    }
+
+    public void setPosition(int slot, float x, float y, float z) {
+        positions[slot * 3] = x;
+        positions[slot * 3 + 1] = y;
+        positions[slot * 3 + 2] = z;
+        markDirty(slot);
+    }
+
+    public void translate(int slot, float dx, float dy, float dz) {
+        positions[slot * 3] += dx;
+        positions[slot * 3 + 1] += dy;
+        positions[slot * 3 + 2] += dz;
+        markDirty(slot);
+    }
+
+    public void setRotation(int slot, float rx, float ry, float rz) {
+        rotations[slot * 3] = rx;
+        rotations[slot * 3 + 1] = ry;
+        rotations[slot * 3 + 2] = rz;
+        markDirty(slot);
+    }
+
+    public void rotate(int slot, float drx, float dry, float drz) {
+        rotations[slot * 3] += drx;
+        rotations[slot * 3 + 1] += dry;
+        rotations[slot * 3 + 2] += drz;
+        markDirty(slot);
+    }
+
+    public void setScale(int slot, float scale) {
+        scales[slot] = scale;
+        markDirty(slot);
+    }
+
+    private void markDirty(int slot) {
+        dirty[slot >> 6] |= 1L << slot; // Shifts of a long only use the low 6 bits of the slot
+        changed[slot >> 6] |= 1L << slot;
+    }
+
+    // Recompute the world matrix of every slot that changed since its matrix was last computed, a run at a time
+    public void updateWorldMatrices() {
+        int slot = nextSlot(0, true);
+        while(slot < count) {
+            int end = nextSlot(slot, false);
+            kernel.computeWorldMatrices(positions, rotations, scales, worldMatrices, slot, end - slot);
+            slot = nextSlot(end, true);
+        }
+        Arrays.fill(dirty, 0, (count + 63) >> 6, 0);
+    }
+
+    // The first slot from slot on whose dirty bit is the given one, or count if there's none
+    private int nextSlot(int slot, boolean isDirty) {
+        int words = (count + 63) >> 6;
+        int word = slot >> 6;
+        if(word >= words) {
+            return count;
+        }
+
+        long bits = (isDirty ? dirty[word] : ~dirty[word]) & (-1L << slot); // Only the bits from slot on
+        while(bits == 0) {
+            if(++word == words) {
+                return count;
+            }
+            bits = isDirty ? dirty[word] : ~dirty[word];
+        }
+        return Math.min(count, (word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    private void computeWorldMatrix(int slot) {
+        MatrixMath.computeTransformationMatrix(positions[slot * 3], positions[slot * 3 + 1], positions[slot * 3 + 2],
+                rotations[slot * 3], rotations[slot * 3 + 1], rotations[slot * 3 + 2], scales[slot],
+                worldMatrices, slot * 16);
+    }
+
+    // Where a slot's world matrix starts in getWorldMatrices(), after bringing it up to date
+    public int getWorldMatrixOffset(int slot) {
+        long bit = 1L << slot;
+        if((dirty[slot >> 6] & bit) != 0) {
+            computeWorldMatrix(slot);
+            dirty[slot >> 6] &= ~bit;
+        }
+        return slot * 16;
+    }
+
+    public void clearChangedSlots() {
+        Arrays.fill(changed, 0, (count + 63) >> 6, 0);
+    }
+
+    // Append a slot's world matrix to an upload buffer
+    public void storeWorldMatrix(int slot, FloatBuffer buffer) {
+        buffer.put(worldMatrices, getWorldMatrixOffset(slot), 16);
+    }
+
+    // Getters
+    public float getX(int slot) { return positions[slot * 3]; }
+
+    public float getY(int slot) { return positions[slot * 3 + 1]; }
+
+    public float getZ(int slot) { return positions[slot * 3 + 2]; }
+
+    public float getRotX(int slot) { return rotations[slot * 3]; }
+
+    public float getRotY(int slot) { return rotations[slot * 3 + 1]; }
+
+    public float getRotZ(int slot) { return rotations[slot * 3 + 2]; }
+
+    public float getScale(int slot) { return scales[slot]; }
+
+    public float[] getWorldMatrices() { return worldMatrices; } // Read through getWorldMatrixOffset(), replaced when the store grows
+
+    public int getTransformCount() { return count; }
+
+    public long[] getChangedSlots() { return changed; } // One bit per slot, replaced when the store grows
+
+    // Setters
+    public void setWorldMatrixKernel(WorldMatrixKernel kernel) { this.kernel = kernel; }
+}
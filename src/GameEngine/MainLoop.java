@@ -6,7 +6,10 @@ import Entities.Light;
 import Models.TexturedModel;
 import RenderEngine.*;
 import Models.RawModel;
+import Terrains.HeightGenerator;
 import Terrains.Terrain;
+import Terrains.TerrainGrid;
+import Terrains.TerrainPager;
 import Terrains.TerrainTexture;
 import Terrains.TerrainTexturePack;
 import Textures.ModelTexture;
@@ -14,63 +17,62 @@ import Water.WaterFrameBuffers;
 import Water.WaterRenderer;
 import Water.WaterShader;
 import Water.WaterTile;
+import org.lwjgl.input.Keyboard;
 import org.lwjgl.opengl.Display;
-import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.util.vector.Vector3f;
 import org.lwjgl.util.vector.Vector4f;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class MainLoop {
 
-    public static void generateModel(TexturedModel model, List<Entity> entities, Terrain[][] terrains, float scale, int count, int numberOfCols) {
-        Random random = new Random();
-        for(int i = 0; i < count / 2; i++){
-            float x = random.nextFloat() * 800;
-            float z = random.nextFloat() * 800;
-            float y = terrains[0][0].getHeightOfTerrain(x, z);
+    private static final int WORLD_TILES = 64; // Along each side
+    private static final int WORLD_SEED = 1234;
+    private static final float TERRAIN_HYSTERESIS = Terrain.SIZE / 2; // Beyond the view distance before a tile may be evicted
+    private static final long TERRAIN_MEMORY_BUDGET = 32L * 1024 * 1024; // GPU memory the resident tiles may use
+    private static final Vector4f NO_CLIP_PLANE = new Vector4f(0, -1, 0, 100000); // Far above everything, clips nothing
 
-            entities.add(new Entity(model, random.nextInt(numberOfCols), new Vector3f(x, y, z),0,0,0, scale));
+    // Scatter copies of a model over a tile, standing on its terrain
+    public static void generateModel(TexturedModel model, List<Entity> entities, Terrain tile, Random random, float scale, int count, int numberOfCols) {
+        float[] xs = new float[count];
+        float[] zs = new float[count];
+        for(int i = 0; i < count; i++){
+            xs[i] = tile.getX() + random.nextFloat() * Terrain.SIZE;
+            zs[i] = tile.getZ() + random.nextFloat() * Terrain.SIZE;
         }
+        float[] ys = new float[count];
+        tile.heightsAt(xs, zs, ys);
 
-        for(int i = 0; i < count / 2; i++){
-            float x = random.nextFloat() * 800;
-            float z = random.nextFloat() * 1600;
-            float y = z > 800 ? terrains[0][1].getHeightOfTerrain(x, z) : terrains[0][0].getHeightOfTerrain(x, z);
-
-            entities.add(new Entity(model, random.nextInt(numberOfCols), new Vector3f(x, y, z),0,0,0, scale));
+        for(int i = 0; i < count; i++){
+            entities.add(new Entity(model, random.nextInt(numberOfCols), new Vector3f(xs[i], ys[i], zs[i]),0,0,0, scale));
         }
     }
 
-    public static void generateLights(List<Light> lights, Terrain[][] terrains, List<Entity> entities, Loader loader, int count) {
-        // The Sun/Moon; Light source that doesn't attenuate
-        lights.add(new Light(new Vector3f(0, 1000, 0), new Vector3f(0.5f, 0.5f, 0.5f)));
-
-        RawModel lampModel = OBJLoader.loadObjModel("lamp", loader);
-        TexturedModel lamp = new TexturedModel(lampModel, new ModelTexture(loader.loadTexture("lamp")));
+    public static void generateLights(List<Light> lights, Terrain tile, List<Entity> entities, AssetPipeline assets, int count) {
+        RawModel lampModel = assets.loadObjModel("lamp");
+        TexturedModel lamp = new TexturedModel(lampModel, assets.loadTexture("lamp"));
 
         lamp.getTexture().setUseFakeLighting(true);
 
         // Generate attenuating lights (limited by range)
         Random random = new Random();
+        float[] xs = new float[count];
+        float[] zs = new float[count];
         for(int i = 0; i < count; i++){
-            float x = random.nextFloat() * 800;
-            float z = random.nextFloat() * 1600;
-            float y = z > 800 ? terrains[0][1].getHeightOfTerrain(x, z) : terrains[0][0].getHeightOfTerrain(x, z);
-
-            lights.add(new Light(new Vector3f(x, y + 15, z), new Vector3f(0, 5, 0), new Vector3f(1, 0.1f, 0.002f)));
-            entities.add(new Entity(lamp, new Vector3f(x, y, z), 0, 0, 0, 1));
+            xs[i] = tile.getX() + random.nextFloat() * Terrain.SIZE;
+            zs[i] = tile.getZ() + random.nextFloat() * Terrain.SIZE;
         }
-    }
+        float[] ys = new float[count];
+        tile.heightsAt(xs, zs, ys);
 
-    public static void generateTerrains(int rows, int cols, Terrain[][] terrains, Loader loader, TerrainTexturePack texturePack, TerrainTexture blendMap, String heightMap) {
-        for(int i = 0; i < rows; i++) {
-            for(int j = 0; j < cols; j++) {
-                terrains[i][j] = new Terrain(0, 0, loader, texturePack, blendMap, heightMap);
-            }
+        for(int i = 0; i < count; i++){
+            lights.add(new Light(new Vector3f(xs[i], ys[i] + 15, zs[i]), new Vector3f(0, 5, 0), new Vector3f(1, 0.1f, 0.002f)));
+            entities.add(new Entity(lamp, new Vector3f(xs[i], ys[i], zs[i]), 0, 0, 0, 1));
         }
     }
 
@@ -79,47 +81,128 @@ public class MainLoop {
         model.getTexture().setHasTransparency(true);
     }
 
-    public static void renderScene(MainRenderer renderer, List<Entity> entities, Terrain[][] terrains, List<Light> lights, Camera camera, Vector4f plane, int TERRAIN_MATRIX_ROWS, int TERRAIN_MATRIX_COLS) {
-        for(int i = 0; i < TERRAIN_MATRIX_ROWS; i++) {
-            for(int j = 0; j < TERRAIN_MATRIX_COLS; j++) {
-                renderer.processTerrain(terrains[i][j]);
+    public static void renderScene(MainRenderer renderer, TerrainGrid terrains, Map<Terrain, List<Entity>> tilePlants, List<Terrain> plantedTiles, List<Light> lights, Camera camera, Vector4f plane) {
+        renderer.updateFrustum(camera); // Anything outside of the view frustum will be skipped when processed
+
+        // Only the tiles within view distance are even looked at, however large the world is
+        Vector3f position = camera.getPosition();
+        for(Terrain terrain : terrains.getTilesNear(position.x, position.z, MainRenderer.FAR_PLANE)) {
+            renderer.processTerrain(terrain);
+
+            // What grows on a tile is added to the renderer once, when the tile comes within view distance
+            if(!plantedTiles.contains(terrain)) {
+                List<Entity> plants = tilePlants.get(terrain);
+                if(plants != null) {
+                    for(Entity plant : plants) {
+                        renderer.addEntity(plant);
+                    }
+                    plantedTiles.add(terrain);
+                }
             }
         }
 
-        for(Entity object : entities) {
-            renderer.processEntity(object);
+        // And removed again once it's out of view distance
+        for(int i = plantedTiles.size() - 1; i >= 0; i--) {
+            Terrain tile = plantedTiles.get(i);
+            int gridX = Math.round(tile.getX() / Terrain.SIZE), gridZ = Math.round(tile.getZ() / Terrain.SIZE);
+            if(TerrainGrid.getDistanceToTile(gridX, gridZ, position.x, position.z) > MainRenderer.FAR_PLANE) {
+                for(Entity plant : tilePlants.get(tile)) {
+                    renderer.removeEntity(plant);
+                }
+                plantedTiles.remove(i);
+            }
         }
 
         renderer.render(lights, camera, plane);
     }
 
+    // Poll key presses (not held keys) that toggle renderer features, so render paths can be compared at runtime
+    public static void checkRenderToggles(MainRenderer renderer, Loader loader, TerrainPager pager) {
+        while(Keyboard.next()) {
+            if(!Keyboard.getEventKeyState()) {
+                continue;
+            }
+
+            if(Keyboard.getEventKey() == Keyboard.KEY_I) {
+                renderer.setUseInstancing(!renderer.isUsingInstancing());
+                System.out.println("Instanced entity rendering: " + (renderer.isUsingInstancing() ? "ON" : "OFF"));
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_F) {
+                renderer.setUseFrustumCulling(!renderer.isUsingFrustumCulling());
+                System.out.println("Frustum culling: " + (renderer.isUsingFrustumCulling() ? "ON" : "OFF"));
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_L) {
+                // Cycle through the terrain modes
+                MainRenderer.TerrainMode[] modes = MainRenderer.TerrainMode.values();
+                renderer.setTerrainMode(modes[(renderer.getTerrainMode().ordinal() + 1) % modes.length]);
+                System.out.println("Terrain mode: " + renderer.getTerrainMode());
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_C) {
+                System.out.println(String.format("Terrain mode %s: frame %.1f ms, %d chunks drawn, %d culled",
+                        renderer.getTerrainMode(), DisplayManager.getDelta() * 1000,
+                        renderer.getDrawnTerrainChunks(), renderer.getCulledTerrainChunks()));
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_T) {
+                renderer.setUseMacroTextures(!renderer.isUsingMacroTextures());
+                System.out.println("Terrain macro textures: " + (renderer.isUsingMacroTextures()
+                        ? "ON beyond " + renderer.getMacroTextureDistance() : "OFF"));
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_R) {
+                // Of the last pass that drew the entities
+                System.out.println(String.format("Entities: %d GL state calls made, %d redundant ones skipped",
+                        renderer.getEntityStateChanges(), renderer.getEntityStateChangesAvoided()));
+                System.out.println(String.format("Last frame: %d GL state calls made, %d skipped by the state cache",
+                        GLState.getLastFrameCalls(), GLState.getLastFrameSkippedCalls()));
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_V) {
+                // Slow, every state call is checked with glGet
+                GLState.setVerify(!GLState.isVerifying());
+                System.out.println("GL state cache verification: " + (GLState.isVerifying() ? "ON" : "OFF")
+                        + " (" + GLState.getMismatches() + " differences found so far)");
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_M) {
+                loader.getResources().printResidentMemory();
+            }
+            else if(Keyboard.getEventKey() == Keyboard.KEY_P) {
+                pager.printStatus();
+            }
+        }
+    }
+
     public static void main(String[] args) {
+        long startTime = System.nanoTime(); // Time to first frame is measured from here
 
         DisplayManager.createDisplay();
 
         // Takes care of loading in textures and 3D .obj models
         Loader loader = new Loader();
 
+        // Loads the assets on worker threads; everything returned from it is a placeholder until it's been uploaded
+        AssetPipeline assets = new AssetPipeline(loader);
+
         // Load up the terrain texture pack
-        TerrainTexture backgroundTexture = new TerrainTexture(loader.loadTexture("grassy"));
-        TerrainTexture rTexture = new TerrainTexture(loader.loadTexture("mud"));
-        TerrainTexture gTexture = new TerrainTexture(loader.loadTexture("grassFlowers"));
-        TerrainTexture bTexture = new TerrainTexture(loader.loadTexture("path"));
+        TerrainTexture backgroundTexture = assets.loadTerrainTexture("grassy");
+        TerrainTexture rTexture = assets.loadTerrainTexture("mud");
+        TerrainTexture gTexture = assets.loadTerrainTexture("grassFlowers");
+        TerrainTexture bTexture = assets.loadTerrainTexture("path");
 
         TerrainTexturePack texturePack = new TerrainTexturePack(backgroundTexture, rTexture, gTexture, bTexture);
-        TerrainTexture blendMap = new TerrainTexture(loader.loadTexture("blendMap"));
+        TerrainTexture blendMap = assets.loadTerrainTexture("blendMap");
 
-        RawModel grassModel = OBJLoader.loadObjModel("grassModel", loader);
-        RawModel fernModel = OBJLoader.loadObjModel("fern", loader);
-        RawModel pineTreeModel = OBJLoader.loadObjModel("pine", loader);
+        RawModel grassModel = assets.loadObjModel("grassModel");
+        RawModel fernModel = assets.loadObjModel("fern");
+        RawModel pineTreeModel = assets.loadObjModel("pine");
 
         // Texture Atlases
-        ModelTexture fernTextureAtlas = new ModelTexture(loader.loadTexture("fern")); fernTextureAtlas.setNumberOfRows(2);
+        ModelTexture fernTextureAtlas = assets.loadTexture("fern"); fernTextureAtlas.setNumberOfRows(2);
 
-        TexturedModel grass = new TexturedModel(grassModel, new ModelTexture(loader.loadTexture("grassTexture")));
-        TexturedModel fern = new TexturedModel(fernModel, new ModelTexture(loader.loadTexture("fern")));
-        TexturedModel pinkFlower = new TexturedModel(grassModel, new ModelTexture(loader.loadTexture("flower")));
-        TexturedModel pineTree = new TexturedModel(pineTreeModel, new ModelTexture(loader.loadTexture("pine")));
+        // Vegetation textures are packed into texture arrays by size, so grass & flowers (same mesh, same size) are drawn as one batch
+        ModelTexture[] vegetation = assets.loadTextureArray("grassTexture", "fern", "flower", "pine");
+
+        TexturedModel grass = new TexturedModel(grassModel, vegetation[0]);
+        TexturedModel fern = new TexturedModel(fernModel, vegetation[1]);
+        TexturedModel pinkFlower = new TexturedModel(grassModel, vegetation[2]);
+        TexturedModel pineTree = new TexturedModel(pineTreeModel, vegetation[3]);
 
         // Enable fake lighting and transparency here for models that need it
         enableFakeLightingAndHasTransparency(grass);
@@ -128,21 +211,51 @@ public class MainLoop {
 
         Camera camera = new Camera();
 
-        final int TERRAIN_MATRIX_ROWS = 2;
-        final int TERRAIN_MATRIX_COLS = 2;
-
-        MainRenderer renderer = new MainRenderer(loader);
+        MainRenderer renderer = new MainRenderer(loader, assets);
 
         List<Entity> entities = new ArrayList<>();
         List<Light> lights = new ArrayList<>();
-        Terrain[][] terrains = new Terrain[TERRAIN_MATRIX_ROWS][TERRAIN_MATRIX_COLS];
 
-        generateTerrains(TERRAIN_MATRIX_ROWS, TERRAIN_MATRIX_COLS, terrains, loader, texturePack, blendMap, "heightmap");
-        generateLights(lights, terrains, entities, loader, 10);
+        // The world is far larger than what's ever loaded at once, the pager streams its tiles in around the camera
+        TerrainGrid terrains = new TerrainGrid(WORLD_TILES, WORLD_TILES);
+        TerrainPager pager = new TerrainPager(terrains, assets, loader, texturePack, blendMap, new HeightGenerator(WORLD_SEED),
+                MainRenderer.FAR_PLANE, TERRAIN_HYSTERESIS, TERRAIN_MEMORY_BUDGET);
 
-        generateModel(pineTree, entities, terrains, 2, 300, 1);
-        generateModel(grass, entities, terrains, 1, 200, 1);
-        generateModel(fern, entities, terrains, 1, 200, 4);
+        // Start in the middle of the world
+        Vector3f start = camera.getPosition();
+        start.x += WORLD_TILES / 2 * Terrain.SIZE;
+        start.z += WORLD_TILES / 2 * Terrain.SIZE;
+        final float startX = start.x, startZ = start.z;
+
+        // The Sun/Moon; Light source that doesn't attenuate
+        lights.add(new Light(new Vector3f(startX, 1000, startZ), new Vector3f(0.5f, 0.5f, 0.5f)));
+
+        // Vegetation stands on the terrain, so it's placed once a tile's heights are known & goes away with the tile
+        Map<Terrain, List<Entity>> tilePlants = new HashMap<>();
+        List<Terrain> plantedTiles = new ArrayList<>(); // Tiles whose plants are in the renderer
+        pager.setOnTileLoaded(tile -> {
+            // Seeded by the tile, so a tile that's evicted & loaded again grows the same plants
+            Random random = new Random((long) tile.getX() * 31 + (long) tile.getZ());
+            List<Entity> plants = new ArrayList<>();
+            generateModel(pineTree, plants, tile, random, 2, 150, 1);
+            generateModel(grass, plants, tile, random, 1, 100, 1);
+            generateModel(fern, plants, tile, random, 1, 100, 4);
+            tilePlants.put(tile, plants);
+
+            // The lamps (there's only room for a few lights) go on the tile the camera starts on
+            if(lights.size() == 1 && tile == terrains.getTileAt(startX, startZ)) {
+                generateLights(lights, tile, entities, assets, 10);
+                for(Entity lamp : entities) {
+                    renderer.addEntity(lamp);
+                }
+            }
+        });
+        pager.setOnTileEvicted(tile -> {
+            for(Entity plant : tilePlants.remove(tile)) {
+                plant.destroy(); // Also takes it out of the renderer if the tile was within view distance
+            }
+            plantedTiles.remove(tile);
+        });
 
         // Water Necessities
         WaterFrameBuffers buffers = new WaterFrameBuffers();
@@ -150,32 +263,45 @@ public class MainLoop {
         WaterRenderer waterRenderer = new WaterRenderer(loader, waterShader, renderer.getProjectionMatrix(), buffers);
         List<WaterTile> waterTiles = new ArrayList<>();
 
-//        waterTiles.add(new WaterTile(316, 375, terrains[0][0].getHeightOfTerrain(315, 375) + 1));
+//        waterTiles.add(new WaterTile(316, 375, terrains.getHeight(315, 375) + 1));
 
         WaterFrameBuffers water_fbo = new WaterFrameBuffers();
 
+        boolean firstFrame = true;
+
         // Loop until the 'X' is clicked on the game window
         while(!Display.isCloseRequested()) {
 
-            // Calculate the correct terrain to conduct collision detection for
-            int gridX = (int) (camera.getPosition().x / Terrain.SIZE);
-            int gridZ = (int) (camera.getPosition().z / Terrain.SIZE);
+            // Upload whatever the asset workers have finished, without spending more than the budget on it
+            assets.processUploads(AssetPipeline.DEFAULT_UPLOAD_BUDGET_NANOS);
 
-            // Collision detection with the terrains
-            camera.move(terrains[gridX][gridZ]);
+            // Stream in the tiles around the camera & evict far away ones if they take up too much memory
+            pager.update(camera.getPosition().x, camera.getPosition().z);
 
-            GL11.glEnable(GL30.GL_CLIP_DISTANCE0);  // Enable a clip plane
-            GL11.glDisable(GL30.GL_CLIP_DISTANCE0); // Disable the clip plane
+            // Collision detection with the terrains; the grid finds the tile the camera is on
+            camera.move(terrains);
+
+            checkRenderToggles(renderer, loader, pager);
+
+            GLState.enable(GL30.GL_CLIP_DISTANCE0);  // Enable a clip plane
+            GLState.disable(GL30.GL_CLIP_DISTANCE0); // Disable the clip plane
 
             // Render the scene using the default frame buffer
-            renderScene(renderer, entities, terrains, lights, camera, new Vector4f(0, -1, 0, 100000), TERRAIN_MATRIX_ROWS, TERRAIN_MATRIX_COLS);
+            renderScene(renderer, terrains, tilePlants, plantedTiles, lights, camera, NO_CLIP_PLANE);
             waterRenderer.render(waterTiles, camera);
 
             // Step 2
             DisplayManager.updateDisplay();
+
+            if(firstFrame) {
+                firstFrame = false;
+                System.out.println(String.format("Time to first frame: %.1f ms (%d assets still loading)",
+                        (System.nanoTime() - startTime) / 1e6, assets.getPendingAssets()));
+            }
         }
 
         // Clean up shaders and textures upon game termination
+        assets.cleanUp();
         water_fbo.cleanUp();
         waterShader.cleanUp();
         renderer.cleanUp();
@@ -0,0 +1,88 @@
+package Models;
+
+/*
+    Model space bounds of a mesh, computed once when the mesh is loaded. Both an axis aligned bounding box (AABB)
+    and a bounding sphere are kept: the sphere is cheap to move around with an entity's rotation and scale, while
+    the box is a tighter fit for things that are only ever translated, like the terrain tiles.
+ */
+public class BoundingVolume {
+
+    // Axis aligned bounding box
+    private float minX, minY, minZ;
+    private float maxX, maxY, maxZ;
+
+    // Bounding sphere, centred on the middle of the box
+    private float centerX, centerY, centerZ;
+    private float radius;
+
+    public BoundingVolume(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float radius) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.centerX = (minX + maxX) / 2f;
+        this.centerY = (minY + maxY) / 2f;
+        this.centerZ = (minZ + maxZ) / 2f;
+        this.radius = radius;
+    }
+
+    // Compute the bounds of a tightly packed array of (x, y, z) positions
+    public static BoundingVolume fromPositions(float[] positions) {
+        return fromPositions(positions, 3, positions.length / 3);
+    }
+
+    // Compute the bounds of vertexCount positions that are each 'stride' floats apart in the given array
+    public static BoundingVolume fromPositions(float[] positions, int stride, int vertexCount) {
+        if(vertexCount == 0) {
+            return new BoundingVolume(0, 0, 0, 0, 0, 0, 0);
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        for(int i = 0; i < vertexCount; i++) {
+            float x = positions[i * stride];
+            float y = positions[i * stride + 1];
+            float z = positions[i * stride + 2];
+
+            minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+            minZ = Math.min(minZ, z); maxZ = Math.max(maxZ, z);
+        }
+
+        // The radius is the distance to the furthest vertex from the box centre, which is tighter than half the diagonal
+        float centerX = (minX + maxX) / 2f, centerY = (minY + maxY) / 2f, centerZ = (minZ + maxZ) / 2f;
+        float radiusSquared = 0;
+        for(int i = 0; i < vertexCount; i++) {
+            float dx = positions[i * stride] - centerX;
+            float dy = positions[i * stride + 1] - centerY;
+            float dz = positions[i * stride + 2] - centerZ;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+
+        return new BoundingVolume(minX, minY, minZ, maxX, maxY, maxZ, (float) Math.sqrt(radiusSquared));
+    }
+
+    // Getters
+    public float getMinX() { return minX; }
+
+    public float getMinY() { return minY; }
+
+    public float getMinZ() { return minZ; }
+
+    public float getMaxX() { return maxX; }
+
+    public float getMaxY() { return maxY; }
+
+    public float getMaxZ() { return maxZ; }
+
+    public float getCenterX() { return centerX; }
+
+    public float getCenterY() { return centerY; }
+
+    public float getCenterZ() { return centerZ; }
+
+    public float getRadius() { return radius; }
+}
@@ -0,0 +1,121 @@
+package Models;
+
+import Tools.ContentHash;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.ByteBuffer;
+
+/*
+    CPU side copy of a mesh, ready to be uploaded to the GPU as-is: vertices are interleaved into one buffer in the
+    VertexFormat.STANDARD layout, followed by a separate index buffer of 16 bit indices if the vertex count allows
+    it or 32 bit ones otherwise. The buffers are direct and in native byte order, so they can either be handed
+    straight to OpenGL or be views into a memory mapped file.
+ */
+public class MeshData {
+
+    // Largest vertex count that can still be addressed with GL_UNSIGNED_SHORT indices
+    public static final int MAX_SHORT_INDEXED_VERTICES = 65536;
+
+    private ByteBuffer vertexData;
+    private ByteBuffer indexData;
+    private int vertexCount;
+    private int indexCount;
+    private int indexType; // GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+    private BoundingVolume bounds;
+    private long contentHash;
+    private long indexHash;
+    private boolean hashed = false;
+    private float acmrBefore = Float.NaN, acmrAfter = Float.NaN; // Of the index order, before & after optimising
+
+    public MeshData(ByteBuffer vertexData, ByteBuffer indexData, int vertexCount, int indexCount, int indexType, BoundingVolume bounds) {
+        this.vertexData = vertexData;
+        this.indexData = indexData;
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+        this.indexType = indexType;
+        this.bounds = bounds;
+    }
+
+    // Interleave & quantise separate position, texture coordinate and normal arrays
+    public static MeshData fromArrays(float[] positions, float[] textureCoords, float[] normals, int[] indices, BoundingVolume bounds) {
+        int vertexCount = positions.length / 3;
+
+        ByteBuffer vertexData = BufferUtils.createByteBuffer(vertexCount * VertexFormat.STANDARD.getStride());
+        for(int i = 0; i < vertexCount; i++) {
+            VertexFormat.putStandardVertex(vertexData,
+                    positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2],
+                    textureCoords[i * 2], textureCoords[i * 2 + 1],
+                    normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+        }
+        vertexData.flip();
+
+        return new MeshData(vertexData, packIndices(indices, vertexCount), vertexCount, indices.length,
+                indexTypeFor(vertexCount), bounds);
+    }
+
+    // Store indices as shorts when every vertex can be addressed with 16 bits, halving the index buffer
+    public static ByteBuffer packIndices(int[] indices, int vertexCount) {
+        if(indexTypeFor(vertexCount) == GL11.GL_UNSIGNED_SHORT) {
+            ByteBuffer indexData = BufferUtils.createByteBuffer(indices.length * 2);
+            for(int index : indices) {
+                indexData.putShort((short) index); // Indices above 32767 wrap to negative, but GL reads them unsigned
+            }
+            indexData.flip();
+            return indexData;
+        }
+
+        ByteBuffer indexData = BufferUtils.createByteBuffer(indices.length * 4);
+        indexData.asIntBuffer().put(indices);
+        return indexData;
+    }
+
+    public static int indexTypeFor(int vertexCount) {
+        return vertexCount <= MAX_SHORT_INDEXED_VERTICES ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+    }
+
+    // Hash of the vertex & index data, worked out the first time it's needed (which can be on a worker thread)
+    public long getContentHash() {
+        if(!hashed) {
+            indexHash = ContentHash.update(ContentHash.update(ContentHash.EMPTY, indexType), indexData);
+            long hash = ContentHash.of(vertexData);
+            contentHash = ContentHash.update(ContentHash.update(hash, (int) indexHash), (int) (indexHash >>> 32));
+            hashed = true;
+        }
+        return contentHash;
+    }
+
+    // Hash of just the index data, so meshes with different vertices but the same indices can share an index buffer
+    public long getIndexHash() {
+        getContentHash();
+        return indexHash;
+    }
+
+    // Size of a single index in bytes
+    public int getIndexSize() {
+        return indexType == GL11.GL_UNSIGNED_SHORT ? 2 : 4;
+    }
+
+    // Getters; the buffers are shared, so use duplicate() before changing their position
+    public ByteBuffer getVertexData() { return vertexData; }
+
+    public ByteBuffer getIndexData() { return indexData; }
+
+    public int getVertexCount() { return vertexCount; }
+
+    public int getIndexCount() { return indexCount; }
+
+    public int getIndexType() { return indexType; }
+
+    public BoundingVolume getBounds() { return bounds; }
+
+    public float getAcmrBefore() { return acmrBefore; } // NaN if unknown
+
+    public float getAcmrAfter() { return acmrAfter; }
+
+    // Setters
+    public void setAcmr(float acmrBefore, float acmrAfter) {
+        this.acmrBefore = acmrBefore;
+        this.acmrAfter = acmrAfter;
+    }
+}
@@ -1,14 +1,43 @@
 package Models;
 
+import org.lwjgl.opengl.GL11;
+
 public class RawModel {
+    private static int boundsVersion = 0; // Goes up whenever any model's bounds change, see getBoundsVersion()
+
     private int vaoId;
     private int vertexCount;
+    private int indexType = GL11.GL_UNSIGNED_INT; // Type of the indices in its index buffer, if it has one
+    private VertexFormat vertexFormat; // Layout of its interleaved vertex buffer (null for plain position-only models)
+    private BoundingVolume bounds; // Model space bounds, used for frustum culling (null if unknown)
 
     public RawModel(int vaoId, int vertexCount) {
         this.vaoId = vaoId; // Id into the VAO Array
         this.vertexCount = vertexCount; // Number of vertices in its mesh
     }
 
+    public RawModel(int vaoId, int vertexCount, int indexType, VertexFormat vertexFormat) {
+        this(vaoId, vertexCount);
+        this.indexType = indexType;
+        this.vertexFormat = vertexFormat;
+    }
+
+    // A copy pointing at the same VAO, so it can later be swapped to another mesh without affecting the original
+    public RawModel(RawModel model) {
+        this(model.vaoId, model.vertexCount, model.indexType, model.vertexFormat);
+        this.bounds = model.bounds;
+    }
+
+    // Start drawing another model's mesh, used to replace a placeholder once the real mesh has been uploaded
+    public void replaceWith(RawModel model) {
+        this.vaoId = model.vaoId;
+        this.vertexCount = model.vertexCount;
+        this.indexType = model.indexType;
+        this.vertexFormat = model.vertexFormat;
+        this.bounds = model.bounds;
+        boundsVersion++;
+    }
+
     // Getters
     public int getVaoId() {
         return vaoId;
@@ -17,4 +46,19 @@ public class RawModel {
     public int getVertexCount() {
         return vertexCount;
     }
+
+    public int getIndexType() { return indexType; }
+
+    public VertexFormat getVertexFormat() { return vertexFormat; }
+
+    public BoundingVolume getBounds() { return bounds; }
+
+    // Lets whoever keeps something derived from models' bounds (eg. the EntityStore) tell when it has to redo it
+    public static int getBoundsVersion() { return boundsVersion; }
+
+    // Setters
+    public void setBounds(BoundingVolume bounds) {
+        this.bounds = bounds;
+        boundsVersion++;
+    }
 }
@@ -20,4 +20,9 @@ public class TexturedModel {
     public ModelTexture getTexture() {
         return texture;
     }
+
+    // Entities of both models can be drawn together if they share a mesh & a material (eg. two layers of one texture array)
+    public boolean canShareBatchWith(TexturedModel other) {
+        return rawModel.getVaoId() == other.rawModel.getVaoId() && texture.hasSameMaterial(other.texture);
+    }
 }
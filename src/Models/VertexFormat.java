@@ -0,0 +1,133 @@
+package Models;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+
+import java.nio.ByteBuffer;
+
+/*
+    Describes how the attributes of a vertex are laid out in an interleaved vertex buffer: which attribute slot and
+    shader variable each one belongs to, its component count & GL type, and its byte offset within the vertex.
+    Enabling the attributes is up to the renderer (see GLState.enableVertexAttributes), this only describes them.
+
+    The STANDARD format used by every entity and terrain mesh quantises the attributes that don't need full floats:
+
+        position            3 x GL_FLOAT                  12 bytes
+        texture coordinates 2 x GL_HALF_FLOAT              4 bytes
+        normal              GL_INT_2_10_10_10_REV          4 bytes (10 bits per component, normalised to -1..1)
+                                                          --------
+                                                          20 bytes per vertex (instead of 32 in 3 separate VBOs)
+
+    The shaders don't need to know, OpenGL converts the half floats and packed normals back to vec2/vec3 when the
+    attributes are fetched.
+ */
+public class VertexFormat {
+
+    // Attribute slots shared by every shader that draws meshes
+    public static final int POSITION = 0;
+    public static final int TEXTURE_COORDS = 1;
+    public static final int NORMAL = 2;
+
+    public static final VertexFormat STANDARD = new VertexFormat(new Attribute[] {
+            new Attribute(POSITION, "position", 3, GL11.GL_FLOAT, false, 0),
+            new Attribute(TEXTURE_COORDS, "textureCoords", 2, GL30.GL_HALF_FLOAT, false, 12),
+            new Attribute(NORMAL, "normal", 4, GL33.GL_INT_2_10_10_10_REV, true, 16)
+    }, 20);
+
+    private final Attribute[] attributes;
+    private final int stride; // Size of a whole vertex in bytes
+
+    public VertexFormat(Attribute[] attributes, int stride) {
+        this.attributes = attributes;
+        this.stride = stride;
+    }
+
+    // Point every attribute of the bound VAO at the currently bound GL_ARRAY_BUFFER
+    public void setAttributePointers() {
+        for(Attribute attribute : attributes) {
+            GL20.glVertexAttribPointer(attribute.index, attribute.size, attribute.type, attribute.normalised, stride, attribute.offset);
+        }
+    }
+
+    // Write one vertex of the STANDARD format
+    public static void putStandardVertex(ByteBuffer buffer, float x, float y, float z, float u, float v,
+                                         float nx, float ny, float nz) {
+        buffer.putFloat(x).putFloat(y).putFloat(z);
+        buffer.putShort(toHalfFloat(u)).putShort(toHalfFloat(v));
+        buffer.putInt(packNormal(nx, ny, nz));
+    }
+
+    // Pack a unit vector into GL_INT_2_10_10_10_REV: x in the lowest 10 bits, then y, z & a 2 bit w that's left at 0
+    public static int packNormal(float x, float y, float z) {
+        return packSignedNormalised(x) | (packSignedNormalised(y) << 10) | (packSignedNormalised(z) << 20);
+    }
+
+    private static int packSignedNormalised(float value) {
+        int packed = Math.round(Math.max(-1, Math.min(1, value)) * 511);
+        return packed & 0x3ff; // Two's complement in 10 bits
+    }
+
+    // IEEE 754 single to half precision conversion, rounding to the nearest half
+    public static short toHalfFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+
+        if(exponent >= 0x1f) {
+            // Too large for a half (or infinity/NaN); NaN keeps a mantissa bit, everything else becomes infinity
+            boolean isNaN = ((bits >>> 23) & 0xff) == 0xff && mantissa != 0;
+            return (short) (sign | 0x7c00 | (isNaN ? 0x200 : 0));
+        }
+        if(exponent <= 0) {
+            if(exponent < -10) {
+                return (short) sign; // Too small even for a denormalised half
+            }
+            // Denormalised half: shift the mantissa (with its implicit leading 1) into place
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if(((mantissa >> (shift - 1)) & 1) != 0) {
+                half++; // Round to nearest
+            }
+            return (short) (sign | half);
+        }
+
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if((mantissa & 0x1000) != 0) {
+            half++; // Round to nearest, a carry into the exponent is still the correct result
+        }
+        return (short) half;
+    }
+
+    // Getters
+    public Attribute[] getAttributes() { return attributes; }
+
+    public int getStride() { return stride; }
+
+    /* A single attribute of a vertex */
+    public static class Attribute {
+        private final int index; // Attribute slot in the VAO
+        private final String name; // Variable name in the shader code
+        private final int size; // Number of components
+        private final int type; // GL type of each component
+        private final boolean normalised; // Whether integer types are mapped to -1..1 / 0..1
+        private final int offset; // Byte offset from the start of the vertex
+
+        public Attribute(int index, String name, int size, int type, boolean normalised, int offset) {
+            this.index = index;
+            this.name = name;
+            this.size = size;
+            this.type = type;
+            this.normalised = normalised;
+            this.offset = offset;
+        }
+
+        // Getters
+        public int getIndex() { return index; }
+
+        public String getName() { return name; }
+    }
+}
@@ -0,0 +1,358 @@
+package RenderEngine;
+
+import Models.MeshData;
+import Models.RawModel;
+import Terrains.Terrain;
+import Terrains.TerrainData;
+import Terrains.TerrainTexture;
+import Terrains.TerrainTexturePack;
+import Terrains.TerrainTileFactory;
+import Textures.ModelTexture;
+import Textures.TextureArrayData;
+import Textures.TextureData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/*
+    Loads assets in the background so the first frame doesn't have to wait for all of them.
+
+    Each asset is loaded in two steps:
+        1. The slow part that doesn't need OpenGL (file I/O, PNG decoding, OBJ parsing, terrain mesh generation)
+           runs on a pool of worker threads.
+        2. Its result is put on a bounded upload queue, which the main thread (the only one owning the GL context)
+           drains every frame in processUploads(), for at most a fixed time budget, so a burst of finished assets
+           spreads its GL uploads over several frames instead of causing a hitch.
+
+    The load methods return right away with a handle (a ModelTexture, TerrainTexture, RawModel or Terrain) pointing
+    at a placeholder; once the real asset has been uploaded, the handle is switched over to it. Anything holding the
+    handle (eg. a TexturedModel shared by hundreds of entities) picks up the change without doing anything.
+
+    A file that's already resident in the Loader isn't loaded again, and a file requested again while it's still
+    loading is only loaded once; every request gets its own reference to the shared GPU object either way. If the
+    load fails, the requests waiting on it are dropped (they keep the placeholder), so a later request tries again.
+
+    When the upload queue is full the workers block, so decoded data can't pile up in memory faster than the GL
+    thread can upload it.
+ */
+public class AssetPipeline {
+
+    public static final long DEFAULT_UPLOAD_BUDGET_NANOS = 4_000_000L; // Time spent on uploads per frame
+    private static final int UPLOAD_QUEUE_CAPACITY = 8;
+
+    private final Loader loader;
+    private final ExecutorService workers;
+    private final BlockingQueue<Runnable> uploads = new ArrayBlockingQueue<>(UPLOAD_QUEUE_CAPACITY);
+    private final AtomicInteger pending = new AtomicInteger(); // Submitted assets that haven't been uploaded yet
+
+    // Requests waiting on a file that's already being loaded, by key; only used on the main thread
+    private final Map<String, List<IntConsumer>> waitingTextures = new HashMap<>();
+    private final Map<String, List<Consumer<RawModel>>> waitingModels = new HashMap<>();
+
+    // Height maps decoded for the terrains being loaded, shared by every tile built from the same one
+    private final TerrainTileFactory terrainTiles = new TerrainTileFactory();
+
+    // Shared placeholders for anything that hasn't been uploaded yet
+    private final int placeholderTexture;
+    private final RawModel placeholderModel;
+    private final RawModel placeholderTerrain;
+
+    private final long startTime = System.nanoTime();
+    private int uploadedAssets = 0;
+    private boolean reportedFinished = false;
+
+    public AssetPipeline(Loader loader) {
+        this.loader = loader;
+
+        // Leave one core for the main thread, which keeps rendering while the workers load
+        int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "Asset Worker");
+            thread.setDaemon(true); // Don't keep the game running if the window is closed mid load
+            return thread;
+        });
+
+        this.placeholderTexture = loader.createPlaceholderTexture(0.5f, 0.5f, 0.5f);
+        this.placeholderModel = loader.createPlaceholderModel();
+        this.placeholderTerrain = Terrain.createPlaceholderModel(loader);
+    }
+
+    public <T> void submit(String name, Callable<T> work, Consumer<T> upload) {
+        submit(name, work, upload, null);
+    }
+
+    /*
+        Run work on a worker thread, then hand its result to upload on the main thread. A failed load is reported
+        and skipped, whatever was using the asset just keeps its placeholder; onFailed (if any) is then run on the
+        main thread instead of upload, through the same queue.
+     */
+    public <T> void submit(String name, Callable<T> work, Consumer<T> upload, Runnable onFailed) {
+        pending.incrementAndGet();
+
+        workers.execute(() -> {
+            T result;
+            try {
+                result = work.call();
+            }
+            catch (Exception e) {
+                System.err.println("An error occurred when loading asset: " + name);
+                e.printStackTrace();
+                if(onFailed == null) {
+                    pending.decrementAndGet();
+                    return;
+                }
+                try {
+                    uploads.put(onFailed);
+                }
+                catch (InterruptedException interrupted) {
+                    pending.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+
+            try {
+                uploads.put(() -> upload.accept(result)); // Blocks while the queue is full
+            }
+            catch (InterruptedException e) {
+                pending.decrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /*
+        Upload finished assets until the queue is empty or the time budget has been used up. At least one upload is
+        done per call so loading always makes progress, even if a single upload takes longer than the budget.
+        Must be called on the main thread, once per frame.
+     */
+    public int processUploads(long budgetNanos) {
+        long start = System.nanoTime();
+        int uploaded = 0;
+
+        Runnable upload;
+        while((upload = uploads.poll()) != null) {
+            upload.run();
+            pending.decrementAndGet();
+            uploaded++;
+
+            if(System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+        uploadedAssets += uploaded;
+
+        if(pending.get() == 0 && uploaded > 0) {
+            terrainTiles.clear(); // Every tile has its data by now
+            if(!reportedFinished) {
+                // Only the initial load is reported, tiles streamed in later on empty the queue all the time
+                reportedFinished = true;
+                System.out.println(String.format("All %d assets loaded after %.1f ms", uploadedAssets,
+                        (System.nanoTime() - startTime) / 1e6));
+            }
+        }
+        return uploaded;
+    }
+
+    // Block until everything submitted so far has been uploaded. Must be called on the main thread
+    public void finish() {
+        while(pending.get() > 0) {
+            try {
+                Runnable upload = uploads.poll(10, TimeUnit.MILLISECONDS);
+                if(upload != null) {
+                    upload.run();
+                    pending.decrementAndGet();
+                    uploadedAssets++;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public ModelTexture loadTexture(String filename) {
+        ModelTexture texture = new ModelTexture(placeholderTexture);
+        requestTexture(filename, texture::setTextureID);
+        return texture;
+    }
+
+    public TerrainTexture loadTerrainTexture(String filename) {
+        TerrainTexture texture = new TerrainTexture(placeholderTexture);
+        requestTexture(filename, texture::setTextureID);
+        return texture;
+    }
+
+    private void requestTexture(String filename, IntConsumer onLoaded) {
+        String key = Loader.getTexturePath(filename);
+        int textureID = loader.acquireTexture(key);
+        if(textureID != Loader.NOT_RESIDENT) {
+            onLoaded.accept(textureID);
+            return;
+        }
+        if(waitFor(waitingTextures, key, onLoaded)) {
+            return;
+        }
+
+        boolean allowCompressed = loader.supportsCompressedTextures();
+        submit(filename, () -> {
+            TextureData data = Loader.readTexture(filename, allowCompressed);
+            data.getContentHash(); // Hash it here rather than on the main thread
+            return data;
+        }, data -> {
+            List<IntConsumer> waiting = waitingTextures.remove(key);
+            waiting.get(0).accept(loader.loadTexture(key, data));
+            for(int i = 1; i < waiting.size(); i++) {
+                waiting.get(i).accept(loader.acquireTexture(key));
+            }
+        }, () -> waitingTextures.remove(key));
+    }
+
+    /*
+        Load textures packed into texture arrays, one per size & format (see TextureArrayData), and return a texture
+        for each file in the same order. Models whose textures end up in the same array share one bound texture, and
+        the EntityRenderer draws models sharing a mesh as well in a single batch.
+     */
+    public ModelTexture[] loadTextureArray(String... filenames) {
+        ModelTexture[] textures = new ModelTexture[filenames.length];
+        for(int i = 0; i < textures.length; i++) {
+            textures[i] = new ModelTexture(placeholderTexture);
+        }
+
+        boolean allowCompressed = loader.supportsCompressedTextures();
+        submit(String.join(", ", filenames), () -> {
+            TextureData[] decoded = new TextureData[filenames.length];
+            for(int i = 0; i < decoded.length; i++) {
+                decoded[i] = Loader.readTexture(filenames[i], allowCompressed);
+                decoded[i].getContentHash();
+            }
+            return TextureArrayData.pack(decoded);
+        }, arrays -> {
+            for(TextureArrayData array : arrays) {
+                String[] layerFiles = new String[array.getLayerCount()];
+                for(int layer = 0; layer < layerFiles.length; layer++) {
+                    layerFiles[layer] = filenames[array.getTexture(layer)];
+                }
+
+                int textureID = loader.loadTextureArray(Loader.getTextureArrayKey(layerFiles), array);
+                for(int layer = 0; layer < layerFiles.length; layer++) {
+                    textures[array.getTexture(layer)].setTextureArray(textureID, layer);
+                }
+            }
+        });
+        return textures;
+    }
+
+    public RawModel loadObjModel(String filename) {
+        RawModel model = new RawModel(placeholderModel);
+        String key = OBJLoader.getObjPath(filename);
+
+        RawModel resident = loader.acquireModel(key);
+        if(resident != null) {
+            model.replaceWith(resident);
+            return model;
+        }
+        if(waitFor(waitingModels, key, model::replaceWith)) {
+            return model;
+        }
+
+        submit(filename, () -> {
+            MeshData mesh = OBJLoader.loadMeshData(filename);
+            mesh.getContentHash();
+            return mesh;
+        }, mesh -> {
+            List<Consumer<RawModel>> waiting = waitingModels.remove(key);
+            waiting.get(0).accept(loader.loadToVAO(key, mesh));
+            for(int i = 1; i < waiting.size(); i++) {
+                waiting.get(i).accept(loader.acquireModel(key));
+            }
+        }, () -> waitingModels.remove(key));
+        return model;
+    }
+
+    // Queue up a request behind a load of the same key that's already running; returns false if there's none yet,
+    // in which case the request becomes the first one waiting and the caller has to start the load
+    private <T> boolean waitFor(Map<String, List<T>> waitingByKey, String key, T request) {
+        List<T> waiting = waitingByKey.get(key);
+        if(waiting != null) {
+            waiting.add(request);
+            return true;
+        }
+
+        waiting = new ArrayList<>();
+        waiting.add(request);
+        waitingByKey.put(key, waiting);
+        return false;
+    }
+
+    // Load a cube map, onLoaded gets its texture id once it's been uploaded
+    public void loadCubeMap(String[] textureFiles, IntConsumer onLoaded) {
+        String key = Loader.getCubeMapKey(textureFiles);
+        int textureID = loader.acquireTexture(key);
+        if(textureID != Loader.NOT_RESIDENT) {
+            onLoaded.accept(textureID);
+            return;
+        }
+
+        submit(key, () -> {
+            TextureData[] faces = Loader.decodeCubeMap(textureFiles);
+            for(TextureData face : faces) {
+                face.getContentHash();
+            }
+            return faces;
+        }, faces -> onLoaded.accept(loader.loadCubeMap(key, faces)));
+    }
+
+    /*
+        Generate a terrain tile at a grid position from a height map; it's flat until it's loaded, then onLoaded (if
+        any) is called with it. Tiles built from the same height map share its heights & mesh.
+     */
+    public Terrain loadTerrain(int gridX, int gridZ, TerrainTexturePack texturePack, TerrainTexture blendMap,
+                               String heightMap, Consumer<Terrain> onLoaded) {
+        return loadTerrain(gridX, gridZ, texturePack, blendMap, heightMap, () -> terrainTiles.getTerrainData(heightMap),
+                onLoaded, null);
+    }
+
+    /*
+        Generate a terrain tile with data from anywhere (eg. procedural heights), the same way as from a height map.
+        If generating it fails the tile stays flat for good, and onFailed (if any) is called on the main thread.
+     */
+    public Terrain loadTerrain(int gridX, int gridZ, TerrainTexturePack texturePack, TerrainTexture blendMap,
+                               String name, Callable<TerrainData> generate, Consumer<Terrain> onLoaded,
+                               Runnable onFailed) {
+        Terrain terrain = new Terrain(gridX, gridZ, texturePack, blendMap, placeholderTerrain);
+        submit(name, () -> {
+            TerrainData data = generate.call();
+            data.getMesh().getContentHash(); // Identical terrains end up sharing one mesh & height texture
+            data.getHeights().getContentHash();
+            return data;
+        }, data -> {
+            terrain.load(loader, data);
+            if(onLoaded != null) {
+                onLoaded.accept(terrain);
+            }
+        }, onFailed);
+        return terrain;
+    }
+
+    public void cleanUp() {
+        workers.shutdownNow();
+    }
+
+    // Getters
+    public boolean isFinished() { return pending.get() == 0; }
+
+    public int getPendingAssets() { return pending.get(); }
+}
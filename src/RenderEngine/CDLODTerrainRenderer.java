@@ -0,0 +1,140 @@
+package RenderEngine;
+
+import Entities.Camera;
+import Models.BoundingVolume;
+import Models.MeshData;
+import Models.RawModel;
+import Shaders.CDLODTerrainShader;
+import Terrains.Terrain;
+import Terrains.TerrainLODSelector;
+import Terrains.TerrainLODSelector.Chunk;
+import Terrains.TerrainQuadTree;
+import Tools.Frustum;
+import org.lwjgl.opengl.Display;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.util.vector.Matrix4f;
+
+import java.util.List;
+
+/*
+    Draws the terrain with a level of detail that follows the camera (CDLOD, see TerrainLODSelector) instead of
+    every tile's full resolution mesh: each tile is drawn as a handful of chunks, near ones small & fine, far ones
+    large & coarse, so the triangle count depends on the view rather than on how much terrain there is.
+
+    Every chunk, whatever its size, is drawn with one shared grid mesh which the vertex shader places over the chunk
+    & displaces with the tile's height texture. Besides the height textures (one float per sample) there's no vertex
+    data per tile at all, so the memory this needs doesn't grow with the world. The grid's triangles are ordered a
+    quadrant at a time, so a quarter of a chunk is drawn with a quarter of the indices.
+ */
+public class CDLODTerrainRenderer {
+
+    private CDLODTerrainShader shader;
+    private TerrainLODSelector selector;
+
+    private RawModel grid;
+    private int quadrantIndexCount; // Indices of one quadrant of the grid
+    private int indexSize; // Bytes per index
+
+    private int drawnChunks = 0;
+
+    public CDLODTerrainRenderer(CDLODTerrainShader shader, Matrix4f projectionMatrix, Loader loader) {
+        this.shader = shader;
+        shader.start();
+        shader.loadProjectionMatrix(projectionMatrix);
+        shader.connectTextureUnits();
+        shader.loadGrid(Terrain.SIZE);
+        shader.stop();
+
+        // A world unit one unit in front of the camera covers m11 (the projection's y scale) times half the screen's height
+        selector = new TerrainLODSelector(projectionMatrix.m11 * Display.getHeight() / 2f);
+
+        MeshData gridMesh = createGridMesh(TerrainQuadTree.GRID_RESOLUTION);
+        grid = loader.loadToVAO(gridMesh);
+        quadrantIndexCount = gridMesh.getIndexCount() / 4;
+        indexSize = gridMesh.getIndexSize();
+    }
+
+    public void render(List<Terrain> terrains, Camera camera, Frustum frustum) {
+        List<Chunk> chunks = selector.select(terrains, camera.getPosition(), frustum);
+        drawnChunks = chunks.size();
+
+        GLState.bindVertexArray(grid.getVaoId());
+        GLState.enableVertexAttributes(grid.getVertexFormat());
+        shader.loadShineVariables(1, 0);
+        shader.loadCameraPosition(camera.getPosition());
+
+        // Chunks come out a tile at a time, so each tile's textures are only bound once
+        Terrain boundTerrain = null;
+        for(Chunk chunk : chunks) {
+            if(chunk.getTerrain() != boundTerrain) {
+                boundTerrain = chunk.getTerrain();
+                TerrainRenderer.bindTextures(boundTerrain);
+                TerrainRenderer.bindMacroTexture(boundTerrain, shader);
+                GLState.bindTexture(CDLODTerrainShader.HEIGHT_MAP_UNIT, GL11.GL_TEXTURE_2D, boundTerrain.getHeightTexture());
+                shader.loadTileOrigin(boundTerrain.getX(), boundTerrain.getZ());
+            }
+
+            shader.loadNode(chunk.getX(), chunk.getZ(), chunk.getSize());
+            shader.loadMorphRange(selector.getMorphStart(chunk.getLevel()), selector.getMorphEnd(chunk.getLevel()));
+
+            if(chunk.getQuadrant() == TerrainLODSelector.WHOLE_NODE) {
+                GL11.glDrawElements(GL11.GL_TRIANGLES, grid.getVertexCount(), grid.getIndexType(), 0);
+            }
+            else {
+                GL11.glDrawElements(GL11.GL_TRIANGLES, quadrantIndexCount, grid.getIndexType(),
+                        (long) chunk.getQuadrant() * quadrantIndexCount * indexSize);
+            }
+        }
+
+        GLState.bindVertexArray(0);
+    }
+
+    /*
+        A flat grid of resolution x resolution squares from 0 to 1 on x & z. The squares of each quadrant (x first,
+        then z, the same order as the selector's quadrants) come one after the other in the index buffer.
+     */
+    private static MeshData createGridMesh(int resolution) {
+        int vertexCount = resolution + 1;
+        float[] positions = new float[vertexCount * vertexCount * 3];
+        float[] textureCoords = new float[vertexCount * vertexCount * 2];
+        float[] normals = new float[vertexCount * vertexCount * 3];
+        for(int z = 0; z < vertexCount; z++) {
+            for(int x = 0; x < vertexCount; x++) {
+                int vertex = z * vertexCount + x;
+                positions[vertex * 3] = (float) x / resolution;
+                positions[vertex * 3 + 2] = (float) z / resolution;
+                textureCoords[vertex * 2] = (float) x / resolution;
+                textureCoords[vertex * 2 + 1] = (float) z / resolution;
+                normals[vertex * 3 + 1] = 1;
+            }
+        }
+
+        int half = resolution / 2;
+        int[] indices = new int[6 * resolution * resolution];
+        int pointer = 0;
+        for(int quadrant = 0; quadrant < 4; quadrant++) {
+            int startX = (quadrant & 1) * half, startZ = (quadrant >> 1) * half;
+            for(int gz = startZ; gz < startZ + half; gz++) {
+                for(int gx = startX; gx < startX + half; gx++) {
+                    int topLeft = (gz * vertexCount) + gx;
+                    int topRight = topLeft + 1;
+                    int bottomLeft = ((gz + 1) * vertexCount) + gx;
+                    int bottomRight = bottomLeft + 1;
+                    indices[pointer++] = topLeft;
+                    indices[pointer++] = bottomLeft;
+                    indices[pointer++] = topRight;
+                    indices[pointer++] = topRight;
+                    indices[pointer++] = bottomLeft;
+                    indices[pointer++] = bottomRight;
+                }
+            }
+        }
+
+        return MeshData.fromArrays(positions, textureCoords, normals, indices, BoundingVolume.fromPositions(positions));
+    }
+
+    // Getters
+    public int getDrawnChunks() { return drawnChunks; }
+
+    public int getCulledChunks() { return selector.getCulledChunks(); }
+}
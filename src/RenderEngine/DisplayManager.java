@@ -33,7 +33,7 @@ public class DisplayManager {
         }
 
         // Set the viewport of the display (top-left & bottom-right)
-         GL11.glViewport(0,0, WIN_WIDTH, WIN_HEIGHT);
+         GLState.viewport(0,0, WIN_WIDTH, WIN_HEIGHT);
 
         lastFrameTime = getCurrentTime(); // Initially, the last frame should be the time the window is created
 
@@ -51,6 +51,7 @@ public class DisplayManager {
         // Sync at 120 Hz
         Display.sync(FPS);
         Display.update();
+        GLState.endFrame(); // Count the next frame's GL calls from here
 
         long currentFrameTime = getCurrentTime();
         delta = (currentFrameTime - lastFrameTime) / 1000f;
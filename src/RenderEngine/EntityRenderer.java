@@ -1,27 +1,67 @@
 package RenderEngine;
 
 import Entities.Entity;
+import Entities.EntityStore;
+import Entities.TransformStore;
 import Models.RawModel;
 import Models.TexturedModel;
 import Shaders.StaticShader;
 import Textures.ModelTexture;
-import Tools.MatrixMath;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.*;
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
 
-import java.util.List;
-import java.util.Map;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 public class EntityRenderer {
 
+    // Instanced rendering: a 4x4 transformation matrix (16 floats), a texture atlas offset (2 floats) and a texture
+    // array layer (1 float) per instance
+    private static final int MAX_INSTANCES = 10000;
+    private static final int INSTANCE_DATA_LENGTH = 19;
+
+    // Attribute slots of the per-instance data; the matrix takes up 4 consecutive slots (one per column)
+    private static final int INSTANCE_MATRIX_ATTRIBUTE = 3;
+    private static final int INSTANCE_OFFSET_ATTRIBUTE = 7;
+    private static final int INSTANCE_LAYER_ATTRIBUTE = 8;
+
     private StaticShader shader;
+    private Loader loader;
+
+    private boolean useInstancing;
+    private int instanceVbo;
+    private FloatBuffer instanceBuffer = BufferUtils.createFloatBuffer(MAX_INSTANCES * INSTANCE_DATA_LENGTH);
+    private Set<Integer> instancedVaos = new HashSet<>(); // VAOs that already point at the instance VBO
+
+    // The frame's draws, sorted by state: a whole batch each when instancing, a single entity each otherwise
+    private final RenderKeys keys = new RenderKeys();
+    private int[] drawBatches = new int[256];
+    private int[] drawSlots = new int[256]; // Entity store slot of the entity drawn, when not instancing
+    private int drawCount = 0;
+
+    // GL state calls the last entity pass made, & the redundant ones the state cache skipped (see GLState)
+    private int stateChanges = 0;
+    private int stateChangesAvoided = 0;
 
     // Constructor will now create a projectionMatrix upon initialization
-    public EntityRenderer(StaticShader shader, Matrix4f projectionMatrix) {
+    public EntityRenderer(StaticShader shader, Matrix4f projectionMatrix, Loader loader) {
         this.shader = shader; // Set the shader
+        this.loader = loader;
+
+        // Instancing needs glVertexAttribDivisor & glDrawElementsInstanced, only use it by default if they exist
+        this.useInstancing = GLContext.getCapabilities().OpenGL33;
+        this.instanceVbo = loader.createEmptyVbo(MAX_INSTANCES * INSTANCE_DATA_LENGTH);
+
+        // A deleted VAO's id can be handed out again, and the new VAO won't point at the instance VBO yet
+        loader.addModelReleaseListener(vaoID -> instancedVaos.remove(vaoID));
 
         shader.start();
         shader.loadProjectionMatrix(projectionMatrix); // Load the projection matrix it into the shader code
+        shader.connectTextureUnits();
         shader.stop();
     }
 
@@ -31,61 +71,209 @@ public class EntityRenderer {
         renderer will bind & unbind the textures and VBOs when each entity would be rendered, entailing if 100
         stall objects were rendered, it would bind/unbind the textures, VBOs and shaders 100 times; But now it
         only for it once.
+
+        With instancing enabled, the transformation matrices and atlas offsets of a whole group are written into
+        one streaming VBO and the group is drawn with a single draw call, instead of one draw call (and two
+        uniform uploads) per entity.
+
+        The draws are sorted by a key made of the state they need (see RenderKeys) & then submitted in that order,
+        so draws needing the same state follow each other. Each batch just sets everything it needs through GLState
+        (and the material uniforms through the shader), which skips whatever's already set: batches sharing a mesh
+        stay bound & the culling is only switched between the opaque & the alpha tested draws. Nothing is unbound
+        between batches anymore, vertex attribute arrays being enabled is part of the VAO's own state.
     */
-    public void render(Map<TexturedModel, List<Entity>> entities) {
-        // Iterate over all grouped entities
-        for(TexturedModel model: entities.keySet()) {
-            prepareTexturedModel(model); // For each entity, we bind the VBOs & activate its texture
-            List<Entity> batch = entities.get(model); // Get the list of this entity
-
-            // For every entity in this group
-            for(Entity entity : batch) {
-                prepareInstance(entity); // Create its transformation matrix
-                // Draw the entity using the necessary information
-                GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+    public void render(RenderQueue queue, Vector3f cameraPosition) {
+        shader.loadUseInstancing(useInstancing);
+
+        collectDraws(queue, cameraPosition);
+        keys.sort();
+
+        int callsBefore = GLState.getCalls();
+        int skippedBefore = GLState.getSkippedCalls();
+        int lastBatch = -1;
+
+        for(int i = 0; i < keys.size(); i++) {
+            int draw = keys.getDraw(i);
+            int batch = drawBatches[draw];
+            TexturedModel model = queue.getBatchModel(batch);
+            if(batch != lastBatch) {
+                applyState(model); // The draws of a batch are next to each other, they all need the same state
+                lastBatch = batch;
             }
 
-            unbindTexturedModel(); // When all entities of this group have been rendered, unbind the textures and VBOs
+            if(useInstancing) {
+                renderInstanced(model, queue.getVisibleSlots(batch), queue.getVisibleCount(batch));
+            }
+            else {
+                prepareInstance(drawSlots[draw]); // Load its transformation matrix
+                // Draw the entity using the necessary information
+                GL11.glDrawElements(GL11.GL_TRIANGLES, model.getRawModel().getVertexCount(), model.getRawModel().getIndexType(), 0);
+            }
         }
+
+        MainRenderer.enableCulling(); // As the other renderers expect it
+        GLState.bindVertexArray(0); // Unbind the last VAO
+
+        stateChanges = GLState.getCalls() - callsBefore;
+        stateChangesAvoided = GLState.getSkippedCalls() - skippedBefore;
     }
 
-    public void prepareTexturedModel(TexturedModel model) {
-        RawModel rawModel = model.getRawModel(); // Fetch this textured models base mesh (RawModel)
+    // A key for every draw of the frame
+    private void collectDraws(RenderQueue queue, Vector3f cameraPosition) {
+        keys.clear();
+        drawCount = 0;
+        float[] bounds = Entity.getStore().getBounds();
+
+        // Iterate over all batches that have something visible in them
+        for(int batch = 0; batch < queue.getBatchCount(); batch++) {
+            int count = queue.getVisibleCount(batch);
+            if(count == 0) {
+                continue;
+            }
 
-        GL30.glBindVertexArray(rawModel.getVaoId()); // Bind the VAO
+            TexturedModel model = queue.getBatchModel(batch);
+            ModelTexture texture = model.getTexture();
+            int vao = model.getRawModel().getVaoId();
+            int pass = texture.getHasTransparency() ? RenderKeys.PASS_ALPHA_TESTED : RenderKeys.PASS_OPAQUE;
+            int shaderVariant = (texture.getUseFakeLighting() ? 1 : 0) | (texture.isInTextureArray() ? 2 : 0);
 
-        GL20.glEnableVertexAttribArray(0); // Enable the vertices VBO
-        GL20.glEnableVertexAttribArray(1); // Enable the texture VBO
-        GL20.glEnableVertexAttribArray(2); // Enable the normals VBO
+            if(useInstancing) {
+                // One draw for the whole batch, there's never another with the same state to order it against
+                addDraw(RenderKeys.encode(pass, shaderVariant, vao, texture.getTextureID(), 0), batch, -1);
+                continue;
+            }
 
-        // Load the damper and reflectivity & texture atlas & variables into the shader code from the texture
+            int[] slots = queue.getVisibleSlots(batch);
+            for(int i = 0; i < count; i++) {
+                int offset = slots[i] * 4; // The centre of its bounds, as of the entity store's update
+                float dx = bounds[offset] - cameraPosition.x;
+                float dy = bounds[offset + 1] - cameraPosition.y;
+                float dz = bounds[offset + 2] - cameraPosition.z;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                int depth = (int) (distance / MainRenderer.FAR_PLANE * RenderKeys.MAX_DEPTH);
+                addDraw(RenderKeys.encode(pass, shaderVariant, vao, texture.getTextureID(), depth), batch, slots[i]);
+            }
+        }
+    }
+
+    private void addDraw(long key, int batch, int slot) {
+        if(drawCount == drawBatches.length) {
+            drawBatches = Arrays.copyOf(drawBatches, drawCount * 2);
+            drawSlots = Arrays.copyOf(drawSlots, drawCount * 2);
+        }
+        drawBatches[drawCount] = batch;
+        drawSlots[drawCount] = slot;
+        keys.add(key, drawCount);
+        drawCount++;
+    }
+
+    // Set what a model's draw needs, GLState & the shader skip everything that's already as it should be
+    private void applyState(TexturedModel model) {
+        RawModel rawModel = model.getRawModel();
         ModelTexture texture = model.getTexture();
-        shader.loadNumberOfRows(texture.getNumberOfRows());
 
         if(texture.getHasTransparency()) {
-            MainRenderer.disableCulling();
+            MainRenderer.disableCulling(); // Alpha tested models (grass, ferns, ...) are seen from both sides
         }
+        else {
+            MainRenderer.enableCulling();
+        }
+
+        GLState.bindVertexArray(rawModel.getVaoId()); // Bind the VAO
+        GLState.enableVertexAttributes(rawModel.getVertexFormat()); // Enable the position, texture & normal attributes
+        if(useInstancing) {
+            bindInstanceAttributes(rawModel);
+        }
+
+        // Load the damper and reflectivity & texture atlas & variables into the shader code from the texture
+        shader.loadNumberOfRows(texture.getNumberOfRows());
         shader.loadFakeLighting(texture.getUseFakeLighting());
         shader.loadShineVariables(texture.getShineDamper(), texture.getReflectivity());
+        shader.loadUseTextureArray(texture.isInTextureArray());
 
-        // Activate and bind the texture
-        GL13.glActiveTexture(GL13.GL_TEXTURE0);
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getTextureID());
+        // Activate and bind the texture; texture arrays go on their own unit (see StaticShader.connectTextureUnits)
+        if(texture.isInTextureArray()) {
+            GLState.bindTexture(1, GL30.GL_TEXTURE_2D_ARRAY, texture.getTextureID());
+        }
+        else {
+            GLState.bindTexture(0, GL11.GL_TEXTURE_2D, texture.getTextureID());
+        }
     }
 
-    public void unbindTexturedModel() {
-        MainRenderer.enableCulling();
-        GL20.glDisableVertexAttribArray(0); // Disable the vertices VBO after it's rendered
-        GL20.glDisableVertexAttribArray(1); // Disable the texture VBO after it's rendered
-        GL20.glDisableVertexAttribArray(2); // Disable the normals VBO after it's rendered
+    // Draw a whole group of entities sharing a model with as few draw calls as possible
+    private void renderInstanced(TexturedModel model, int[] slots, int batchSize) {
+        RawModel rawModel = model.getRawModel(); // Its instance attributes were enabled along with the VAO
 
-        GL30.glBindVertexArray(0); // Unbind the vertices VBO
+        // Groups larger than the instance VBO are drawn in chunks of MAX_INSTANCES
+        for(int start = 0; start < batchSize; start += MAX_INSTANCES) {
+            int count = Math.min(MAX_INSTANCES, batchSize - start);
+
+            instanceBuffer.clear();
+            for(int i = start; i < start + count; i++) {
+                storeInstanceData(slots[i]);
+            }
+            instanceBuffer.flip();
+
+            loader.updateVbo(instanceVbo, instanceBuffer);
+            GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, rawModel.getVertexCount(), rawModel.getIndexType(), 0, count);
+        }
     }
 
-    public void prepareInstance(Entity entity) {
-        // Create a transformation matrix for this entity
-        Matrix4f transformationMatrix = MatrixMath.createTransformationMatrix(entity.getPosition(), entity.getRotX(), entity.getRotY(), entity.getRotZ(), entity.getScale());
-        shader.loadTransformationMatrix(transformationMatrix); // Load the matrix into the shader
-        shader.loadOffset(entity.getTextureXOffset(), entity.getTextureYOffset()); // Load the offset into the texture atlas for this entity
+    // Point the VAO at the instance VBO the first time it's drawn instanced & enable the per-instance attributes
+    private void bindInstanceAttributes(RawModel rawModel) {
+        int vaoID = rawModel.getVaoId();
+        if(instancedVaos.add(vaoID)) {
+            for(int column = 0; column < 4; column++) {
+                loader.addInstancedAttribute(vaoID, instanceVbo, INSTANCE_MATRIX_ATTRIBUTE + column, 4, INSTANCE_DATA_LENGTH, column * 4);
+            }
+            loader.addInstancedAttribute(vaoID, instanceVbo, INSTANCE_OFFSET_ATTRIBUTE, 2, INSTANCE_DATA_LENGTH, 16);
+            loader.addInstancedAttribute(vaoID, instanceVbo, INSTANCE_LAYER_ATTRIBUTE, 1, INSTANCE_DATA_LENGTH, 18);
+        }
+
+        for(int i = INSTANCE_MATRIX_ATTRIBUTE; i <= INSTANCE_LAYER_ATTRIBUTE; i++) {
+            GLState.enableVertexAttribArray(i);
+        }
+    }
+
+    // Append an entity's transformation matrix (column major, like the shader expects), atlas offset & array layer
+    private void storeInstanceData(int slot) {
+        EntityStore store = Entity.getStore();
+        store.getTransforms().storeWorldMatrix(slot, instanceBuffer); // Straight out of the transform store, only recomputed when it moves
+        instanceBuffer.put(getTextureXOffset(store, slot));
+        instanceBuffer.put(getTextureYOffset(store, slot));
+        instanceBuffer.put(store.getModelAt(slot).getTexture().getLayer()); // A batch can mix layers of one texture array
+    }
+
+    // The entity in an entity store slot
+    public void prepareInstance(int slot) {
+        // Load this entity's transformation matrix from the transform store into the shader
+        EntityStore store = Entity.getStore();
+        TransformStore transforms = store.getTransforms();
+        shader.loadTransformationMatrix(transforms.getWorldMatrices(), transforms.getWorldMatrixOffset(slot));
+        shader.loadOffset(getTextureXOffset(store, slot), getTextureYOffset(store, slot)); // Load the offset into the texture atlas for this entity
+        shader.loadLayer(store.getModelAt(slot).getTexture().getLayer()); // And the layer of its texture array, if it uses one
+    }
+
+    // The offset into the texture atlas of the entity in a slot, like Entity.getTextureXOffset() & getTextureYOffset()
+    private static float getTextureXOffset(EntityStore store, int slot) {
+        int rows = store.getModelAt(slot).getTexture().getNumberOfRows();
+        return (float) (store.getAtlasIndexAt(slot) % rows) / (float) rows;
+    }
+
+    private static float getTextureYOffset(EntityStore store, int slot) {
+        int rows = store.getModelAt(slot).getTexture().getNumberOfRows();
+        return (float) (store.getAtlasIndexAt(slot) / rows) / (float) rows;
+    }
+
+    // Getters
+    public boolean isUsingInstancing() { return useInstancing; }
+
+    public int getStateChanges() { return stateChanges; }
+
+    public int getStateChangesAvoided() { return stateChangesAvoided; }
+
+    // Setters
+    public void setUseInstancing(boolean useInstancing) {
+        this.useInstancing = useInstancing && GLContext.getCapabilities().OpenGL33;
     }
 }
@@ -0,0 +1,413 @@
+package RenderEngine;
+
+import Models.VertexFormat;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/*
+    A cache of the GL state the renderers change, which every renderer goes through instead of calling GL directly:
+    the program in use, the bound VAO & which of its vertex attribute arrays are enabled, the texture bound to each
+    target of each texture unit, the enabled capabilities, face culling, the depth mask & range and the viewport.
+    A call that wouldn't change anything is skipped, so renderers can set what they need without knowing what the
+    one before them left bound, and it costs nothing when it's already there.
+
+    Everything starts out unknown, so the first call for each piece of state always goes through. Anything that
+    changes GL state behind the cache's back has to call invalidate() afterwards.
+
+    With verification on, every call is followed by reading the state back with glGet & comparing it with the cache;
+    a difference is reported & the cache corrected. It's slow (every glGet waits for the driver), so it's only for
+    tracking down code that bypasses the cache, & it's how the cache itself can be checked in a headless context.
+ */
+public class GLState {
+
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 16;
+
+    // Texture targets whose bindings are tracked, and the glGet names of their bindings
+    private static final int[] TEXTURE_TARGETS = { GL11.GL_TEXTURE_2D, GL30.GL_TEXTURE_2D_ARRAY, GL13.GL_TEXTURE_CUBE_MAP };
+    private static final int[] TEXTURE_BINDINGS = { GL11.GL_TEXTURE_BINDING_2D, GL30.GL_TEXTURE_BINDING_2D_ARRAY,
+            GL13.GL_TEXTURE_BINDING_CUBE_MAP };
+
+    private static int program = UNKNOWN;
+    private static int vertexArray = UNKNOWN;
+    private static int activeTextureUnit = UNKNOWN;
+    private static final int[][] textures = new int[MAX_TEXTURE_UNITS][TEXTURE_TARGETS.length];
+
+    // Enabled capabilities, added the first time each one is used
+    private static int[] capabilities = new int[8];
+    private static int[] capabilityStates = new int[8]; // 1 enabled, 0 disabled, or UNKNOWN
+    private static int capabilityCount = 0;
+
+    private static int cullFace = UNKNOWN;
+    private static int depthMask = UNKNOWN; // 1 if depth writes are on
+    private static float depthNear = Float.NaN, depthFar = Float.NaN;
+    private static final int[] viewport = new int[4];
+    private static boolean viewportKnown = false;
+
+    // Per VAO id, which vertex attribute arrays are known to be enabled, & which are known at all
+    private static int[] enabledAttributes = new int[64];
+    private static int[] knownAttributes = new int[64];
+
+    private static boolean verify = false;
+    private static final IntBuffer queryInts = BufferUtils.createIntBuffer(16);
+    private static final FloatBuffer queryFloats = BufferUtils.createFloatBuffer(16);
+
+    // Counts of the calls made & skipped this frame & the last one, and of differences verification found
+    private static int calls = 0, skippedCalls = 0;
+    private static int lastFrameCalls = 0, lastFrameSkippedCalls = 0;
+    private static int mismatches = 0;
+
+    static {
+        invalidate();
+    }
+
+    // Forget everything, so the next call for each piece of state goes through
+    public static void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        activeTextureUnit = UNKNOWN;
+        for(int[] unit : textures) {
+            Arrays.fill(unit, UNKNOWN);
+        }
+        Arrays.fill(capabilityStates, UNKNOWN);
+        cullFace = UNKNOWN;
+        depthMask = UNKNOWN;
+        depthNear = depthFar = Float.NaN;
+        viewportKnown = false;
+        Arrays.fill(knownAttributes, 0);
+    }
+
+    public static void useProgram(int id) {
+        if(program != id) {
+            GL20.glUseProgram(id);
+            program = id;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            program = check("program", program, GL11.glGetInteger(GL20.GL_CURRENT_PROGRAM));
+        }
+    }
+
+    public static void bindVertexArray(int id) {
+        if(vertexArray != id) {
+            GL30.glBindVertexArray(id);
+            vertexArray = id;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            vertexArray = check("vertex array", vertexArray, GL11.glGetInteger(GL30.GL_VERTEX_ARRAY_BINDING));
+        }
+    }
+
+    // Enabled vertex attribute arrays are part of the bound VAO's state, so they're tracked per VAO
+    public static void enableVertexAttribArray(int index) {
+        setVertexAttribArray(index, true);
+    }
+
+    public static void disableVertexAttribArray(int index) {
+        setVertexAttribArray(index, false);
+    }
+
+    // Enable every attribute of a vertex format on the bound VAO
+    public static void enableVertexAttributes(VertexFormat format) {
+        for(VertexFormat.Attribute attribute : format.getAttributes()) {
+            setVertexAttribArray(attribute.getIndex(), true);
+        }
+    }
+
+    private static void setVertexAttribArray(int index, boolean enabled) {
+        int vao = vertexArray;
+        if(vao == UNKNOWN) {
+            vao = GL11.glGetInteger(GL30.GL_VERTEX_ARRAY_BINDING); // Only right after invalidate()
+            vertexArray = vao;
+        }
+        if(vao >= enabledAttributes.length) {
+            enabledAttributes = Arrays.copyOf(enabledAttributes, Math.max(vao + 1, enabledAttributes.length * 2));
+            knownAttributes = Arrays.copyOf(knownAttributes, enabledAttributes.length);
+        }
+
+        int bit = 1 << index;
+        boolean known = (knownAttributes[vao] & bit) != 0;
+        if(!known || ((enabledAttributes[vao] & bit) != 0) != enabled) {
+            if(enabled) {
+                GL20.glEnableVertexAttribArray(index);
+                enabledAttributes[vao] |= bit;
+            }
+            else {
+                GL20.glDisableVertexAttribArray(index);
+                enabledAttributes[vao] &= ~bit;
+            }
+            knownAttributes[vao] |= bit;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify && vao == 0) {
+            // Nothing to read back: in a core profile there are no attribute arrays without a VAO, the call failed
+            System.err.println("GL state: vertex attribute array " + index + " changed with no VAO bound");
+        }
+        else if(verify) {
+            queryInts.clear();
+            GL20.glGetVertexAttrib(index, GL20.GL_VERTEX_ATTRIB_ARRAY_ENABLED, queryInts);
+            int actual = check("vertex attribute array " + index + " of VAO " + vao,
+                    (enabledAttributes[vao] & bit) != 0 ? GL11.GL_TRUE : GL11.GL_FALSE, queryInts.get(0));
+            enabledAttributes[vao] = actual == GL11.GL_TRUE ? enabledAttributes[vao] | bit : enabledAttributes[vao] & ~bit;
+        }
+    }
+
+    // Bind a texture to one target of a texture unit (0 for GL_TEXTURE0 & so on), making that unit the active one
+    public static void bindTexture(int unit, int target, int texture) {
+        activeTexture(unit);
+
+        int targetIndex = getTargetIndex(target);
+        if(targetIndex == UNKNOWN) {
+            GL11.glBindTexture(target, texture); // Not a target that's tracked
+            calls++;
+            return;
+        }
+
+        if(textures[unit][targetIndex] != texture) {
+            GL11.glBindTexture(target, texture);
+            textures[unit][targetIndex] = texture;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            textures[unit][targetIndex] = check("texture unit " + unit + " binding " + target,
+                    textures[unit][targetIndex], GL11.glGetInteger(TEXTURE_BINDINGS[targetIndex]));
+        }
+    }
+
+    private static void activeTexture(int unit) {
+        if(activeTextureUnit != unit) {
+            GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+            activeTextureUnit = unit;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            activeTextureUnit = check("active texture unit", activeTextureUnit,
+                    GL11.glGetInteger(GL13.GL_ACTIVE_TEXTURE) - GL13.GL_TEXTURE0);
+        }
+    }
+
+    private static int getTargetIndex(int target) {
+        for(int i = 0; i < TEXTURE_TARGETS.length; i++) {
+            if(TEXTURE_TARGETS[i] == target) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public static void enable(int capability) {
+        setCapability(capability, true);
+    }
+
+    public static void disable(int capability) {
+        setCapability(capability, false);
+    }
+
+    private static void setCapability(int capability, boolean enabled) {
+        int index = getCapabilityIndex(capability);
+        int state = enabled ? 1 : 0;
+        if(capabilityStates[index] != state) {
+            if(enabled) {
+                GL11.glEnable(capability);
+            }
+            else {
+                GL11.glDisable(capability);
+            }
+            capabilityStates[index] = state;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            capabilityStates[index] = check("capability " + capability, capabilityStates[index],
+                    GL11.glIsEnabled(capability) ? 1 : 0);
+        }
+    }
+
+    private static int getCapabilityIndex(int capability) {
+        for(int i = 0; i < capabilityCount; i++) {
+            if(capabilities[i] == capability) {
+                return i;
+            }
+        }
+
+        if(capabilityCount == capabilities.length) {
+            capabilities = Arrays.copyOf(capabilities, capabilityCount * 2);
+            capabilityStates = Arrays.copyOf(capabilityStates, capabilityCount * 2);
+        }
+        capabilities[capabilityCount] = capability;
+        capabilityStates[capabilityCount] = UNKNOWN;
+        return capabilityCount++;
+    }
+
+    public static void cullFace(int mode) {
+        if(cullFace != mode) {
+            GL11.glCullFace(mode);
+            cullFace = mode;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            cullFace = check("cull face", cullFace, GL11.glGetInteger(GL11.GL_CULL_FACE_MODE));
+        }
+    }
+
+    public static void depthMask(boolean enabled) {
+        int state = enabled ? 1 : 0;
+        if(depthMask != state) {
+            GL11.glDepthMask(enabled);
+            depthMask = state;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            depthMask = check("depth mask", depthMask, GL11.glGetBoolean(GL11.GL_DEPTH_WRITEMASK) ? 1 : 0);
+        }
+    }
+
+    public static void depthRange(float near, float far) {
+        if(depthNear != near || depthFar != far) {
+            GL11.glDepthRange(near, far);
+            depthNear = near;
+            depthFar = far;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            queryFloats.clear();
+            GL11.glGetFloat(GL11.GL_DEPTH_RANGE, queryFloats);
+            if(queryFloats.get(0) != depthNear || queryFloats.get(1) != depthFar) {
+                report("depth range", depthNear + ", " + depthFar, queryFloats.get(0) + ", " + queryFloats.get(1));
+                depthNear = queryFloats.get(0);
+                depthFar = queryFloats.get(1);
+            }
+        }
+    }
+
+    public static void viewport(int x, int y, int width, int height) {
+        if(!viewportKnown || viewport[0] != x || viewport[1] != y || viewport[2] != width || viewport[3] != height) {
+            GL11.glViewport(x, y, width, height);
+            viewport[0] = x;
+            viewport[1] = y;
+            viewport[2] = width;
+            viewport[3] = height;
+            viewportKnown = true;
+            calls++;
+        }
+        else {
+            skippedCalls++;
+        }
+
+        if(verify) {
+            queryInts.clear();
+            GL11.glGetInteger(GL11.GL_VIEWPORT, queryInts);
+            for(int i = 0; i < 4; i++) {
+                viewport[i] = check("viewport[" + i + "]", viewport[i], queryInts.get(i));
+            }
+        }
+    }
+
+    // Deleting an object unbinds it wherever it's bound, so the cache has to forget it as well
+    public static void deleteProgram(int id) {
+        GL20.glDeleteProgram(id);
+        if(program == id) {
+            program = UNKNOWN; // A deleted program stays in use until another one is, so it's not simply 0
+        }
+    }
+
+    public static void deleteVertexArray(int id) {
+        GL30.glDeleteVertexArrays(id);
+        if(vertexArray == id) {
+            vertexArray = 0;
+        }
+        if(id < knownAttributes.length) {
+            knownAttributes[id] = 0; // A new VAO can get the same id
+        }
+    }
+
+    public static void deleteTexture(int id) {
+        GL11.glDeleteTextures(id);
+        for(int[] unit : textures) {
+            for(int target = 0; target < unit.length; target++) {
+                if(unit[target] == id) {
+                    unit[target] = 0;
+                }
+            }
+        }
+    }
+
+    // Start counting the next frame's calls
+    public static void endFrame() {
+        lastFrameCalls = calls;
+        lastFrameSkippedCalls = skippedCalls;
+        calls = 0;
+        skippedCalls = 0;
+    }
+
+    private static int check(String state, int cached, int actual) {
+        if(cached != actual) {
+            report(state, Integer.toString(cached), Integer.toString(actual));
+        }
+        return actual;
+    }
+
+    private static void report(String state, String cached, String actual) {
+        mismatches++;
+        System.err.println("GL state cache out of sync, " + state + ": cached " + cached + ", actually " + actual);
+    }
+
+    // Getters
+    public static boolean isVerifying() { return verify; }
+
+    public static int getCalls() { return calls; } // This frame so far, to measure a part of it
+
+    public static int getSkippedCalls() { return skippedCalls; }
+
+    public static int getLastFrameCalls() { return lastFrameCalls; }
+
+    public static int getLastFrameSkippedCalls() { return lastFrameSkippedCalls; }
+
+    public static int getMismatches() { return mismatches; }
+
+    // Setters
+    public static void setVerify(boolean verify) { GLState.verify = verify; }
+}
@@ -1,78 +1,587 @@
 package RenderEngine;
 
+import Models.BoundingVolume;
+import Models.MeshData;
 import Models.RawModel;
+import Models.VertexFormat;
+import RenderEngine.ResourceRegistry.Kind;
+import RenderEngine.ResourceRegistry.Resource;
+import Terrains.HeightField;
+import Textures.KTXFile;
+import Textures.TextureArrayData;
 import Textures.TextureData;
+import Tools.ContentHash;
 import de.matthiasmann.twl.utils.PNGDecoder;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.*;
-import org.newdawn.slick.opengl.Texture;
-import org.newdawn.slick.opengl.TextureLoader;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/*
+    Creates every VAO, buffer & texture of the engine. They're all tracked in a ResourceRegistry:
+        - loading something that is already resident (the same file, or different data with the same content) hands
+          out the existing GPU object & adds a reference to it instead of uploading a second copy
+        - every load must be matched by a release (releaseTexture/releaseModel/releaseVbo), the GPU object is deleted
+          once its last reference is released
+        - cleanUp() deletes whatever is still resident when the game closes
+ */
 public class Loader {
 
-    private List<Integer> VAOS = new ArrayList<>();
-    private List<Integer> VBOS = new ArrayList<>();
-    private List<Integer> TEXTURES = new ArrayList<>();
+    public static final int NOT_RESIDENT = -1;
+
+    private ResourceRegistry resources = new ResourceRegistry();
+    private boolean compressedTextures = GLContext.getCapabilities().GL_EXT_texture_compression_s3tc;
+    private List<IntConsumer> modelReleaseListeners = new ArrayList<>(); // Told the VAO id of every deleted model
 
 
+    // Interleave & quantise the vertex data into the standard vertex format, then load it into a VAO
     public RawModel loadToVAO(float[] positions, float[] textureCoords, float[] normals, int[] indices) {
-        int vaoID = createVAO(); // Create a VAO
-        bindIndicesBuffer(indices); // Bind the indices buffer to tis VAO
-        storeDataInAttributeList(0, 3, positions); // Store the vertex data into the VAO
-        storeDataInAttributeList(1, 2, textureCoords); // Store the texture data into the VAO
-        storeDataInAttributeList(2, 3, normals); // Store the normal data into the VAO
+        return loadToVAO(MeshData.fromArrays(positions, textureCoords, normals, indices, null));
+    }
+
+    public RawModel loadToVAO(MeshData mesh) {
+        return loadToVAO(null, mesh);
+    }
+
+    /*
+        Upload an already interleaved mesh; the vertex buffer holds position, texture coordinates & normal one after
+        the other for each vertex (see VertexFormat.STANDARD), so all three attributes point into the same VBO with
+        a stride of a whole vertex. The mesh's buffers can be memory mapped files, glBufferData copies them straight
+        into the buffer objects.
+
+        The key (the file the mesh came from, or null) lets later loads of the same file find it without the mesh
+        data; a mesh with the same contents as a resident one shares that one's VAO. Meshes that only have the same
+        indices (eg. terrain tiles of the same resolution) still share their index buffer.
+     */
+    public RawModel loadToVAO(String key, MeshData mesh) {
+        Resource existing = findShared(key, Kind.MESH, mesh.getContentHash(), resource ->
+                resource.getModel().getIndexType() == mesh.getIndexType()
+                        && isSameBuffer(resource.getBufferIDs()[1], mesh.getVertexData())
+                        && isSameBuffer(resource.getBufferIDs()[0], mesh.getIndexData()));
+        if(existing != null) {
+            return new RawModel(existing.getModel());
+        }
+
+        int vaoID = createVAO();
+
+        int indexVboID = loadIndexBuffer(mesh); // Binding it while the VAO is bound makes it part of the VAO
 
-        unbindVAO(); // Unbind VAO after creation
-        return new RawModel(vaoID, indices.length); // Return its raw model
+        int vertexVboID = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexVboID);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, mesh.getVertexData().duplicate(), GL15.GL_STATIC_DRAW);
+
+        VertexFormat.STANDARD.setAttributePointers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+        unbindVAO();
+
+        RawModel model = new RawModel(vaoID, mesh.getIndexCount(), mesh.getIndexType(), VertexFormat.STANDARD);
+        model.setBounds(mesh.getBounds());
+
+        long bytes = mesh.getVertexData().remaining(); // The index buffer is a resource of its own
+        resources.add(new Resource(Kind.MESH, vaoID, new int[] { indexVboID, vertexVboID }, mesh.getContentHash(),
+                true, bytes, "mesh (" + mesh.getVertexCount() + " vertices)", model), key);
+        return new RawModel(model);
+    }
+
+    // Bind the index buffer of a mesh, uploading it only if no resident mesh has the same indices
+    private int loadIndexBuffer(MeshData mesh) {
+        Resource existing = resources.findByContent(Kind.BUFFER, mesh.getIndexHash());
+        if(existing != null && isSameBuffer(existing.getGlID(), mesh.getIndexData())) {
+            GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, resources.acquire(existing).getGlID());
+            return existing.getGlID();
+        }
+
+        int indexVboID = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboID);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexData().duplicate(), GL15.GL_STATIC_DRAW);
+
+        resources.add(new Resource(Kind.BUFFER, indexVboID, null, mesh.getIndexHash(), true, mesh.getIndexData().remaining(),
+                "index buffer (" + mesh.getIndexCount() + " indices)", null), null);
+        return indexVboID;
     }
 
     // For possible GUI renders
     public RawModel loadToVAO(float[] positions, int dimensions) {
+        long contentHash = ContentHash.update(ContentHash.of(positions), dimensions);
+        Resource existing = findShared(null, Kind.MESH, contentHash, resource ->
+                resource.getModel().getVertexCount() == positions.length / dimensions
+                        && isSameBuffer(resource.getBufferIDs()[0], storeDataInFloatBuffer(positions)));
+        if(existing != null) {
+            return new RawModel(existing.getModel());
+        }
+
         int vaoID = createVAO();
-        this.storeDataInAttributeList(0, dimensions, positions);
+        int vboID = this.storeDataInAttributeList(0, dimensions, positions);
         unbindVAO();
-        return new RawModel(vaoID, positions.length / dimensions);
+
+        RawModel model = new RawModel(vaoID, positions.length / dimensions);
+        resources.add(new Resource(Kind.MESH, vaoID, new int[] { vboID }, contentHash, true, positions.length * 4L,
+                "mesh (" + model.getVertexCount() + " vertices)", model), null);
+        return new RawModel(model);
+    }
+
+    // Add a reference to an already resident model, or return null if the key hasn't been loaded
+    public RawModel acquireModel(String key) {
+        Resource resource = resources.find(key);
+        if(resource == null || resource.getKind() != Kind.MESH) {
+            return null;
+        }
+        resources.acquire(resource);
+        return new RawModel(resource.getModel());
+    }
+
+    // Drop a reference to a model; its VAO & buffers are deleted when it was the last one
+    public void releaseModel(RawModel model) {
+        Resource resource = resources.find(Kind.MESH, model.getVaoId());
+        if(resource == null) {
+            System.err.println("Released a model that isn't resident: VAO " + model.getVaoId());
+            return;
+        }
+        if(resources.release(resource)) {
+            deleteResource(resource);
+        }
+    }
+
+    // Be told the VAO id of every model that gets deleted, eg. to forget state that was set up for it
+    public void addModelReleaseListener(IntConsumer listener) {
+        modelReleaseListeners.add(listener);
     }
 
     public int loadTexture(String filename) {
-        Texture texture = null;
-        try {
-            texture = TextureLoader.getTexture("PNG", new FileInputStream("src/Resources/" + filename + ".png"));
+        String key = getTexturePath(filename);
+        int textureID = acquireTexture(key);
+        if(textureID != NOT_RESIDENT) {
+            return textureID;
+        }
+        return loadTexture(key, readTexture(filename, compressedTextures));
+    }
 
-            // Improve rendering performance by enabling mip-mapping to textures further away
-            GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
-            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
-            GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
+    /*
+        Read a texture without touching OpenGL, so it's safe to call from any thread. A pre-compressed KTX copy made
+        by the TextureConverter is used if there is one (and allowed), otherwise the PNG is decoded.
+     */
+    public static TextureData readTexture(String filename, boolean allowCompressed) {
+        if(allowCompressed) {
+            TextureData compressed = KTXFile.read(Paths.get(getCompressedTexturePath(filename)));
+            if(compressed != null) {
+                return compressed;
+            }
         }
-        catch (IOException e) {
-            System.err.println("An error occured when loading in texture: " + filename);
-            e.printStackTrace();
+        return decodeTextureFile(getTexturePath(filename));
+    }
+
+    public int loadTexture(TextureData data) {
+        return loadTexture(null, data);
+    }
+
+    /*
+        Upload an already decoded texture. Decoding the PNG is the slow part and doesn't need the GL context, so the
+        AssetPipeline does it on a worker thread and only calls this on the main thread.
+     */
+    public int loadTexture(String key, TextureData data) {
+        Resource existing = findShared(key, Kind.TEXTURE, data.getContentHash(), resource ->
+                isSameTexture(GL11.GL_TEXTURE_2D, resource.getGlID(), data));
+        if(existing != null) {
+            return existing.getGlID();
+        }
+
+        if(data.isCompressed()) {
+            return loadCompressedTexture(key, data);
+        }
+
+        int textureID = GL11.glGenTextures();
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, textureID);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, data.getWidth(), data.getHeight(), 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, data.getBuffer());
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+
+        // Improve rendering performance by enabling mip-mapping to textures further away
+        GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+        GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
+
+        long bytes = data.getWidth() * data.getHeight() * 4L * 4 / 3; // The mipmap chain adds another third
+        resources.add(new Resource(Kind.TEXTURE, textureID, null, data.getContentHash(), true, bytes,
+                "texture (" + data.getWidth() + "x" + data.getHeight() + ")", null), key);
+        return textureID;
+    }
+
+    /*
+        Upload a block compressed texture with its mip chain straight from the (memory mapped) file; there's nothing
+        to decode and no mipmaps to generate, and it stays compressed in video memory (4x smaller for DXT5, 8x for
+        DXT1).
+     */
+    private int loadCompressedTexture(String key, TextureData data) {
+        ByteBuffer[] levels = data.getMipLevels();
+
+        int textureID = GL11.glGenTextures();
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, textureID);
+
+        long bytes = 0;
+        for(int level = 0; level < levels.length; level++) {
+            int width = Math.max(1, data.getWidth() >> level);
+            int height = Math.max(1, data.getHeight() >> level);
+            GL13.glCompressedTexImage2D(GL11.GL_TEXTURE_2D, level, data.getCompressedFormat(), width, height, 0, levels[level].duplicate());
+            bytes += levels[level].remaining();
+        }
+
+        // Only sample the levels that are in the file, in case its mip chain doesn't go all the way down to 1x1
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levels.length - 1);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER,
+                levels.length > 1 ? GL11.GL_LINEAR_MIPMAP_LINEAR : GL11.GL_LINEAR);
+        GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
+
+        resources.add(new Resource(Kind.TEXTURE, textureID, null, data.getContentHash(), true, bytes,
+                "compressed texture (" + data.getWidth() + "x" + data.getHeight() + ")", null), key);
+        return textureID;
+    }
+
+    /*
+        Upload same size textures as the layers of one GL_TEXTURE_2D_ARRAY. Models using any of its layers can then
+        be drawn with this one texture bound, instead of binding a texture per model. Compressed layers keep their
+        mip chain from the file, uncompressed ones have mipmaps generated for the whole array at once.
+     */
+    public int loadTextureArray(String key, TextureArrayData data) {
+        Resource existing = findShared(key, Kind.TEXTURE_ARRAY, data.getContentHash(), resource ->
+                isSameTextureArray(resource.getGlID(), data));
+        if(existing != null) {
+            return existing.getGlID();
+        }
+
+        ByteBuffer[] levels = data.getLevels();
+
+        int textureID = GL11.glGenTextures();
+        GLState.bindTexture(0, GL30.GL_TEXTURE_2D_ARRAY, textureID);
+
+        long bytes;
+        if(data.isCompressed()) {
+            bytes = 0;
+            for(int level = 0; level < levels.length; level++) {
+                int width = Math.max(1, data.getWidth() >> level);
+                int height = Math.max(1, data.getHeight() >> level);
+                GL13.glCompressedTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, level, data.getCompressedFormat(), width, height,
+                        data.getLayerCount(), 0, levels[level].duplicate());
+                bytes += levels[level].remaining();
+            }
+            GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL12.GL_TEXTURE_MAX_LEVEL, levels.length - 1);
+        }
+        else {
+            GL12.glTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, GL11.GL_RGBA8, data.getWidth(), data.getHeight(),
+                    data.getLayerCount(), 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, levels[0].duplicate());
+            GL30.glGenerateMipmap(GL30.GL_TEXTURE_2D_ARRAY);
+            bytes = levels[0].remaining() * 4L / 3; // The mipmap chain adds another third
+        }
+
+        GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+        GL11.glTexParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MIN_FILTER,
+                levels.length > 1 || !data.isCompressed() ? GL11.GL_LINEAR_MIPMAP_LINEAR : GL11.GL_LINEAR);
+        GL11.glTexParameterf(GL30.GL_TEXTURE_2D_ARRAY, GL14.GL_TEXTURE_LOD_BIAS, -0.4f);
+        GLState.bindTexture(0, GL30.GL_TEXTURE_2D_ARRAY, 0);
+
+        resources.add(new Resource(Kind.TEXTURE_ARRAY, textureID, null, data.getContentHash(), true, bytes,
+                "texture array (" + data.getLayerCount() + " x " + data.getWidth() + "x" + data.getHeight() + ")", null), key);
+        return textureID;
+    }
+
+    // A texture array is keyed by the files of all its layers
+    public static String getTextureArrayKey(String[] filenames) {
+        return "src/Resources/" + String.join("|", filenames);
+    }
+
+    /*
+        Upload the heights of a terrain tile as a single channel float texture, one texel per sample, which the level
+        of detail renderer displaces its grid meshes with. Linear filtering interpolates between samples, and the
+        edges are clamped so sampling right at a tile's edge doesn't wrap around to the other side.
+     */
+    public int loadHeightTexture(HeightField heights) {
+        Resource existing = findShared(null, Kind.TEXTURE, heights.getContentHash(), resource ->
+                isSameHeightTexture(resource.getGlID(), heights));
+        if(existing != null) {
+            return existing.getGlID();
+        }
+
+        int size = heights.getVertexCount();
+        FloatBuffer samples = BufferUtils.createFloatBuffer(size * size);
+        for(int z = 0; z < size; z++) {
+            for(int x = 0; x < size; x++) {
+                samples.put(heights.getSample(x, z));
+            }
         }
+        samples.flip();
+
+        int textureID = GL11.glGenTextures();
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, textureID);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL30.GL_R32F, size, size, 0, GL11.GL_RED, GL11.GL_FLOAT, samples);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, 0);
+
+        resources.add(new Resource(Kind.TEXTURE, textureID, null, heights.getContentHash(), true, size * size * 4L,
+                "height texture (" + size + "x" + size + ")", null), null);
+        return textureID;
+    }
 
-        assert texture != null;
-        int textureID = texture.getTextureID();
-        TEXTURES.add(textureID);
+    /*
+        An empty RGBA texture for something to be rendered into (eg. through a frame buffer), findable by its key with
+        acquireTexture(). It's filtered with mip maps, which whatever renders into it has to generate afterwards.
+     */
+    public int createRenderTexture(String key, int width, int height) {
+        int textureID = GL11.glGenTextures();
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, textureID);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, 0);
+
+        long bytes = (long) width * height * 4 * 4 / 3; // With the mip chain
+        resources.add(new Resource(Kind.TEXTURE, textureID, null, 0, false, bytes,
+                "render texture (" + width + "x" + height + ")", null), key);
         return textureID;
     }
 
+    // Add a reference to an already resident texture, or return NOT_RESIDENT if the key hasn't been loaded
+    public int acquireTexture(String key) {
+        Resource resource = resources.find(key);
+        if(resource == null || resource.getKind() == Kind.MESH || resource.getKind() == Kind.BUFFER) {
+            return NOT_RESIDENT;
+        }
+        return resources.acquire(resource).getGlID();
+    }
+
+    // Drop a reference to a texture, cube map or texture array; it's deleted when it was the last one
+    public void releaseTexture(int textureID) {
+        Resource resource = resources.find(Kind.TEXTURE, textureID);
+        if(resource == null) {
+            resource = resources.find(Kind.CUBE_MAP, textureID);
+        }
+        if(resource == null) {
+            resource = resources.find(Kind.TEXTURE_ARRAY, textureID);
+        }
+        if(resource == null) {
+            System.err.println("Released a texture that isn't resident: " + textureID);
+            return;
+        }
+        if(resources.release(resource)) {
+            deleteResource(resource);
+        }
+    }
+
+    /*
+        Look a resource up by key, then by content; either way it gets another reference (& the key as an alias). A
+        match on the content hash alone isn't trusted: sameContent compares the resident copy with the new data first
+        (sizes, then every byte read back from the GPU), so a hash collision uploads the new data instead of silently
+        drawing the wrong texture or mesh. That's only ever done on a hit, which is rare & at load time.
+     */
+    private Resource findShared(String key, Kind kind, long contentHash, Predicate<Resource> sameContent) {
+        Resource resource = resources.find(key);
+        if(resource == null || resource.getKind() != kind) {
+            resource = resources.findByContent(kind, contentHash);
+            if(resource != null && !sameContent.test(resource)) {
+                System.err.println("Content hash collision with " + resource.getName() + ", loading it separately");
+                return null;
+            }
+        }
+        if(resource == null) {
+            return null;
+        }
+        resources.addKey(resource, key);
+        return resources.acquire(resource);
+    }
+
+    // Whether a buffer object holds exactly the remaining bytes of data
+    private static boolean isSameBuffer(int bufferID, ByteBuffer data) {
+        // The copy read target isn't part of any VAO, so this can't disturb the one being built
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, bufferID);
+        boolean same = false;
+        if(GL15.glGetBufferParameteri(GL31.GL_COPY_READ_BUFFER, GL15.GL_BUFFER_SIZE) == data.remaining()) {
+            ByteBuffer contents = BufferUtils.createByteBuffer(data.remaining());
+            GL15.glGetBufferSubData(GL31.GL_COPY_READ_BUFFER, 0, contents);
+            same = contents.equals(data);
+        }
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        return same;
+    }
+
+    private static boolean isSameBuffer(int bufferID, FloatBuffer data) {
+        ByteBuffer bytes = BufferUtils.createByteBuffer(data.remaining() * 4);
+        bytes.asFloatBuffer().put(data.duplicate());
+        return isSameBuffer(bufferID, bytes);
+    }
+
+    // Whether a texture has the same size, format & pixels (every mip level of a compressed one) as data
+    private static boolean isSameTexture(int target, int textureID, TextureData data) {
+        GLState.bindTexture(0, target, textureID);
+        if(!data.isCompressed()) {
+            return isSameImage(target, 0, data.getWidth(), data.getHeight(), 1, 0, data.getBuffer());
+        }
+
+        ByteBuffer[] levels = data.getMipLevels();
+        if(GL11.glGetTexParameteri(target, GL12.GL_TEXTURE_MAX_LEVEL) != levels.length - 1) {
+            return false;
+        }
+        for(int level = 0; level < levels.length; level++) {
+            if(!isSameImage(target, level, Math.max(1, data.getWidth() >> level), Math.max(1, data.getHeight() >> level),
+                    1, data.getCompressedFormat(), levels[level])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSameTextureArray(int textureID, TextureArrayData data) {
+        GLState.bindTexture(0, GL30.GL_TEXTURE_2D_ARRAY, textureID);
+        ByteBuffer[] levels = data.getLevels();
+        int levelsToCompare = data.isCompressed() ? levels.length : 1; // The others are generated from level 0
+        for(int level = 0; level < levelsToCompare; level++) {
+            if(!isSameImage(GL30.GL_TEXTURE_2D_ARRAY, level, Math.max(1, data.getWidth() >> level),
+                    Math.max(1, data.getHeight() >> level), data.getLayerCount(), data.getCompressedFormat(), levels[level])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSameCubeMap(int textureID, TextureData[] faces) {
+        GLState.bindTexture(0, GL13.GL_TEXTURE_CUBE_MAP, textureID);
+        for(int i = 0; i < faces.length; i++) {
+            if(!isSameImage(GL13.GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, faces[i].getWidth(), faces[i].getHeight(), 1, 0,
+                    faces[i].getBuffer())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSameHeightTexture(int textureID, HeightField heights) {
+        int size = heights.getVertexCount();
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, textureID);
+        if(GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_WIDTH) != size
+                || GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_HEIGHT) != size
+                || GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_INTERNAL_FORMAT) != GL30.GL_R32F) {
+            return false;
+        }
+
+        FloatBuffer samples = BufferUtils.createFloatBuffer(size * size);
+        GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, GL11.GL_RED, GL11.GL_FLOAT, samples);
+        for(int z = 0; z < size; z++) {
+            for(int x = 0; x < size; x++) {
+                if(Float.floatToIntBits(samples.get(z * size + x)) != Float.floatToIntBits(heights.getSample(x, z))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+        Whether one image of the bound texture (a mip level, or a cube map face) has the given size & holds exactly
+        the remaining bytes of data: RGBA8 pixels, or blocks of compressedFormat when that isn't 0
+     */
+    private static boolean isSameImage(int target, int level, int width, int height, int depth, int compressedFormat,
+                                       ByteBuffer data) {
+        if(GL11.glGetTexLevelParameteri(target, level, GL11.GL_TEXTURE_WIDTH) != width
+                || GL11.glGetTexLevelParameteri(target, level, GL11.GL_TEXTURE_HEIGHT) != height
+                || GL11.glGetTexLevelParameteri(target, level, GL12.GL_TEXTURE_DEPTH) != depth
+                || (GL11.glGetTexLevelParameteri(target, level, GL13.GL_TEXTURE_COMPRESSED) != GL11.GL_FALSE) != (compressedFormat != 0)) {
+            return false;
+        }
+
+        ByteBuffer contents = BufferUtils.createByteBuffer(data.remaining());
+        if(compressedFormat != 0) {
+            if(GL11.glGetTexLevelParameteri(target, level, GL11.GL_TEXTURE_INTERNAL_FORMAT) != compressedFormat
+                    || GL11.glGetTexLevelParameteri(target, level, GL13.GL_TEXTURE_COMPRESSED_IMAGE_SIZE) != data.remaining()) {
+                return false;
+            }
+            GL13.glGetCompressedTexImage(target, level, contents);
+        }
+        else {
+            if((long) width * height * depth * 4 != data.remaining()) {
+                return false;
+            }
+            GL11.glGetTexImage(target, level, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, contents);
+        }
+        return contents.equals(data);
+    }
+
+    // A single pixel texture of one colour, used in place of textures that haven't been loaded yet
+    public int createPlaceholderTexture(float r, float g, float b) {
+        ByteBuffer pixel = BufferUtils.createByteBuffer(4);
+        pixel.put((byte) (r * 255)).put((byte) (g * 255)).put((byte) (b * 255)).put((byte) 255).flip();
+        return loadTexture(new TextureData(pixel, 1, 1));
+    }
+
+    // A cube map with a single pixel of one colour on every face
+    public int createPlaceholderCubeMap(float r, float g, float b) {
+        ByteBuffer pixel = BufferUtils.createByteBuffer(4);
+        pixel.put((byte) (r * 255)).put((byte) (g * 255)).put((byte) (b * 255)).put((byte) 255).flip();
+
+        TextureData[] faces = new TextureData[6];
+        for(int i = 0; i < faces.length; i++) {
+            faces[i] = new TextureData(pixel, 1, 1);
+        }
+        return loadCubeMap(faces);
+    }
+
+    /*
+        A unit cube (-0.5 to 0.5) in the standard vertex format, drawn in place of models that haven't been loaded
+        yet. Every face has its own vertices so the normals stay flat.
+     */
+    public RawModel createPlaceholderModel() {
+        float[] positions = new float[6 * 4 * 3];
+        float[] textureCoords = new float[6 * 4 * 2];
+        float[] normals = new float[6 * 4 * 3];
+        int[] indices = new int[6 * 6];
+
+        for(int face = 0; face < 6; face++) {
+            int axis = face / 2; // 0 = x, 1 = y, 2 = z
+            float sign = face % 2 == 0 ? 1 : -1;
+            int u = (axis + 1) % 3, v = (axis + 2) % 3; // The two axes spanning this face
+
+            for(int corner = 0; corner < 4; corner++) {
+                int vertex = face * 4 + corner;
+                float cu = (corner == 1 || corner == 2) ? 0.5f : -0.5f;
+                float cv = corner >= 2 ? 0.5f : -0.5f;
+
+                positions[vertex * 3 + axis] = 0.5f * sign;
+                positions[vertex * 3 + u] = cu * sign; // Mirror the face with its sign to keep the winding outwards
+                positions[vertex * 3 + v] = cv;
+                normals[vertex * 3 + axis] = sign;
+                textureCoords[vertex * 2] = cu + 0.5f;
+                textureCoords[vertex * 2 + 1] = cv + 0.5f;
+            }
+
+            int first = face * 4;
+            int[] quad = { first, first + 1, first + 2, first, first + 2, first + 3 };
+            System.arraycopy(quad, 0, indices, face * 6, 6);
+        }
+
+        return loadToVAO(MeshData.fromArrays(positions, textureCoords, normals, indices, BoundingVolume.fromPositions(positions)));
+    }
+
     private int createVAO() {
         int vaoID = GL30.glGenVertexArrays(); // Generate a new VAO; glGenVertexArray() returns its id
-        VAOS.add(vaoID); // Store this as an initialized VAO into our tracker list
-        GL30.glBindVertexArray(vaoID); // Bind the VAO
+        GLState.bindVertexArray(vaoID); // Bind the VAO
         return vaoID; // return the id of the VAO
     }
 
-    private void storeDataInAttributeList(int attributeNumber, int coordinateSize, float[] positions) {
+    private int storeDataInAttributeList(int attributeNumber, int coordinateSize, float[] positions) {
         int vboID = GL15.glGenBuffers(); // Generate a new buffer to store into the VAO
-        VBOS.add(vboID); // Store the Vbo id in our tracker list of initialized VBOs
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID); // Bind the VBO buffer
 
         // Covert the float array data into a float buffer
@@ -82,6 +591,48 @@ public class Loader {
         // Map the VBO into memory
         GL20.glVertexAttribPointer(attributeNumber, coordinateSize, GL11.GL_FLOAT, false, 0, 0);
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0); // Now unbind it
+        return vboID;
+    }
+
+    // Create an empty VBO that will be re-filled every frame with per-instance data (streamed to the GPU)
+    public int createEmptyVbo(int floatCount) {
+        int vboID = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, floatCount * 4, GL15.GL_STREAM_DRAW);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+        // Its contents change all the time, so it's never shared with anything else
+        resources.add(new Resource(Kind.BUFFER, vboID, null, 0, false, floatCount * 4L, "streaming buffer", null), null);
+        return vboID;
+    }
+
+    public void releaseVbo(int vboID) {
+        Resource resource = resources.find(Kind.BUFFER, vboID);
+        if(resource != null && resources.release(resource)) {
+            deleteResource(resource);
+        }
+    }
+
+    /*
+        Attach a per-instance attribute stored in the given VBO to the given VAO. The attribute divisor of 1 tells
+        OpenGL to advance this attribute once per instance rather than once per vertex. The VAO remembers which VBO
+        the attribute points at, so this only has to be done once for every VAO that will be drawn instanced.
+     */
+    public void addInstancedAttribute(int vaoID, int vboID, int attribute, int dataSize, int instancedDataLength, int offset) {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+        GLState.bindVertexArray(vaoID);
+        GL20.glVertexAttribPointer(attribute, dataSize, GL11.GL_FLOAT, false, instancedDataLength * 4, offset * 4);
+        GL33.glVertexAttribDivisor(attribute, 1);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    // Replace the contents of a streaming VBO with what's between the data's position & limit. Re-specifying the
+    // store orphans the old one, so the driver doesn't have to stall waiting on draws from the previous batch that
+    // still read from it; it's only as large as what was written, not the buffer's whole capacity
+    public void updateVbo(int vboID, FloatBuffer data) {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboID);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, data, GL15.GL_STREAM_DRAW);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
     }
 
     private FloatBuffer storeDataInFloatBuffer(float[] data) {
@@ -92,21 +643,6 @@ public class Loader {
         return buffer;
     }
 
-    private void bindIndicesBuffer(int[] indices) {
-        int vboID = GL15.glGenBuffers(); // Generate a new VBO buffer
-        VBOS.add(vboID); // Store for clean up when terminating
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboID); // Bind the buffer
-        IntBuffer convertedData = storeDataInIntBuffer(indices); // Convert int[] to IntBuffer and store the data
-        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, convertedData, GL15.GL_STATIC_DRAW); // Finish the VBO generation
-    }
-
-    private IntBuffer storeDataInIntBuffer(int[] indices) {
-        IntBuffer buffer = BufferUtils.createIntBuffer(indices.length); // Create new IntBuffer
-        buffer.put(indices); // Put the data
-        buffer.flip(); // Flip to signify stoppage of writes
-        return buffer;
-    }
-
     /*
         GL Cube Map Apparatus:
             GL_TEXTURE_CUBE_MAP_POSITIVE_X = Right Face
@@ -121,12 +657,52 @@ public class Loader {
             GL_TEXTURE_CUBE_MAP_POSITIVE_X
      */
     public int loadCubeMap(String[] textureFiles) {
-        int textureID = GL11.glGenTextures();
-        GL13.glActiveTexture(textureID);
-        GL11.glBindTexture(GL13.GL_TEXTURE_CUBE_MAP, textureID);
+        String key = getCubeMapKey(textureFiles);
+        int textureID = acquireTexture(key);
+        if(textureID != NOT_RESIDENT) {
+            return textureID;
+        }
+        return loadCubeMap(key, decodeCubeMap(textureFiles));
+    }
+
+    // A cube map is keyed by all six of its files
+    public static String getCubeMapKey(String[] textureFiles) {
+        return "src/Resources/SkyboxImages/" + String.join("|", textureFiles);
+    }
 
+    // Decode the six faces of a cube map, safe to call from any thread
+    public static TextureData[] decodeCubeMap(String[] textureFiles) {
+        TextureData[] faces = new TextureData[textureFiles.length];
         for(int i = 0; i < textureFiles.length; i++) {
-            TextureData data = decodeTextureFile("src/Resources/SkyboxImages/" + textureFiles[i] + ".png");
+            faces[i] = decodeTextureFile("src/Resources/SkyboxImages/" + textureFiles[i] + ".png");
+        }
+        return faces;
+    }
+
+    public int loadCubeMap(TextureData[] faces) {
+        return loadCubeMap(null, faces);
+    }
+
+    public int loadCubeMap(String key, TextureData[] faces) {
+        long contentHash = ContentHash.EMPTY;
+        long bytes = 0;
+        for(TextureData face : faces) {
+            contentHash = ContentHash.update(contentHash, (int) face.getContentHash());
+            contentHash = ContentHash.update(contentHash, (int) (face.getContentHash() >>> 32));
+            bytes += face.getWidth() * face.getHeight() * 4L;
+        }
+
+        Resource existing = findShared(key, Kind.CUBE_MAP, contentHash, resource ->
+                isSameCubeMap(resource.getGlID(), faces));
+        if(existing != null) {
+            return existing.getGlID();
+        }
+
+        int textureID = GL11.glGenTextures();
+        GLState.bindTexture(0, GL13.GL_TEXTURE_CUBE_MAP, textureID);
+
+        for(int i = 0; i < faces.length; i++) {
+            TextureData data = faces[i];
             GL11.glTexImage2D(GL13.GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL11.GL_RGBA, data.getWidth(), data.getHeight(), 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, data.getBuffer());
         }
 
@@ -134,56 +710,91 @@ public class Loader {
         GL11.glTexParameteri(GL13.GL_TEXTURE_CUBE_MAP, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
         GL11.glTexParameteri(GL13.GL_TEXTURE_CUBE_MAP, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
 
-        TEXTURES.add(textureID); // Store the Cube Map TextureID so it can be safely removed on clean up
+        // Store the Cube Map so it can be safely removed on clean up
+        resources.add(new Resource(Kind.CUBE_MAP, textureID, null, contentHash, true, bytes, "cube map", null), key);
 
         return textureID;
     }
 
-    // Decodes a texture file using byte buffers for textures compatible with the 3D coordinate system
-    private TextureData decodeTextureFile(String fileName) {
-        int width = 0;
-        int height = 0;
+    public static String getTexturePath(String filename) {
+        return "src/Resources/" + filename + ".png";
+    }
 
-        ByteBuffer buffer = null;
-        try {
-            FileInputStream in = new FileInputStream(fileName);
+    public static String getCompressedTexturePath(String filename) {
+        return "src/Resources/" + filename + ".ktx";
+    }
+
+    // Decodes a texture file using byte buffers for textures compatible with the 3D coordinate system. This doesn't
+    // touch OpenGL, so it's safe to call from any thread; a file that can't be read throws, for whoever loads it to
+    // report (the AssetPipeline keeps the placeholder)
+    public static TextureData decodeTextureFile(String fileName) {
+        try (FileInputStream in = new FileInputStream(fileName)) {
             PNGDecoder decoder = new PNGDecoder(in);
 
-            width = decoder.getWidth();
-            height = decoder.getHeight();
-            buffer = ByteBuffer.allocateDirect(4 * width * height);
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4 * width * height);
             decoder.decode(buffer, width * 4, PNGDecoder.Format.RGBA);
             buffer.flip(); // Finish writing, and prep for reading
-            in.close();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Error loading Texture: " + fileName + "using ByteBuffers");
-            System.exit(-1);
+            return new TextureData(buffer, width, height);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Error loading Texture: " + fileName, e);
         }
-
-        return new TextureData(buffer, width, height);
     }
 
     private void unbindVAO() {
-        GL30.glBindVertexArray(0); // Unbinds the currently bound VAO
+        GLState.bindVertexArray(0); // Unbinds the currently bound VAO
 
     }
 
-    public void cleanUp() {
-        // Clear all VAOs
-        for(int vaoID: VAOS) {
-            GL30.glDeleteVertexArrays(vaoID);
+    // Delete the GL objects of a resource that has no references left
+    private void deleteResource(Resource resource) {
+        switch(resource.getKind()) {
+            case TEXTURE:
+            case CUBE_MAP:
+            case TEXTURE_ARRAY:
+                GLState.deleteTexture(resource.getGlID());
+                break;
+            case MESH:
+                GLState.deleteVertexArray(resource.getGlID());
+                for(int vboID : resource.getBufferIDs()) {
+                    if(resources.find(Kind.BUFFER, vboID) != null) {
+                        releaseVbo(vboID); // A shared index buffer, other meshes may still be using it
+                    }
+                    else {
+                        GL15.glDeleteBuffers(vboID);
+                    }
+                }
+                for(IntConsumer listener : modelReleaseListeners) {
+                    listener.accept(resource.getGlID());
+                }
+                break;
+            case BUFFER:
+                GL15.glDeleteBuffers(resource.getGlID());
+                break;
         }
+    }
+
+    // Getters
+    public ResourceRegistry getResources() { return resources; }
 
-        // Clear all VAOs
-        for(int vboID: VBOS) {
-            GL15.glDeleteBuffers(vboID);
+    public boolean supportsCompressedTextures() { return compressedTextures; }
+
+    public void cleanUp() {
+        // Clear all VAOs & textures that are still resident, no matter how many references they have left. Deleting
+        // a mesh releases its reference to a shared index buffer, which deletes the buffer with the last mesh using it
+        for(Resource resource : new ArrayList<>(resources.getResidentResources())) {
+            if(resource.getKind() != Kind.BUFFER) {
+                deleteResource(resource);
+            }
         }
 
-        // Clear all textures
-        for(int textureID : TEXTURES) {
-            GL11.glDeleteTextures(textureID);
+        // Then the buffers that are still resident after that, so none of them is deleted twice
+        for(Resource resource : new ArrayList<>(resources.getResidentResources())) {
+            if(resource.getKind() == Kind.BUFFER) {
+                deleteResource(resource);
+            }
         }
     }
 }
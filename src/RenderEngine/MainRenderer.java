@@ -2,12 +2,16 @@ package RenderEngine;
 
 import Entities.Camera;
 import Entities.Entity;
+import Entities.EntityStore;
 import Entities.Light;
-import Models.TexturedModel;
+import Shaders.CDLODTerrainShader;
 import Shaders.StaticShader;
+import Shaders.TessellatedTerrainShader;
 import Shaders.TerrainShader;
 import Skybox.SkyboxRenderer;
 import Terrains.Terrain;
+import Tools.Frustum;
+import Tools.MatrixMath;
 import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.util.vector.Matrix4f;
@@ -15,16 +19,28 @@ import org.lwjgl.util.vector.Vector3f;
 import org.lwjgl.util.vector.Vector4f;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class MainRenderer {
 
+    /*
+        How loaded terrain tiles are drawn, switchable at runtime to compare them:
+            MESH         every tile's full resolution mesh
+            CHUNKED_LOD  quadtree chunks of a shared grid, finer near the camera (CDLODTerrainRenderer)
+            TESSELLATED  a coarse patch grid subdivided by the tessellation shaders (TessellatedTerrainRenderer)
+        Only MESH needs the full resolution meshes on the GPU, they're uploaded the first time it's used.
+     */
+    public enum TerrainMode { MESH, CHUNKED_LOD, TESSELLATED }
+
     // For the projection matrix
     private static final float FOV = 100;
     private static final float NEAR_PLANE = 0.1f;
-    private static final float FAR_PLANE = 1000;
+    public static final float FAR_PLANE = 1000; // Nothing further away than this can be seen
+
+    // Terrain further away than this is textured with its baked macro texture instead of its texture pack
+    private static final float MACRO_TEXTURE_DISTANCE = 400;
+    private static final float MACRO_TEXTURE_BLEND = 100; // Distance over which the two are blended, so there's no visible line
+    private static final int MAX_BAKES_PER_FRAME = 1; // Baking is a full screen pass into a 1024^2 texture, spread them out
 
     private Vector3f SKY_COLOUR;
 
@@ -36,39 +52,101 @@ public class MainRenderer {
     private TerrainRenderer terrainRenderer;
     private TerrainShader terrainShader = new TerrainShader();
 
+    private CDLODTerrainRenderer lodTerrainRenderer;
+    private CDLODTerrainShader lodTerrainShader = new CDLODTerrainShader();
+
+    private TessellatedTerrainRenderer tessellatedTerrainRenderer;
+    private TessellatedTerrainShader tessellatedTerrainShader = new TessellatedTerrainShader();
+
+    private TerrainMode terrainMode = TerrainMode.CHUNKED_LOD;
+
+    private TerrainMacroBaker macroBaker;
+    private float macroTextureDistance = MACRO_TEXTURE_DISTANCE;
+    private boolean useMacroTextures = true;
+    private int bakesThisFrame = 0;
+
     private SkyboxRenderer skyboxRenderer;
 
-    private Map<TexturedModel, List<Entity>> entities = new HashMap<>();
+    private RenderQueue entities = new RenderQueue(); // Entities stay in it from addEntity() until removeEntity()
     private List<Terrain> terrains = new ArrayList<>();
+    private List<Terrain> lodTerrains = new ArrayList<>();
+    private List<Terrain> tessellatedTerrains = new ArrayList<>();
+
+    private Loader loader;
+
+    // View frustum culling; anything outside of the camera's view is rejected before it's batched
+    private Frustum frustum = new Frustum();
+    private Matrix4f viewMatrix = new Matrix4f(); // Reused for the frustum every frame
+    private boolean useFrustumCulling = true;
+    private int culledTerrains = 0;
 
-    public MainRenderer(Loader loader) {
+    public MainRenderer(Loader loader, AssetPipeline assets) {
         enableCulling(); // Enable culling
         createProjectionMatrix();
-        renderer = new EntityRenderer(shader, projectionMatrix);
+        renderer = new EntityRenderer(shader, projectionMatrix, loader);
         terrainRenderer = new TerrainRenderer(terrainShader, projectionMatrix);
-        skyboxRenderer = new SkyboxRenderer(loader, projectionMatrix);
+        lodTerrainRenderer = new CDLODTerrainRenderer(lodTerrainShader, projectionMatrix, loader);
+        tessellatedTerrainRenderer = new TessellatedTerrainRenderer(tessellatedTerrainShader, projectionMatrix, loader);
+        macroBaker = new TerrainMacroBaker(loader);
+        this.loader = loader;
+        skyboxRenderer = new SkyboxRenderer(loader, assets, projectionMatrix);
     }
 
     // Prepare for rendering
     public void prepare() {
-        GL11.glEnable(GL11.GL_DEPTH_TEST); // Allow OpenGL to monitor overlapping vertices and render accordingly
+        GLState.enable(GL11.GL_DEPTH_TEST); // Allow OpenGL to monitor overlapping vertices and render accordingly
         GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT); // Clear the screen from the previous frame & allow depth buffer testing
         GL11.glClearColor(1, 1, 1, 1); // Fill the window with a simple red color
     }
 
     public static void enableCulling() {
         // Enabling cull facing on the Back Face prevents rendering of faces on a model that are not in view
-        GL11.glEnable(GL11.GL_CULL_FACE);
-        GL11.glCullFace(GL11.GL_BACK);
+        GLState.enable(GL11.GL_CULL_FACE);
+        GLState.cullFace(GL11.GL_BACK);
     }
 
     public static void disableCulling() {
         // Disable culling
-        GL11.glDisable(GL11.GL_CULL_FACE);
+        GLState.disable(GL11.GL_CULL_FACE);
+    }
+
+    // Rebuild the view frustum from the camera, must be called every frame before any entities/terrains are processed
+    public void updateFrustum(Camera camera) {
+        frustum.update(projectionMatrix, MatrixMath.createViewMatrix(camera, viewMatrix));
+        culledTerrains = 0;
+        bakesThisFrame = 0;
     }
 
     public void processTerrain(Terrain terrain) {
-        terrains.add(terrain);
+        if(useFrustumCulling && !frustum.isVisible(terrain)) {
+            culledTerrains++;
+            return;
+        }
+
+        // Tiles that are still loading don't have their heights yet, they're drawn flat with the placeholder mesh
+        if(!terrain.isLoaded()) {
+            terrains.add(terrain);
+            return;
+        }
+
+        // Bake the macro textures of new tiles a few at a time; until then they're textured with their texture pack
+        if(useMacroTextures && bakesThisFrame < MAX_BAKES_PER_FRAME && !TerrainMacroBaker.isBaked(terrain)) {
+            macroBaker.bake(terrain);
+            bakesThisFrame++;
+        }
+
+        switch(terrainMode) {
+            case MESH:
+                terrain.loadMesh(loader);
+                terrains.add(terrain);
+                break;
+            case CHUNKED_LOD:
+                lodTerrains.add(terrain);
+                break;
+            case TESSELLATED:
+                tessellatedTerrains.add(terrain);
+                break;
+        }
     }
 
     public void render(List<Light> lights, Camera camera, Vector4f clipPlane) {
@@ -85,43 +163,71 @@ public class MainRenderer {
         shader.loadLights(lights); // Load light variables into the shader code
         shader.loadViewMatrix(camera); // Load view matrix based on the position of the camera
 
-        renderer.render(entities); // Render all entities
+        EntityStore store = Entity.getStore();
+        store.update(); // World matrices of the entities that changed since the last frame, & everyone's bounds
+        store.cull(useFrustumCulling ? frustum : null); // One pass over all the bounds
+        entities.cull(); // Pick out the visible entities of every batch
+        renderer.render(entities, camera.getPosition()); // Render all entities, sorted by the state they need
         shader.stop(); // Stop the shader program
 
-        // Render the terrains
+        // Render the terrains; without macro textures, the texture pack is used at every distance
+        float macroStart = useMacroTextures ? macroTextureDistance : Float.MAX_VALUE;
         terrainShader.start();
         terrainShader.loadClipPlane(clipPlane);
         terrainShader.loadLights(lights);
         terrainShader.loadViewMatrix(camera);
+        terrainShader.loadMacroRange(macroStart, macroStart + MACRO_TEXTURE_BLEND);
         terrainRenderer.render(terrains);
         terrainShader.stop();
 
+        if(!lodTerrains.isEmpty()) {
+            lodTerrainShader.start();
+            lodTerrainShader.loadClipPlane(clipPlane);
+            lodTerrainShader.loadLights(lights);
+            lodTerrainShader.loadViewMatrix(camera);
+            lodTerrainShader.loadMacroRange(macroStart, macroStart + MACRO_TEXTURE_BLEND);
+            lodTerrainRenderer.render(lodTerrains, camera, useFrustumCulling ? frustum : null);
+            lodTerrainShader.stop();
+        }
+
+        if(!tessellatedTerrains.isEmpty()) {
+            tessellatedTerrainShader.start();
+            tessellatedTerrainShader.loadClipPlane(clipPlane);
+            tessellatedTerrainShader.loadLights(lights);
+            tessellatedTerrainShader.loadViewMatrix(camera);
+            tessellatedTerrainShader.loadMacroRange(macroStart, macroStart + MACRO_TEXTURE_BLEND);
+            tessellatedTerrainRenderer.render(tessellatedTerrains, camera);
+            tessellatedTerrainShader.stop();
+        }
+
         // Render the skybox
         skyboxRenderer.render(camera, SKY_COLOUR);
 
-        entities.clear(); // Clear the list of all entities
         terrains.clear(); // Clear the list of all terrains
+        lodTerrains.clear();
+        tessellatedTerrains.clear();
     }
 
-    /* This method will add a given entity to its corresponding list if it exists or create a new list if it doesn't */
-    public void processEntity(Entity entity) {
-        TexturedModel entityModel = entity.getModel();
-        List<Entity> batch = entities.get(entityModel);
+    /*
+        Entities are added once & drawn every frame until they're removed, rather than being passed in every frame;
+        the render queue keeps them batched by model (models sharing a mesh & material, eg. textures packed into
+        one texture array, share a batch) & only does any work when entities come & go or change their model.
+     */
+    public void addEntity(Entity entity) {
+        entities.add(entity);
+    }
 
-        if(batch != null) {
-            batch.add(entity);
-        }
-        else {
-            List<Entity> newBatch = new ArrayList<>();
-            newBatch.add(entity);
-            entities.put(entityModel, newBatch);
-        }
+    public void removeEntity(Entity entity) {
+        entities.remove(entity);
     }
 
     // Clean up the shader program
     public void cleanUp() {
         shader.cleanUp();
         terrainShader.cleanUp();
+        lodTerrainShader.cleanUp();
+        tessellatedTerrainShader.cleanUp();
+        macroBaker.cleanUp();
     }
 
     /* Project math converted to code using an online reference, forgot to copy link so now I don't wanna go looking for it...*/
@@ -142,4 +248,37 @@ public class MainRenderer {
 
     // Getters
     public Matrix4f getProjectionMatrix() {  return projectionMatrix;  }
+
+    public boolean isUsingInstancing() {  return renderer.isUsingInstancing();  }
+
+    public boolean isUsingFrustumCulling() {  return useFrustumCulling;  }
+
+    public int getCulledEntities() {  return entities.getCulledEntities();  }
+
+    public int getEntityStateChanges() {  return renderer.getStateChanges();  }
+
+    public int getEntityStateChangesAvoided() {  return renderer.getStateChangesAvoided();  }
+
+    public int getCulledTerrains() {  return culledTerrains;  }
+
+    public TerrainMode getTerrainMode() {  return terrainMode;  }
+
+    public int getDrawnTerrainChunks() {  return lodTerrainRenderer.getDrawnChunks();  }
+
+    public int getCulledTerrainChunks() {  return lodTerrainRenderer.getCulledChunks();  }
+
+    public boolean isUsingMacroTextures() {  return useMacroTextures;  }
+
+    public float getMacroTextureDistance() {  return macroTextureDistance;  }
+
+    // Setters
+    public void setUseInstancing(boolean useInstancing) {  renderer.setUseInstancing(useInstancing);  }
+
+    public void setUseFrustumCulling(boolean useFrustumCulling) {  this.useFrustumCulling = useFrustumCulling;  }
+
+    public void setTerrainMode(TerrainMode terrainMode) {  this.terrainMode = terrainMode;  }
+
+    public void setUseMacroTextures(boolean useMacroTextures) {  this.useMacroTextures = useMacroTextures;  }
+
+    public void setMacroTextureDistance(float macroTextureDistance) {  this.macroTextureDistance = macroTextureDistance;  }
 }
@@ -0,0 +1,144 @@
+package RenderEngine;
+
+import Models.BoundingVolume;
+import Models.MeshData;
+import Models.VertexFormat;
+import org.lwjgl.opengl.GL11;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Binary cache of parsed and optimised OBJ meshes, so the text files only have to be parsed once.
+
+    File layout (native byte order, which is recorded in the header):
+
+        int    magic          'MESH'
+        int    version        FORMAT_VERSION, bumped whenever the parser or the layout produces different output
+        int    byte order     1 = little endian, 2 = big endian
+        int    index size     2 (GL_UNSIGNED_SHORT) or 4 (GL_UNSIGNED_INT) bytes
+        long   source hash    ContentHash (64 bit FNV-1a) of the OBJ file the mesh was built from
+        int    vertex count
+        int    index count
+        float  bounds         min x/y/z, max x/y/z, sphere radius
+        float  ACMR           of the index order before & after the MeshOptimiser
+        ...    zero padding up to HEADER_SIZE bytes
+        vertex data           vertex count * stride bytes, interleaved in the VertexFormat.STANDARD layout
+        index data            index count * index size bytes
+
+    A cached mesh is memory mapped and its vertex & index sections are handed straight to glBufferData, so loading
+    it is a single copy from the page cache into the buffer objects.
+ */
+public class MeshCache {
+
+    private static final String CACHE_DIRECTORY = "cache/meshes/";
+    private static final String EXTENSION = ".mesh";
+
+    private static final int MAGIC = 0x4853454D; // "MESH" when read as little endian bytes
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_SIZE = 72;
+
+    // Map a cached mesh, or return null if there is none or it was built from a different version of the source
+    public static MeshData read(String name, long sourceHash) {
+        Path path = Paths.get(CACHE_DIRECTORY + name + EXTENSION);
+        if(!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_SIZE) {
+                return null;
+            }
+
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            file.order(ByteOrder.nativeOrder());
+
+            if(file.getInt(0) != MAGIC || file.getInt(4) != FORMAT_VERSION || file.getInt(8) != byteOrderId()
+                    || file.getLong(16) != sourceHash) {
+                return null;
+            }
+
+            int indexSize = file.getInt(12);
+            int vertexCount = file.getInt(24);
+            int indexCount = file.getInt(28);
+            if(indexSize != (MeshData.indexTypeFor(vertexCount) == GL11.GL_UNSIGNED_SHORT ? 2 : 4)) {
+                return null;
+            }
+
+            long vertexBytes = (long) vertexCount * VertexFormat.STANDARD.getStride();
+            long indexBytes = (long) indexCount * indexSize;
+            if(HEADER_SIZE + vertexBytes + indexBytes != channel.size()) {
+                return null; // Truncated or otherwise broken file
+            }
+
+            BoundingVolume bounds = new BoundingVolume(file.getFloat(32), file.getFloat(36), file.getFloat(40),
+                    file.getFloat(44), file.getFloat(48), file.getFloat(52), file.getFloat(56));
+
+            ByteBuffer vertexData = slice(file, HEADER_SIZE, (int) vertexBytes);
+            ByteBuffer indexData = slice(file, HEADER_SIZE + (int) vertexBytes, (int) indexBytes);
+
+            MeshData mesh = new MeshData(vertexData, indexData, vertexCount, indexCount, MeshData.indexTypeFor(vertexCount), bounds);
+            mesh.setAcmr(file.getFloat(60), file.getFloat(64));
+            return mesh;
+        }
+        catch (IOException e) {
+            System.err.println("Could not read the cached mesh of: " + name);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Write a mesh to the cache. Failing to do so isn't fatal, the mesh will just be parsed again next time
+    public static void write(String name, long sourceHash, MeshData mesh) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(byteOrderId()).putInt(mesh.getIndexSize());
+        header.putLong(sourceHash);
+        header.putInt(mesh.getVertexCount()).putInt(mesh.getIndexCount());
+
+        BoundingVolume bounds = mesh.getBounds();
+        header.putFloat(bounds.getMinX()).putFloat(bounds.getMinY()).putFloat(bounds.getMinZ());
+        header.putFloat(bounds.getMaxX()).putFloat(bounds.getMaxY()).putFloat(bounds.getMaxZ());
+        header.putFloat(bounds.getRadius());
+        header.putFloat(mesh.getAcmrBefore()).putFloat(mesh.getAcmrAfter());
+        header.position(0);
+
+        Path path = Paths.get(CACHE_DIRECTORY + name + EXTENSION);
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header);
+                writeFully(channel, mesh.getVertexData().duplicate());
+                writeFully(channel, mesh.getIndexData().duplicate());
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not write the cached mesh of: " + name);
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while(data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static int byteOrderId() {
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 2;
+    }
+}
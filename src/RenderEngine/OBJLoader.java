@@ -1,18 +1,26 @@
 package RenderEngine;
 
+import Models.BoundingVolume;
+import Models.MeshData;
 import Models.RawModel;
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
-
-import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import Tools.ContentHash;
+import Tools.FloatList;
+import Tools.IntList;
+import Tools.MeshOptimiser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /*
     An Object file parser to prevent hard coding of Models in the game. These object files have certain
     characteristics which make parsing a bit tedious and not very portable. Firstly, the lines on the .obj files
-    are terminated with ASCII newline characters ('\n') and start with certain abbreviations that help identify
-    a certain aspect of the end model.
+    are terminated with ASCII newline characters ('\n', or "\r\n" when exported on Windows) and start with certain
+    abbreviations that help identify a certain aspect of the end model.
 
 
     Note: Each of the following are preceded by an ASCII Space character and a series of floats
@@ -29,148 +37,470 @@ import java.util.List;
     Each set of numbers in that sequence represents a triangle in the model. The information in the form of:
     Vertex Index /Texture Index / Normal Index.
 
-    Below is a lot of tedious and rather inefficient way of parsing an OBJ File, but as it only needs to be loaded
-    once during the instantiation of the game, it has no impact on the performance.
+    A face can also be a quad (or any convex polygon), which is split into a fan of triangles, leave out the texture
+    index ("f 1//1 2//2 3//3"), and use negative indices which count backwards from the latest vertex read so far.
+
+    The file is memory mapped and parsed byte by byte: numbers are read in place and collected into growable
+    primitive arrays, so no Strings, boxed Integers or vectors are created per line. Faces are only resolved once the
+    whole file has been read, so it doesn't matter whether they come before or after the vertex information.
+    The finished mesh is also written to the MeshCache, so later runs can skip all of this until the file changes.
+
+    Every distinct (vertex, texture, normal) combination used by a face becomes one vertex of the final mesh, so a
+    position that's shared by faces with different texture coordinates or normals (eg. along a UV seam or a hard
+    edge) is split into several vertices rather than having the last face overwrite the others.
  */
 public class OBJLoader {
 
+    private static final int NO_INDEX = -1; // A face corner that doesn't reference a texture coordinate or normal
+    private static final int BAD_INDEX = Integer.MIN_VALUE; // An index of 0, or counting back past the first element
+
+    // Print each loaded mesh's size & how much the optimiser improved its vertex cache use; off unless debugging,
+    // turned on from the start with -Dexplorica.meshStats=true (the meshes are loaded before any key can be pressed)
+    private static volatile boolean printingMeshStats = Boolean.getBoolean("explorica.meshStats");
+
     public static RawModel loadObjModel(String filename, Loader loader) {
-        FileReader fileReader = null;
+        // Share the model if this file has already been loaded
+        RawModel model = loader.acquireModel(getObjPath(filename));
+        if(model != null) {
+            return model;
+        }
+
+        // Now use the data from the OBJ File to load the model into a VAO for rendering
+        return loader.loadToVAO(getObjPath(filename), loadMeshData(filename));
+    }
+
+    public static String getObjPath(String filename) {
+        return "src/Resources/" + filename + ".obj";
+    }
+
+    // Getters
+    public static boolean isPrintingMeshStats() { return printingMeshStats; }
+
+    // Setters
+    public static void setPrintingMeshStats(boolean printing) { printingMeshStats = printing; }
 
-        // Try to open the file
-        try {
-            fileReader = new FileReader(new File("src/Resources/" + filename + ".obj"));
+    /*
+        Read an OBJ file into an interleaved mesh without touching OpenGL, so it can be done on a worker thread. A
+        file that can't be read throws, so whoever is loading it (eg. the AssetPipeline) can report it & carry on.
+     */
+    public static MeshData loadMeshData(String filename) {
+        ByteBuffer data;
+
+        // Try to map the file into memory
+        try (FileChannel channel = FileChannel.open(Paths.get(getObjPath(filename)), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         }
-        catch (FileNotFoundException e) {
-            System.err.println("An error occurred when loading Object File: " + filename);
-            e.printStackTrace();
+        catch (IOException e) {
+            throw new UncheckedIOException("An error occurred when loading Object File: " + filename, e);
         }
 
-        // Create a buffered reader for efficient reads from memory
-        BufferedReader reader = new BufferedReader(fileReader);
-        String line;
+        // Unless the OBJ file changed since it was last parsed, load the binary copy of the finished mesh instead
+        long sourceHash = ContentHash.of(data);
+        MeshData mesh = MeshCache.read(filename, sourceHash);
+        boolean cached = mesh != null;
+        if(!cached) {
+            mesh = parseObjModel(filename, data);
+            MeshCache.write(filename, sourceHash, mesh);
+        }
 
-        // These lists will hold the vertices, textures coords, normals, and indices as they come from the OBJ File
-        List<Vector3f> vertices  = new ArrayList<Vector3f>();
-        List<Vector2f> textures  = new ArrayList<Vector2f>();
-        List<Vector3f> normals   = new ArrayList<Vector3f>();
-        List<Integer>  indices   = new ArrayList<Integer>();
+        if(printingMeshStats) {
+            System.out.println(String.format("Loaded %s%s: %d vertices, %d triangles, ACMR %.3f -> %.3f", filename,
+                    cached ? " (cached)" : "", mesh.getVertexCount(), mesh.getIndexCount() / 3, mesh.getAcmrBefore(),
+                    mesh.getAcmrAfter()));
+        }
+        return mesh;
+    }
 
-        // These arrays will later be initialized to a fixed size and be used to create the final model
-        float[] verticesArray = null;
-        float[] texturesArray = null;
-        float[] normalsArray  = null;
-        int[] indicesArray    = null;
+    // Parse, weld and optimise the contents of an OBJ file into an interleaved mesh (package private for the tests)
+    static MeshData parseObjModel(String filename, ByteBuffer data) {
+        // These lists will hold the vertices, textures coords and normals as they come from the OBJ File, and every
+        // triangle corner of the faces as a (vertex, texture, normal) triple of indices
+        FloatList vertices = new FloatList();
+        FloatList textures = new FloatList();
+        FloatList normals  = new FloatList();
+        IntList corners    = new IntList();
+
+        Parser parser = new Parser(data);
+        parser.parse(vertices, textures, normals, corners);
+        if(parser.getSkippedFaces() > 0) {
+            System.err.println("Skipped " + parser.getSkippedFaces() + " unreadable or out of range face(s) in Object File: "
+                    + filename);
+        }
 
-        // Using try/catch to help debug
-        try {
-            // Iterate until broken out of the loop
-            while(true) {
+        // Weld the face corners into output vertices, one for every distinct (vertex, texture, normal) triple
+        int cornerCount = corners.size() / 3;
+        FloatList verticesOut = new FloatList(cornerCount * 3);
+        FloatList texturesOut = new FloatList(cornerCount * 2);
+        FloatList normalsOut  = new FloatList(cornerCount * 3);
+        int[] indicesArray    = new int[cornerCount];
+
+        VertexWeldTable weldTable = new VertexWeldTable(cornerCount);
+        for(int i = 0; i < cornerCount; i++) {
+            int v = corners.get(i * 3), t = corners.get(i * 3 + 1), n = corners.get(i * 3 + 2);
+
+            int newVertex = verticesOut.size() / 3;
+            int index = weldTable.indexOf(v, t, n, newVertex);
+            if(index == newVertex) {
+                processVertex(v, t, n, vertices, textures, normals, verticesOut, texturesOut, normalsOut);
+            }
+            indicesArray[i] = index;
+        }
+
+        float[] verticesArray = verticesOut.toArray();
+        int vertexCount = verticesArray.length / 3;
+
+        // Reorder the triangles for the post-transform vertex cache, then for less overdraw; the ACMR before & after
+        // goes into the MeshCache with the mesh, so it can still be reported when the mesh is loaded from there
+        float acmrBefore = MeshOptimiser.computeACMR(indicesArray, vertexCount);
+        indicesArray = MeshOptimiser.optimiseVertexCache(indicesArray, vertexCount);
+        indicesArray = MeshOptimiser.optimiseOverdraw(indicesArray, verticesArray, vertexCount, MeshOptimiser.DEFAULT_OVERDRAW_THRESHOLD);
+
+        MeshData mesh = MeshData.fromArrays(verticesArray, texturesOut.toArray(), normalsOut.toArray(), indicesArray,
+                BoundingVolume.fromPositions(verticesArray)); // Bounds for frustum culling
+        mesh.setAcmr(acmrBefore, MeshOptimiser.computeACMR(indicesArray, vertexCount));
+        return mesh;
+    }
+
+    // Append the position, texture coordinate & normal referenced by a face corner as a new output vertex
+    private static void processVertex(int vertexIndex, int textureIndex, int normalIndex, FloatList vertices,
+                                      FloatList textures, FloatList normals, FloatList verticesOut,
+                                      FloatList texturesOut, FloatList normalsOut) {
 
-                // Read the line and split it at the space
-                line = reader.readLine();
-                String[] currentLine = line.split(" ");
-
-                // Vertex Position
-                if(line.startsWith("v ")) {
-                    // Pull vertex information
-                    Vector3f vertex = new Vector3f( Float.parseFloat(currentLine[1]), Float.parseFloat(currentLine[2]),
-                                                    Float.parseFloat(currentLine[3]));
-                    vertices.add(vertex);
-                }
-
-                // Texture coordinate
-                else if(line.startsWith("vt ")) {
-                    // Pull texture coordinate information
-                    Vector2f texture = new Vector2f(Float.parseFloat(currentLine[1]), Float.parseFloat(currentLine[2]));
-                    textures.add(texture);
-                }
-
-                // Normal
-                else if(line.startsWith("vn ")) {
-                    // Pull normal information
-                    Vector3f normal = new Vector3f( Float.parseFloat(currentLine[1]), Float.parseFloat(currentLine[2]),
-                                                    Float.parseFloat(currentLine[3]));
-                    normals.add(normal);
-                }
-
-                // Face
-                // Once we reach the face (which are at the end of the file after the vertices, normals. and texture coords)
-                // we can initialize our arrays and break out of the loop
-                else if(line.startsWith("f ")) {
-                    // When we reach here, we would've already gotten all of the vertices in the model
-                    // so we use that information to initialize our arrays to a fixed size
-                    texturesArray = new float[vertices.size() * 2]; // Texture arrays are 2D, so multiple by 2
-                    normalsArray  = new float[vertices.size() * 3]; // Normals are 3D, so multiply by 3
+        verticesOut.add(vertices.get(vertexIndex * 3));
+        verticesOut.add(vertices.get(vertexIndex * 3 + 1));
+        verticesOut.add(vertices.get(vertexIndex * 3 + 2));
+
+        // Parse texture information, faces without texture coordinates get (0, 0)
+        if(textureIndex != NO_INDEX) {
+            texturesOut.add(textures.get(textureIndex * 2));
+            texturesOut.add(1 - textures.get(textureIndex * 2 + 1)); // OBJ files start from bottom right, we start from top-left
+        }
+        else {
+            texturesOut.add(0);
+            texturesOut.add(0);
+        }
+
+        // Parse normal information, faces without normals are lit as if they face straight up
+        if(normalIndex != NO_INDEX) {
+            normalsOut.add(normals.get(normalIndex * 3));
+            normalsOut.add(normals.get(normalIndex * 3 + 1));
+            normalsOut.add(normals.get(normalIndex * 3 + 2));
+        }
+        else {
+            normalsOut.add(0);
+            normalsOut.add(1);
+            normalsOut.add(0);
+        }
+    }
+
+    /*
+        Open addressing hash table from (vertex, texture, normal) index triples to output vertex indices. Keys are
+        kept in a flat int array, three ints per slot, and collisions are resolved by probing the next slot. It's
+        sized up front to at least twice the number of face corners, so it never has to grow and never fills up.
+     */
+    private static class VertexWeldTable {
+
+        private final int[] keys;
+        private final int[] values; // -1 marks an empty slot
+        private final int mask;
+
+        VertexWeldTable(int maxEntries) {
+            int capacity = Integer.highestOneBit(Math.max(maxEntries, 1) * 2 - 1) << 1;
+            keys = new int[capacity * 3];
+            values = new int[capacity];
+            Arrays.fill(values, -1);
+            mask = capacity - 1;
+        }
+
+        // Returns the index stored for the triple, or stores & returns newIndex if the triple hasn't been seen yet
+        int indexOf(int v, int t, int n, int newIndex) {
+            int slot = hash(v, t, n) & mask;
+            while(values[slot] != -1) {
+                if(keys[slot * 3] == v && keys[slot * 3 + 1] == t && keys[slot * 3 + 2] == n) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot * 3] = v;
+            keys[slot * 3 + 1] = t;
+            keys[slot * 3 + 2] = n;
+            values[slot] = newIndex;
+            return newIndex;
+        }
+
+        private static int hash(int v, int t, int n) {
+            int h = v * 0x9E3779B1 + t * 0x85EBCA77 + n * 0xC2B2AE3D;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /* Byte level parser over the contents of an OBJ file, keeping track of the current position in the buffer */
+    private static class Parser {
+
+        // Powers of ten that are exactly representable as doubles, used to scale parsed mantissas
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private final ByteBuffer data;
+        private final int limit;
+        private int position;
+        private int skippedFaces = 0;
+        private final IntList faceStarts = new IntList(); // Where each face's triangles start in the corners
+
+        Parser(ByteBuffer data) {
+            this.data = data;
+            this.limit = data.limit();
+            this.position = data.position();
+        }
+
+        void parse(FloatList vertices, FloatList textures, FloatList normals, IntList corners) {
+            while(position < limit) {
+                skipSpaces();
+                if(position >= limit) {
                     break;
                 }
+
+                byte first = data.get(position);
+                byte second = position + 1 < limit ? data.get(position + 1) : (byte) '\n';
+
+                if(first == 'v' && isSpace(second)) {
+                    position += 1;
+                    vertices.add(parseFloat()); vertices.add(parseFloat()); vertices.add(parseFloat());
+                }
+                else if(first == 'v' && second == 't') {
+                    position += 2;
+                    textures.add(parseFloat()); textures.add(parseFloat());
+                }
+                else if(first == 'v' && second == 'n') {
+                    position += 2;
+                    normals.add(parseFloat()); normals.add(parseFloat()); normals.add(parseFloat());
+                }
+                else if(first == 'f' && isSpace(second)) {
+                    position += 1;
+                    parseFace(vertices.size() / 3, textures.size() / 2, normals.size() / 3, corners);
+                }
+
+                // Comments, object names, smoothing groups, materials, or whatever is left over on this line
+                skipLine();
             }
 
-            // Now keep reading from the beginning of the face information
-            while(line !=  null) {
-                // If there is somehow a line that does not hold face information, skip to next iteration
-                if(!line.startsWith("f ")) {
-                    line = reader.readLine();
+            dropOutOfRangeFaces(corners, vertices.size() / 3, textures.size() / 2, normals.size() / 3);
+        }
+
+        // Drop every face with an index that's out of range of what the whole file holds, moving the rest down
+        private void dropOutOfRangeFaces(IntList corners, int vertexCount, int textureCount, int normalCount) {
+            int kept = 0;
+            for(int face = 0; face < faceStarts.size(); face++) {
+                int start = faceStarts.get(face);
+                int end = face + 1 < faceStarts.size() ? faceStarts.get(face + 1) : corners.size();
+
+                boolean inRange = true;
+                for(int i = start; i < end && inRange; i += 3) {
+                    int v = corners.get(i), t = corners.get(i + 1), n = corners.get(i + 2);
+                    inRange = v >= 0 && v < vertexCount
+                            && (t == NO_INDEX || (t >= 0 && t < textureCount))
+                            && (n == NO_INDEX || (n >= 0 && n < normalCount));
+                }
+                if(!inRange) {
+                    skippedFaces++;
                     continue;
                 }
 
-                // Split "f 100/75/20" to ["f", "100/75/20", "200/65/20", "300/75/20"];
-                String[] currentLine = line.split(" ");
-                String[] vertex1 = currentLine[1].split("/"); // Get first set of numbers
-                String[] vertex2 = currentLine[2].split("/"); // 2nd set
-                String[] vertex3 = currentLine[3].split("/"); // 3rd set
+                for(int i = start; i < end; i++) {
+                    corners.set(kept++, corners.get(i));
+                }
+            }
+            corners.truncate(kept);
+        }
+
+        /*
+            Read every corner on a face line and split the polygon into a fan of triangles around its first corner.
+            A face with something other than an index where one should be (eg. "f 1 2 x") is dropped as a whole,
+            the parser carries on from the next line. Whether its indices are in range can only be told once the
+            whole file has been read, see dropOutOfRangeFaces().
+         */
+        private void parseFace(int vertexCount, int textureCount, int normalCount, IntList corners) {
+            int firstV = 0, firstT = 0, firstN = 0;
+            int previousV = 0, previousT = 0, previousN = 0;
+            int cornerCount = 0;
+            int cornersBefore = corners.size();
+            faceStarts.add(cornersBefore);
+
+            while(true) {
+                skipSpaces();
+                if(position >= limit || isLineEnd(data.get(position))) {
+                    break;
+                }
+
+                if(!isIntegerNext()) {
+                    dropFace(corners, cornersBefore);
+                    return;
+                }
+                int v = resolveIndex(parseInt(), vertexCount);
+                int t = NO_INDEX;
+                int n = NO_INDEX;
+
+                if(position < limit && data.get(position) == '/') {
+                    position++;
+                    if(position < limit && data.get(position) != '/') {
+                        if(!isIntegerNext()) {
+                            dropFace(corners, cornersBefore);
+                            return;
+                        }
+                        t = resolveIndex(parseInt(), textureCount); // "v/vt" or "v/vt/vn"
+                    }
+                    if(position < limit && data.get(position) == '/') {
+                        position++;
+                        if(!isIntegerNext()) {
+                            dropFace(corners, cornersBefore);
+                            return;
+                        }
+                        n = resolveIndex(parseInt(), normalCount); // "v/vt/vn" or "v//vn"
+                    }
+                }
 
-                // Process all 3 vertices
-                processVertex(vertex1, indices, textures, normals, texturesArray, normalsArray);
-                processVertex(vertex2, indices, textures, normals, texturesArray, normalsArray);
-                processVertex(vertex3, indices, textures, normals, texturesArray, normalsArray);
+                if(cornerCount == 0) {
+                    firstV = v; firstT = t; firstN = n;
+                }
+                else if(cornerCount >= 2) {
+                    corners.add(firstV); corners.add(firstT); corners.add(firstN);
+                    corners.add(previousV); corners.add(previousT); corners.add(previousN);
+                    corners.add(v); corners.add(t); corners.add(n);
+                }
 
-                line = reader.readLine(); // Read the next line
+                previousV = v; previousT = t; previousN = n;
+                cornerCount++;
             }
         }
-        catch (Exception e) {
-            e.printStackTrace();
+
+        // Take back the triangles a face had already added, its line is skipped by parse()
+        private void dropFace(IntList corners, int cornersBefore) {
+            corners.truncate(cornersBefore);
+            faceStarts.truncate(faceStarts.size() - 1);
+            skippedFaces++;
         }
 
-        // Initialize our vertices and indices arrays
-        verticesArray = new float[vertices.size() * 3]; // Vertices are 3D so multiply by 3
-        indicesArray = new int[indices.size()];
+        // OBJ Files are indexed starting at 1, or backwards from the last element read so far when negative
+        private static int resolveIndex(int index, int count) {
+            if(index == 0 || count + index < 0) {
+                return BAD_INDEX; // Never in range, unlike -1 which would pass for NO_INDEX
+            }
+            return index < 0 ? count + index : index - 1;
+        }
 
-        // Iterate over all vertices in the vertices list that we made and add each component
-        // of that vertex to verticesArray
-        int vertexPointer = 0;
-        for(Vector3f vertex : vertices) {
-            verticesArray[vertexPointer++] = vertex.x;
-            verticesArray[vertexPointer++] = vertex.y;
-            verticesArray[vertexPointer++] = vertex.z;
+        // Whether an integer starts at the current position: an optional sign, then at least one digit
+        private boolean isIntegerNext() {
+            int start = position;
+            if(start < limit && (data.get(start) == '-' || data.get(start) == '+')) {
+                start++;
+            }
+            return start < limit && data.get(start) >= '0' && data.get(start) <= '9';
         }
 
-        // Add all indices into indicesArray
-        for(int i = 0; i < indices.size(); i++) {
-            indicesArray[i] = indices.get(i);
+        private int parseInt() {
+            skipSpaces();
+            boolean negative = false;
+            if(position < limit && (data.get(position) == '-' || data.get(position) == '+')) {
+                negative = data.get(position) == '-';
+                position++;
+            }
+
+            int value = 0;
+            while(position < limit) {
+                int digit = data.get(position) - '0';
+                if(digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                position++;
+            }
+            return negative ? -value : value;
         }
 
-        // Now use the data from the OBJ File to load the model into a VAO for rendering
-        return loader.loadToVAO(verticesArray, texturesArray, normalsArray, indicesArray);
-    }
+        // Parses "[-+]digits[.digits][(e|E)[-+]digits]" in place
+        private float parseFloat() {
+            skipSpaces();
+            boolean negative = false;
+            if(position < limit && (data.get(position) == '-' || data.get(position) == '+')) {
+                negative = data.get(position) == '-';
+                position++;
+            }
 
+            long mantissa = 0;
+            int digits = 0; // Significant digits kept in the mantissa, any more would overflow it
+            int exponent = 0;
 
-    private static void processVertex(String[] vertexData, List<Integer> indices, List<Vector2f> textures,
-                                      List<Vector3f> normals, float[] texturesArray, float[] normalsArray) {
+            while(position < limit) {
+                int digit = data.get(position) - '0';
+                if(digit < 0 || digit > 9) {
+                    break;
+                }
+                if(digits < 18) {
+                    mantissa = mantissa * 10 + digit;
+                    if(mantissa != 0) digits++;
+                }
+                else {
+                    exponent++; // Dropped integer digit, still shifts the value
+                }
+                position++;
+            }
+
+            if(position < limit && data.get(position) == '.') {
+                position++;
+                while(position < limit) {
+                    int digit = data.get(position) - '0';
+                    if(digit < 0 || digit > 9) {
+                        break;
+                    }
+                    if(digits < 18) {
+                        mantissa = mantissa * 10 + digit;
+                        if(mantissa != 0) digits++;
+                        exponent--;
+                    }
+                    position++;
+                }
+            }
 
-        // OBJ Files are indexed starting at 1, so we have to subtract 1
-        int currentVertexPointer = Integer.parseInt(vertexData[0]) - 1;
-        indices.add(currentVertexPointer); // Add the index for the vertex data to our indicesArray
+            if(position < limit && (data.get(position) == 'e' || data.get(position) == 'E')) {
+                position++;
+                exponent += parseInt();
+            }
 
-        // Parse texture information from the given vertexData
-        Vector2f currentIndex = textures.get(Integer.parseInt(vertexData[1]) - 1);
-        texturesArray[currentVertexPointer * 2]     = currentIndex.x;
-        texturesArray[currentVertexPointer * 2 + 1] = 1 - currentIndex.y; // OBJ files start from bottom right, we start from top-left
+            double value = mantissa;
+            while(exponent < -22) { value /= 1e22; exponent += 22; }
+            while(exponent > 22)  { value *= 1e22; exponent -= 22; }
+            value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+
+            return (float) (negative ? -value : value);
+        }
+
+        private void skipSpaces() {
+            while(position < limit && isSpace(data.get(position))) {
+                position++;
+            }
+        }
+
+        // Move past the end of the current line, a "\r\n" ending is consumed in one go
+        private void skipLine() {
+            while(position < limit && data.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+
+        // Carriage returns are treated like spaces, so CRLF lines end at the '\n' just like LF lines
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private static boolean isLineEnd(byte b) {
+            return b == '\n' || b == '#';
+        }
 
-        // Parse normal information from the given vertexData
-        Vector3f currentNormal = normals.get(Integer.parseInt(vertexData[2]) - 1);
-        normalsArray[currentVertexPointer * 3]     = currentNormal.x;
-        normalsArray[currentVertexPointer * 3 + 1] = currentNormal.y;
-        normalsArray[currentVertexPointer * 3 + 2] = currentNormal.z;
+        // Getters
+        int getSkippedFaces() { return skippedFaces; }
     }
-}
\ No newline at end of file
+}
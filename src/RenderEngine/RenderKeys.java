@@ -0,0 +1,104 @@
+package RenderEngine;
+
+import java.util.Arrays;
+
+/*
+    A frame's draws as 64 bit sort keys, each with the index of the draw it stands for. Sorting the keys puts draws
+    that need the same GL state next to each other, so the state only has to be changed where it actually differs
+    from the draw before. From the most significant bits down:
+
+        pass     2 bits   opaque draws, then alpha tested ones (which are drawn without back face culling)
+        shader   6 bits   the shader & the uniforms that switch its code paths (fake lighting, texture arrays)
+        VAO     21 bits   the mesh
+        texture 20 bits   the texture bound
+        depth   15 bits   distance from the camera, so draws with the same state go front to back
+
+    Ids that don't fit their field are wrapped; that only makes the order a little worse, since what actually gets
+    bound is compared by the renderer, not read back out of the key.
+
+    The keys are sorted with an LSD radix sort, a byte at a time from the lowest. Its scratch arrays are kept from one
+    frame to the next, so sorting allocates nothing, and it skips the bytes every key has the same value in (most of
+    the high ones, usually), so it's a handful of linear passes whatever the number of draws.
+ */
+public class RenderKeys {
+
+    public static final int PASS_OPAQUE = 0;
+    public static final int PASS_ALPHA_TESTED = 1;
+
+    public static final int MAX_DEPTH = (1 << 15) - 1;
+
+    private static final int DEPTH_SHIFT = 0, TEXTURE_SHIFT = 15, VAO_SHIFT = 35, SHADER_SHIFT = 56, PASS_SHIFT = 62;
+    private static final long TEXTURE_MASK = (1L << 20) - 1, VAO_MASK = (1L << 21) - 1, SHADER_MASK = (1L << 6) - 1,
+            PASS_MASK = 3;
+
+    private long[] keys = new long[256];
+    private int[] draws = new int[256];
+    private long[] sortedKeys = new long[256];
+    private int[] sortedDraws = new int[256];
+    private final int[] counts = new int[256];
+    private int size = 0;
+
+    public static long encode(int pass, int shader, int vao, int texture, int depth) {
+        return ((pass & PASS_MASK) << PASS_SHIFT)
+                | ((shader & SHADER_MASK) << SHADER_SHIFT)
+                | ((vao & VAO_MASK) << VAO_SHIFT)
+                | ((texture & TEXTURE_MASK) << TEXTURE_SHIFT)
+                | ((long) Math.max(0, Math.min(MAX_DEPTH, depth)) << DEPTH_SHIFT);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(long key, int draw) {
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            draws = Arrays.copyOf(draws, size * 2);
+            sortedKeys = new long[size * 2];
+            sortedDraws = new int[size * 2];
+        }
+        keys[size] = key;
+        draws[size] = draw;
+        size++;
+    }
+
+    // Sort by key, as unsigned numbers; draws with equal keys keep the order they were added in
+    public void sort() {
+        for(int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for(int i = 0; i < size; i++) {
+                counts[(int) (keys[i] >>> shift) & 0xff]++;
+            }
+            if(counts[(int) (keys[0] >>> shift) & 0xff] == size) {
+                continue; // Every key has the same byte here, the pass wouldn't move anything
+            }
+
+            // Counts -> where each byte value's keys start
+            int start = 0;
+            for(int digit = 0; digit < 256; digit++) {
+                int count = counts[digit];
+                counts[digit] = start;
+                start += count;
+            }
+            for(int i = 0; i < size; i++) {
+                int position = counts[(int) (keys[i] >>> shift) & 0xff]++;
+                sortedKeys[position] = keys[i];
+                sortedDraws[position] = draws[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+            int[] swapDraws = draws;
+            draws = sortedDraws;
+            sortedDraws = swapDraws;
+        }
+    }
+
+    // Getters
+    public int size() { return size; }
+
+    public long getKey(int i) { return keys[i]; }
+
+    public int getDraw(int i) { return draws[i]; }
+}
@@ -0,0 +1,227 @@
+package RenderEngine;
+
+import Entities.Entity;
+import Entities.EntityStore;
+import Models.TexturedModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    The entities to draw, kept batched from one frame to the next instead of being regrouped every frame. An entity
+    is added once & stays until it's removed; only adding, removing & changing an entity's model touch the batches,
+    each in constant time.
+
+    Every model gets a stable model id the first time an entity uses it, and every group of models that can share a
+    batch (the same mesh & material, see TexturedModel.canShareBatchWith) a stable batch id, which is its material id.
+    A batch's entities sit in an array, & each entity knows its batch & its slot in it, so it's removed by moving
+    the last entity of the batch into its slot.
+
+    Next to every entity of a batch sits its slot in the entity store, so the per frame loops read the store's arrays
+    directly instead of resolving a handle per entity. Slots only move when an entity is destroyed, so they're all
+    looked up again whenever the store's layout version has changed since the last cull().
+
+    Every frame cull() fills each batch's array of visible entities' store slots, reusing the same arrays, so drawing
+    allocates nothing. Models can change under the queue (their placeholder mesh & texture are swapped for the real ones once
+    loaded), so cull() also checks every model still matches its batch; there are only a handful of models, so
+    that's cheap, and only a model that no longer matches has its entities moved.
+ */
+public class RenderQueue {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Models, by model id
+    private final Map<TexturedModel, Integer> modelIds = new IdentityHashMap<>();
+    private final List<TexturedModel> models = new ArrayList<>();
+    private int[] batchOfModel = new int[INITIAL_CAPACITY]; // Model id -> batch id
+
+    // Batches, by batch id
+    private final List<TexturedModel> batchModels = new ArrayList<>(); // The model a batch is drawn with
+    private Entity[][] batches = new Entity[INITIAL_CAPACITY][];
+    private int[][] storeSlots = new int[INITIAL_CAPACITY][]; // The entity store slot of every entity in a batch
+    private int[] batchSizes = new int[INITIAL_CAPACITY];
+    private int[][] visibleSlots = new int[INITIAL_CAPACITY][]; // Store slots of the batch's visible entities
+    private int[] visibleCounts = new int[INITIAL_CAPACITY];
+
+    private int layoutVersion = -1; // The store's layout version storeSlots were last looked up at
+    private int entityCount = 0;
+    private int culledEntities = 0;
+
+    public void add(Entity entity) {
+        if(entity.getRenderQueue() != null) {
+            System.err.println("Entity is already in a render queue");
+            return;
+        }
+
+        int batch = batchOfModel[getModelId(entity.getModel())];
+        entity.setRenderQueue(this);
+        insert(entity, batch);
+        entityCount++;
+    }
+
+    public void remove(Entity entity) {
+        if(entity.getRenderQueue() != this) {
+            return;
+        }
+
+        detach(entity);
+        entity.setRenderQueue(null);
+        entityCount--;
+    }
+
+    // Called by the entity when its model changes; it only moves if the new model is drawn in another batch
+    public void modelChanged(Entity entity) {
+        int batch = batchOfModel[getModelId(entity.getModel())];
+        if(batch != entity.getRenderBatch()) {
+            detach(entity);
+            insert(entity, batch);
+        }
+    }
+
+    /*
+        Fill every batch's visible slots with the entities the entity store found visible in its last cull(). Must be
+        called once a frame, after that & before the batches are drawn.
+     */
+    public void cull() {
+        validateBatches();
+        culledEntities = 0;
+
+        EntityStore store = Entity.getStore();
+        if(store.getLayoutVersion() != layoutVersion) {
+            refreshStoreSlots();
+            layoutVersion = store.getLayoutVersion();
+        }
+
+        for(int batch = 0; batch < batchModels.size(); batch++) {
+            int[] slots = storeSlots[batch];
+            int[] visible = visibleSlots[batch];
+            int visibleCount = 0;
+            for(int i = 0; i < batchSizes[batch]; i++) {
+                if(store.isVisibleAt(slots[i])) {
+                    visible[visibleCount++] = slots[i];
+                }
+            }
+            culledEntities += batchSizes[batch] - visibleCount;
+            visibleCounts[batch] = visibleCount;
+        }
+    }
+
+    // Entities were destroyed & others moved into their store slots, look every slot up again
+    private void refreshStoreSlots() {
+        for(int batch = 0; batch < batchModels.size(); batch++) {
+            Entity[] entities = batches[batch];
+            int[] slots = storeSlots[batch];
+            for(int i = 0; i < batchSizes[batch]; i++) {
+                slots[i] = entities[i].getSlot();
+            }
+        }
+    }
+
+    // Move the entities of every model that can't be drawn with its batch's model anymore
+    private void validateBatches() {
+        for(int modelId = 0; modelId < models.size(); modelId++) {
+            TexturedModel model = models.get(modelId);
+            int batch = batchOfModel[modelId];
+            if(model.canShareBatchWith(batchModels.get(batch))) {
+                continue;
+            }
+
+            int newBatch = findBatch(model);
+            batchOfModel[modelId] = newBatch;
+
+            // Walking backwards, entities moved into an emptied slot have already been looked at
+            Entity[] entities = batches[batch];
+            for(int i = batchSizes[batch] - 1; i >= 0; i--) {
+                Entity entity = entities[i];
+                if(entity.getModel() == model) {
+                    detach(entity);
+                    insert(entity, newBatch);
+                }
+            }
+        }
+    }
+
+    private int getModelId(TexturedModel model) {
+        Integer id = modelIds.get(model);
+        if(id != null) {
+            return id;
+        }
+
+        int modelId = models.size();
+        modelIds.put(model, modelId);
+        models.add(model);
+        if(modelId == batchOfModel.length) {
+            batchOfModel = Arrays.copyOf(batchOfModel, modelId * 2);
+        }
+        batchOfModel[modelId] = findBatch(model);
+        return modelId;
+    }
+
+    // The batch a model can be drawn in, a new one if it can't share any of the existing ones
+    private int findBatch(TexturedModel model) {
+        for(int batch = 0; batch < batchModels.size(); batch++) {
+            if(model.canShareBatchWith(batchModels.get(batch))) {
+                return batch;
+            }
+        }
+
+        int batch = batchModels.size();
+        batchModels.add(model);
+        if(batch == batches.length) {
+            batches = Arrays.copyOf(batches, batch * 2);
+            storeSlots = Arrays.copyOf(storeSlots, batch * 2);
+            batchSizes = Arrays.copyOf(batchSizes, batch * 2);
+            visibleSlots = Arrays.copyOf(visibleSlots, batch * 2);
+            visibleCounts = Arrays.copyOf(visibleCounts, batch * 2);
+        }
+        batches[batch] = new Entity[INITIAL_CAPACITY];
+        storeSlots[batch] = new int[INITIAL_CAPACITY];
+        visibleSlots[batch] = new int[INITIAL_CAPACITY];
+        return batch;
+    }
+
+    private void insert(Entity entity, int batch) {
+        int slot = batchSizes[batch];
+        if(slot == batches[batch].length) {
+            batches[batch] = Arrays.copyOf(batches[batch], slot * 2);
+            storeSlots[batch] = Arrays.copyOf(storeSlots[batch], slot * 2);
+            visibleSlots[batch] = Arrays.copyOf(visibleSlots[batch], slot * 2);
+        }
+        batches[batch][slot] = entity;
+        storeSlots[batch][slot] = entity.getSlot();
+        batchSizes[batch]++;
+        entity.setRenderSlot(batch, slot);
+    }
+
+    // Take an entity out of its batch by moving the batch's last entity into its slot
+    private void detach(Entity entity) {
+        int batch = entity.getRenderBatch();
+        int slot = entity.getRenderSlot();
+        int last = --batchSizes[batch];
+
+        Entity moved = batches[batch][last];
+        batches[batch][slot] = moved;
+        storeSlots[batch][slot] = storeSlots[batch][last];
+        moved.setRenderSlot(batch, slot);
+        batches[batch][last] = null;
+        entity.setRenderSlot(-1, -1);
+    }
+
+    // Getters
+    public int getBatchCount() { return batchModels.size(); }
+
+    public TexturedModel getBatchModel(int batch) { return batchModels.get(batch); }
+
+    public int[] getVisibleSlots(int batch) { return visibleSlots[batch]; } // Entity store slots, see cull()
+
+    public int getVisibleCount(int batch) { return visibleCounts[batch]; }
+
+    public int getModelCount() { return models.size(); }
+
+    public int getEntityCount() { return entityCount; }
+
+    public int getCulledEntities() { return culledEntities; }
+}
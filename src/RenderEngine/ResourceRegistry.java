@@ -0,0 +1,162 @@
+package RenderEngine;
+
+import Models.RawModel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Book keeping for every GPU object the Loader creates, so identical assets are only uploaded once and each one
+    can be freed on its own.
+
+    A resource can be found by:
+        - the key (file path) it was loaded from; several keys can point at the same resource
+        - its content hash, so two files with the same pixels/vertices still share one GPU copy
+        - its GL id (texture name, VAO name or buffer name), which is what the rest of the engine holds on to
+
+    Every load of an existing resource adds a reference to it, every release removes one, and the GPU object is only
+    deleted once nothing references it anymore. The registry itself doesn't call OpenGL; the Loader deletes the GL
+    objects of resources that release() reports as freed.
+ */
+public class ResourceRegistry {
+
+    public enum Kind { TEXTURE, CUBE_MAP, TEXTURE_ARRAY, MESH, BUFFER }
+
+    private final Map<String, Resource> byKey = new HashMap<>();
+    private final Map<Kind, Map<Long, Resource>> byContent = new EnumMap<>(Kind.class);
+    private final Map<Kind, Map<Integer, Resource>> byID = new EnumMap<>(Kind.class);
+    private final Set<Resource> resident = new LinkedHashSet<>();
+    private final Collection<Resource> residentView = Collections.unmodifiableSet(resident); // Live & read-only
+
+    private long residentBytes = 0;
+
+    public ResourceRegistry() {
+        for(Kind kind : Kind.values()) {
+            byContent.put(kind, new HashMap<>());
+            byID.put(kind, new HashMap<>());
+        }
+    }
+
+    public Resource find(String key) {
+        return key == null ? null : byKey.get(key);
+    }
+
+    public Resource findByContent(Kind kind, long contentHash) {
+        return byContent.get(kind).get(contentHash);
+    }
+
+    public Resource find(Kind kind, int glID) {
+        return byID.get(kind).get(glID);
+    }
+
+    // Start tracking a newly created resource under a key (which may be null), holding its first reference
+    public Resource add(Resource resource, String key) {
+        byID.get(resource.kind).put(resource.glID, resource);
+        resident.add(resource);
+        if(resource.shareable) {
+            byContent.get(resource.kind).put(resource.contentHash, resource);
+        }
+        residentBytes += resource.residentBytes;
+        addKey(resource, key);
+        return resource;
+    }
+
+    // Make a resource findable under another key, eg. a second file with the same contents
+    public void addKey(Resource resource, String key) {
+        if(key != null && !resource.keys.contains(key)) {
+            resource.keys.add(key);
+            byKey.put(key, resource);
+        }
+    }
+
+    public Resource acquire(Resource resource) {
+        resource.referenceCount++;
+        return resource;
+    }
+
+    // Drop a reference; returns true if that was the last one, in which case the caller must delete the GL objects
+    public boolean release(Resource resource) {
+        if(--resource.referenceCount > 0) {
+            return false;
+        }
+
+        byID.get(resource.kind).remove(resource.glID);
+        resident.remove(resource);
+        if(resource.shareable) {
+            byContent.get(resource.kind).remove(resource.contentHash, resource); // Unless a collision took its place
+        }
+        for(String key : resource.keys) {
+            byKey.remove(key);
+        }
+        residentBytes -= resource.residentBytes;
+        return true;
+    }
+
+    public void printResidentMemory() {
+        List<Resource> resources = new ArrayList<>(residentView);
+        resources.sort((a, b) -> Long.compare(b.residentBytes, a.residentBytes));
+
+        System.out.println(String.format("Resident GPU memory: %.2f MB in %d resources", residentBytes / (1024f * 1024f), resources.size()));
+        for(Resource resource : resources) {
+            System.out.println(String.format("  %-13s %9.1f KB  refs %-3d %s", resource.kind, resource.residentBytes / 1024f,
+                    resource.referenceCount, resource.getName()));
+        }
+    }
+
+    // Getters
+    public Collection<Resource> getResidentResources() { return residentView; }
+
+    public long getResidentBytes() { return residentBytes; }
+
+    /* A single GPU object (or a VAO together with the buffers it owns) */
+    public static class Resource {
+        private final Kind kind;
+        private final int glID; // Texture, VAO or buffer name
+        private final int[] bufferIDs; // Buffers owned by a mesh's VAO, deleted along with it
+        private final long contentHash;
+        private final boolean shareable; // Whether other loads with the same content may share it
+        private final long residentBytes; // Estimated size in GPU memory
+        private final String description; // Used in place of a key for resources that weren't loaded from a file
+        private final RawModel model; // The model of a mesh, copied for every load sharing it
+        private final List<String> keys = new ArrayList<>(1);
+        private int referenceCount = 1;
+
+        public Resource(Kind kind, int glID, int[] bufferIDs, long contentHash, boolean shareable, long residentBytes,
+                        String description, RawModel model) {
+            this.kind = kind;
+            this.glID = glID;
+            this.bufferIDs = bufferIDs;
+            this.contentHash = contentHash;
+            this.shareable = shareable;
+            this.residentBytes = residentBytes;
+            this.description = description;
+            this.model = model;
+        }
+
+        // Getters
+        public Kind getKind() { return kind; }
+
+        public int getGlID() { return glID; }
+
+        public int[] getBufferIDs() { return bufferIDs; }
+
+        public long getContentHash() { return contentHash; }
+
+        public long getResidentBytes() { return residentBytes; }
+
+        public int getReferenceCount() { return referenceCount; }
+
+        public RawModel getModel() { return model; }
+
+        public List<String> getKeys() { return Collections.unmodifiableList(keys); }
+
+        public String getName() { return keys.isEmpty() ? description : String.join(", ", keys); }
+    }
+}
@@ -0,0 +1,114 @@
+package RenderEngine;
+
+import Models.RawModel;
+import Shaders.TerrainBakeShader;
+import Terrains.Terrain;
+import Terrains.TerrainTexturePack;
+import Tools.ContentHash;
+import org.lwjgl.opengl.Display;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+/*
+    Bakes a terrain's texture pack & blend map into one macro texture, which the terrain shaders switch to beyond a
+    distance: one fetch per pixel instead of five, on the terrain that covers most of the screen. Far away the tiled
+    textures are only ever sampled at their smallest mip levels anyway, so the baked blend looks the same there.
+
+    The blend is rendered into the macro texture through a frame buffer with a quad covering the whole tile, then
+    its mip chain is generated. Tiles with the same texture pack & blend map get the same macro texture, so it's
+    only baked once for all of them & shared through the Loader by a key made from their textures.
+ */
+public class TerrainMacroBaker {
+
+    public static final int MACRO_TEXTURE_SIZE = 1024; // Texels along each side of a tile's macro texture
+
+    private TerrainBakeShader shader = new TerrainBakeShader();
+    private int frameBuffer;
+    private RawModel quad;
+    private Loader loader;
+
+    public TerrainMacroBaker(Loader loader) {
+        this.loader = loader;
+
+        shader.start();
+        shader.connectTextureUnits();
+        shader.stop();
+
+        float[] vertices = { -1, -1, -1, 1, 1, -1, 1, -1, -1, 1, 1, 1 };
+        quad = loader.loadToVAO(vertices, 2);
+
+        frameBuffer = GL30.glGenFramebuffers();
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, frameBuffer);
+        GL11.glDrawBuffer(GL30.GL_COLOR_ATTACHMENT0);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+    }
+
+    /*
+        Whether a terrain's macro texture was baked from the textures it has now. The texture pack & blend map start
+        out as placeholders while they're loading, a macro texture baked from those has to be baked again.
+     */
+    public static boolean isBaked(Terrain terrain) {
+        return terrain.getMacroTexture() != 0 && terrain.getMacroSource() == getSourceHash(terrain);
+    }
+
+    // Give a loaded terrain its macro texture, baking it if no other tile with the same textures has one
+    public void bake(Terrain terrain) {
+        if(terrain.getMacroTexture() != 0) {
+            loader.releaseTexture(terrain.getMacroTexture());
+        }
+
+        long source = getSourceHash(terrain);
+        String key = "macro texture " + Long.toHexString(source);
+        int texture = loader.acquireTexture(key);
+        if(texture == Loader.NOT_RESIDENT) {
+            texture = loader.createRenderTexture(key, MACRO_TEXTURE_SIZE, MACRO_TEXTURE_SIZE);
+            render(terrain, texture);
+        }
+        terrain.setMacroTexture(texture, source);
+    }
+
+    private void render(Terrain terrain, int texture) {
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, frameBuffer);
+        GL32.glFramebufferTexture(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, texture, 0);
+        GLState.viewport(0, 0, MACRO_TEXTURE_SIZE, MACRO_TEXTURE_SIZE);
+
+        // There's no depth buffer to test against, and the quad is only ever seen from the front
+        GLState.disable(GL11.GL_DEPTH_TEST);
+        MainRenderer.disableCulling();
+
+        shader.start();
+        TerrainRenderer.bindTextures(terrain);
+        GLState.bindVertexArray(quad.getVaoId());
+        GLState.enableVertexAttribArray(0);
+        GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, quad.getVertexCount());
+        GLState.bindVertexArray(0);
+        shader.stop();
+
+        MainRenderer.enableCulling();
+        GLState.enable(GL11.GL_DEPTH_TEST);
+
+        GL32.glFramebufferTexture(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, 0, 0);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+        GLState.viewport(0, 0, Display.getWidth(), Display.getHeight());
+
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, texture);
+        GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, 0);
+    }
+
+    // Identifies the textures a macro texture is baked from, without allocating since it's checked every frame
+    private static long getSourceHash(Terrain terrain) {
+        TerrainTexturePack pack = terrain.getTexturePack();
+        long hash = ContentHash.update(ContentHash.EMPTY, pack.getBackgroundTexture().getTextureID());
+        hash = ContentHash.update(hash, pack.getrTexture().getTextureID());
+        hash = ContentHash.update(hash, pack.getgTexture().getTextureID());
+        hash = ContentHash.update(hash, pack.getbTexture().getTextureID());
+        return ContentHash.update(hash, terrain.getBlendMap().getTextureID());
+    }
+
+    public void cleanUp() {
+        shader.cleanUp();
+        GL30.glDeleteFramebuffers(frameBuffer);
+    }
+}
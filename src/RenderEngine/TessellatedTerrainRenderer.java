@@ -0,0 +1,101 @@
+package RenderEngine;
+
+import Entities.Camera;
+import Models.BoundingVolume;
+import Models.MeshData;
+import Models.RawModel;
+import Shaders.TessellatedTerrainShader;
+import Terrains.Terrain;
+import org.lwjgl.opengl.Display;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.util.vector.Matrix4f;
+
+import java.util.List;
+
+/*
+    Draws the terrain with hardware tessellation: every tile is the same coarse grid of PATCHES_PER_SIDE^2 square
+    patches, which the tessellation control shader splits up according to how long each edge is on screen (so about
+    every TRIANGLE_PIXELS pixels) & the evaluation shader displaces with the tile's height texture.
+
+    Like the CDLODTerrainRenderer, a tile needs nothing on the GPU but its height texture, the patch grid is shared by
+    all of them; the detail comes from the GPU, nothing has to be selected on the CPU.
+ */
+public class TessellatedTerrainRenderer {
+
+    private static final int PATCHES_PER_SIDE = 16;
+    private static final float TRIANGLE_PIXELS = 8; // Target length of a triangle's edge on screen
+
+    private TessellatedTerrainShader shader;
+    private RawModel patches;
+
+    public TessellatedTerrainRenderer(TessellatedTerrainShader shader, Matrix4f projectionMatrix, Loader loader) {
+        this.shader = shader;
+        shader.start();
+        shader.loadProjectionMatrix(projectionMatrix);
+        shader.connectTextureUnits();
+        shader.loadTileSize(Terrain.SIZE);
+
+        // A world unit one unit in front of the camera covers m11 (the projection's y scale) times half the screen's height
+        shader.loadTessellationScale(projectionMatrix.m11 * Display.getHeight() / 2f / TRIANGLE_PIXELS);
+        shader.stop();
+
+        patches = loader.loadToVAO(createPatchGrid(PATCHES_PER_SIDE));
+    }
+
+    public void render(List<Terrain> terrains, Camera camera) {
+        GLState.bindVertexArray(patches.getVaoId());
+        GLState.enableVertexAttributes(patches.getVertexFormat());
+        GL40.glPatchParameteri(GL40.GL_PATCH_VERTICES, 4);
+
+        shader.loadShineVariables(1, 0);
+        shader.loadCameraPosition(camera.getPosition());
+
+        for(Terrain terrain : terrains) {
+            TerrainRenderer.bindTextures(terrain);
+            TerrainRenderer.bindMacroTexture(terrain, shader);
+            GLState.bindTexture(TessellatedTerrainShader.HEIGHT_MAP_UNIT, GL11.GL_TEXTURE_2D, terrain.getHeightTexture());
+
+            // Splitting a patch more than there are height samples along it wouldn't add any detail
+            float samplesPerPatch = (terrain.getHeightField().getVertexCount() - 1) / (float) PATCHES_PER_SIDE;
+            shader.loadTile(terrain.getX(), terrain.getZ(), samplesPerPatch);
+
+            GL11.glDrawElements(GL40.GL_PATCHES, patches.getVertexCount(), patches.getIndexType(), 0);
+        }
+
+        GLState.bindVertexArray(0);
+    }
+
+    // A grid of resolution x resolution patches from 0 to 1 on x & z, each one its 4 corners in the order the control shader expects
+    private static MeshData createPatchGrid(int resolution) {
+        int vertexCount = resolution + 1;
+        float[] positions = new float[vertexCount * vertexCount * 3];
+        float[] textureCoords = new float[vertexCount * vertexCount * 2];
+        float[] normals = new float[vertexCount * vertexCount * 3];
+        for(int z = 0; z < vertexCount; z++) {
+            for(int x = 0; x < vertexCount; x++) {
+                int vertex = z * vertexCount + x;
+                positions[vertex * 3] = (float) x / resolution;
+                positions[vertex * 3 + 2] = (float) z / resolution;
+                textureCoords[vertex * 2] = (float) x / resolution;
+                textureCoords[vertex * 2 + 1] = (float) z / resolution;
+                normals[vertex * 3 + 1] = 1;
+            }
+        }
+
+        int[] indices = new int[4 * resolution * resolution];
+        int pointer = 0;
+        for(int gz = 0; gz < resolution; gz++) {
+            for(int gx = 0; gx < resolution; gx++) {
+                int topLeft = (gz * vertexCount) + gx;
+                int bottomLeft = ((gz + 1) * vertexCount) + gx;
+                indices[pointer++] = topLeft;
+                indices[pointer++] = topLeft + 1;
+                indices[pointer++] = bottomLeft + 1;
+                indices[pointer++] = bottomLeft;
+            }
+        }
+
+        return MeshData.fromArrays(positions, textureCoords, normals, indices, BoundingVolume.fromPositions(positions));
+    }
+}
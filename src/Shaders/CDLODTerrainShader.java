@@ -0,0 +1,82 @@
+package Shaders;
+
+import Terrains.TerrainQuadTree;
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+
+/*
+    The terrain shader of the level of detail renderer: the same lighting, texture pack & clip plane as the
+    TerrainShader, but the vertices are the shared grid mesh, placed over a chunk of a tile & displaced by the tile's
+    height texture (see CDLODTerrainVertexShader.txt).
+ */
+public class CDLODTerrainShader extends TerrainShader {
+
+    private static final String VERTEX_FILE = "src/Shaders/CDLODTerrainVertexShader.txt";
+
+    public static final int HEIGHT_MAP_UNIT = 5; // After the texture pack & blend map
+
+    private int location_heightMap;
+    private int location_tileOrigin; // Location of the corner of the tile being drawn
+    private int location_tileSize;
+    private int location_nodeOrigin; // Location of the corner of the chunk being drawn
+    private int location_nodeSize;
+    private int location_gridResolution;
+    private int location_morphRange; // Location of the distances the chunk's level morphs between
+    private int location_cameraPosition;
+
+    private final Vector2f vector = new Vector2f(); // Reused to load the 2D uniforms of every chunk
+
+    public CDLODTerrainShader() {
+        super(VERTEX_FILE);
+    }
+
+    @Override
+    protected void getAllUniformLocations() {
+        super.getAllUniformLocations();
+
+        location_heightMap = super.getUniformLocation("heightMap");
+        location_tileOrigin = super.getUniformLocation("tileOrigin");
+        location_tileSize = super.getUniformLocation("tileSize");
+        location_nodeOrigin = super.getUniformLocation("nodeOrigin");
+        location_nodeSize = super.getUniformLocation("nodeSize");
+        location_gridResolution = super.getUniformLocation("gridResolution");
+        location_morphRange = super.getUniformLocation("morphRange");
+        location_cameraPosition = super.getUniformLocation("cameraPosition");
+    }
+
+    @Override
+    public void connectTextureUnits() {
+        super.connectTextureUnits();
+        super.loadInt(location_heightMap, HEIGHT_MAP_UNIT);
+    }
+
+    // Load the sizes that are the same for every chunk
+    public void loadGrid(float tileSize) {
+        super.loadFloat(location_tileSize, tileSize);
+        super.loadFloat(location_gridResolution, TerrainQuadTree.GRID_RESOLUTION);
+    }
+
+    public void loadTileOrigin(float x, float z) {
+        vector.set(x, z);
+        super.load2DVector(location_tileOrigin, vector);
+    }
+
+    public void loadNode(float x, float z, float size) {
+        vector.set(x, z);
+        super.load2DVector(location_nodeOrigin, vector);
+        super.loadFloat(location_nodeSize, size);
+    }
+
+    /*
+        Load the distances from the camera the chunk's vertices start & finish morphing into the next coarser level;
+        the shader gets the start & 1 / the length of the range, which is 0 for a level that never morphs.
+     */
+    public void loadMorphRange(float start, float end) {
+        vector.set(start, 1 / (end - start));
+        super.load2DVector(location_morphRange, vector);
+    }
+
+    public void loadCameraPosition(Vector3f position) {
+        super.load3DVector(location_cameraPosition, position);
+    }
+}
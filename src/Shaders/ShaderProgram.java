@@ -1,8 +1,10 @@
 package Shaders;
 
+import RenderEngine.GLState;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL40;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
@@ -18,19 +20,34 @@ public abstract class ShaderProgram {
     private int programID;
     private int vertexShaderID;
     private int fragmentShaderID;
+    private int tessControlShaderID = 0; // 0 when the program has no tessellation stages
+    private int tessEvaluationShaderID = 0;
 
     // 4 by 4 transformation matrix
     private static FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
 
     public ShaderProgram(String vertexFilePath, String fragmentFilePath) {
+        this(vertexFilePath, null, null, fragmentFilePath);
+    }
+
+    // A program with tessellation control & evaluation shaders between the vertex & fragment shaders (if they're not null)
+    public ShaderProgram(String vertexFilePath, String tessControlFilePath, String tessEvaluationFilePath, String fragmentFilePath) {
         // Load the vertex & program shaders
         vertexShaderID = loadShader(vertexFilePath, GL20.GL_VERTEX_SHADER);
         fragmentShaderID = loadShader(fragmentFilePath, GL20.GL_FRAGMENT_SHADER);
+        if(tessControlFilePath != null) {
+            tessControlShaderID = loadShader(tessControlFilePath, GL40.GL_TESS_CONTROL_SHADER);
+            tessEvaluationShaderID = loadShader(tessEvaluationFilePath, GL40.GL_TESS_EVALUATION_SHADER);
+        }
         programID = GL20.glCreateProgram(); // Create a shader program
 
-        // Attach this generated program to both shaders & link + validate
+        // Attach this generated program to all of its shaders & link + validate
         GL20.glAttachShader(programID, vertexShaderID);
         GL20.glAttachShader(programID, fragmentShaderID);
+        if(tessControlShaderID != 0) {
+            GL20.glAttachShader(programID, tessControlShaderID);
+            GL20.glAttachShader(programID, tessEvaluationShaderID);
+        }
 
         bindAttributes(); // Bind all attributes before linking and validating the shader
 
@@ -48,24 +65,32 @@ public abstract class ShaderProgram {
     }
 
     public void start() {
-        GL20.glUseProgram(programID);
+        GLState.useProgram(programID);
     }
 
     public void stop() {
-        GL20.glUseProgram(0);
+        GLState.useProgram(0);
     }
 
     public void cleanUp() {
         stop(); // Stop the program
 
-        // Detach both shaders from the program
+        // Detach the shaders from the program
         GL20.glDetachShader(programID, vertexShaderID);
         GL20.glDetachShader(programID, fragmentShaderID);
+        if(tessControlShaderID != 0) {
+            GL20.glDetachShader(programID, tessControlShaderID);
+            GL20.glDetachShader(programID, tessEvaluationShaderID);
+        }
 
         // Delete the shaders & the program
         GL20.glDeleteShader(vertexShaderID);
         GL20.glDeleteShader(fragmentShaderID);
-        GL20.glDeleteProgram(programID);
+        if(tessControlShaderID != 0) {
+            GL20.glDeleteShader(tessControlShaderID);
+            GL20.glDeleteShader(tessEvaluationShaderID);
+        }
+        GLState.deleteProgram(programID);
     }
 
     protected void bindAttribute(int attribute, String variableName) {
@@ -113,6 +138,14 @@ public abstract class ShaderProgram {
         GL20.glUniformMatrix4(location, false, matrixBuffer);
     }
 
+    // Load a column major matrix straight out of an array of them, eg. the transform store's
+    protected void loadMatrix(int location, float[] matrices, int offset) {
+        matrixBuffer.clear();
+        matrixBuffer.put(matrices, offset, 16);
+        matrixBuffer.flip();
+        GL20.glUniformMatrix4(location, false, matrixBuffer);
+    }
+
     // Each shader will then bind its attributes (variable names in the text file) to
     // this shader and allow the GPU to manipulate them
     protected abstract void bindAttributes();
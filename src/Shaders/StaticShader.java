@@ -2,6 +2,7 @@ package Shaders;
 
 import Entities.Camera;
 import Entities.Light;
+import Models.VertexFormat;
 import Tools.MatrixMath;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
@@ -34,8 +35,22 @@ public class StaticShader extends ShaderProgram {
     private int location_numberOfRows;
     private int location_offset;
 
+    private int location_textureSampler;
+    private int location_textureArraySampler;
+    private int location_useTextureArray; // Whether the texture comes from a layer of a texture array
+    private int location_layer;
+
     private int location_plane; // Location of the clip plane variable in the shader code
 
+    private int location_useInstancing; // Location of the instanced rendering toggle
+
+    private final Matrix4f viewMatrix = new Matrix4f(); // Rebuilt every frame
+    private final Vector3f colour = new Vector3f();
+    private final Vector2f offset = new Vector2f(); // Reused for the atlas offset of every entity
+
+    // The material uniforms as last loaded (a program keeps its uniforms), so loading the same again is skipped
+    private float loadedShineDamper = Float.NaN, loadedReflectivity = Float.NaN;
+    private int loadedFakeLighting = -1, loadedNumberOfRows = -1, loadedUseTextureArray = -1;
 
     public StaticShader() {
         super(VERTEX_FILE, FRAGMENT_FILE);
@@ -43,10 +58,13 @@ public class StaticShader extends ShaderProgram {
 
     @Override
     protected void bindAttributes() {
-        // Bind the position attribute in the shader
-        super.bindAttribute(0, "position");
-        super.bindAttribute(1, "textureCoords"); // Bind the textureCoords attribute
-        super.bindAttribute(2, "normal"); // Bind the normal attribute
+        // Bind the position, textureCoords & normal attributes to the slots of the standard vertex format
+        for(VertexFormat.Attribute attribute : VertexFormat.STANDARD.getAttributes()) {
+            super.bindAttribute(attribute.getIndex(), attribute.getName());
+        }
+        super.bindAttribute(3, "instanceMatrix"); // Per-instance transformation matrix (takes up slots 3 to 6)
+        super.bindAttribute(7, "instanceOffset"); // Per-instance texture atlas offset
+        super.bindAttribute(8, "instanceLayer"); // Per-instance texture array layer
 
     }
 
@@ -81,8 +99,17 @@ public class StaticShader extends ShaderProgram {
         location_numberOfRows = super.getUniformLocation("numberOfRows");
         location_offset = super.getUniformLocation("offset");
 
+        // Texture array necessities
+        location_textureSampler = super.getUniformLocation("textureSampler");
+        location_textureArraySampler = super.getUniformLocation("textureArraySampler");
+        location_useTextureArray = super.getUniformLocation("useTextureArray");
+        location_layer = super.getUniformLocation("layer");
+
         // Water necessities
         location_plane = super.getUniformLocation("plane");
+
+        // Instanced rendering toggle
+        location_useInstancing = super.getUniformLocation("useInstancing");
     }
 
     // Load transformation matrix in the shader code
@@ -90,6 +117,11 @@ public class StaticShader extends ShaderProgram {
         super.loadMatrix(location_transformationMatrix, matrix);
     }
 
+    // Load an entity's transformation matrix from the transform store
+    public void loadTransformationMatrix(float[] matrices, int offset) {
+        super.loadMatrix(location_transformationMatrix, matrices, offset);
+    }
+
     // Load projection matrix in the shader code
     public void loadProjectionMatrix(Matrix4f projection) {
         super.loadMatrix(location_projectionMatrix, projection);
@@ -97,7 +129,7 @@ public class StaticShader extends ShaderProgram {
 
     // Load view matrix in the shader code
     public void loadViewMatrix(Camera camera) {
-        Matrix4f viewMatrix = MatrixMath.createViewMatrix(camera);
+        MatrixMath.createViewMatrix(camera, viewMatrix);
         super.loadMatrix(location_viewMatrix, viewMatrix);
     }
 
@@ -118,25 +150,61 @@ public class StaticShader extends ShaderProgram {
 
     // Load the damper and reflectivity variables in the shader code
     public void loadShineVariables(float damper, float reflectivity) {
-        super.loadFloat(location_shineDamper, damper);
-        super.loadFloat(location_reflectivity, reflectivity);
+        if(damper != loadedShineDamper) {
+            super.loadFloat(location_shineDamper, damper);
+            loadedShineDamper = damper;
+        }
+        if(reflectivity != loadedReflectivity) {
+            super.loadFloat(location_reflectivity, reflectivity);
+            loadedReflectivity = reflectivity;
+        }
     }
 
     public void loadFakeLighting(boolean useFakeLighting) {
-        super.loadBoolean(location_useFakeLighting, useFakeLighting);
+        if((useFakeLighting ? 1 : 0) != loadedFakeLighting) {
+            super.loadBoolean(location_useFakeLighting, useFakeLighting);
+            loadedFakeLighting = useFakeLighting ? 1 : 0;
+        }
     }
 
     public void loadSkyColour(float r, float g, float b) {
-        super.load3DVector(location_skyColour, new Vector3f(r, g, b));
+        colour.set(r, g, b);
+        super.load3DVector(location_skyColour, colour);
     }
 
     // Load the texture atlas variables into the shader code
     public void loadNumberOfRows(int numberOfRows) {
-        super.loadFloat(location_numberOfRows, numberOfRows);
+        if(numberOfRows != loadedNumberOfRows) {
+            super.loadFloat(location_numberOfRows, numberOfRows);
+            loadedNumberOfRows = numberOfRows;
+        }
     }
 
     public void loadOffset(float x, float y) {
-        super.load2DVector(location_offset, new Vector2f(x, y));
+        offset.set(x, y);
+        super.load2DVector(location_offset, offset);
+    }
+
+    // 2D textures are bound to unit 0 & texture arrays to unit 1, a unit can't be sampled as two different types
+    public void connectTextureUnits() {
+        super.loadInt(location_textureSampler, 0);
+        super.loadInt(location_textureArraySampler, 1);
+    }
+
+    public void loadUseTextureArray(boolean useTextureArray) {
+        if((useTextureArray ? 1 : 0) != loadedUseTextureArray) {
+            super.loadBoolean(location_useTextureArray, useTextureArray);
+            loadedUseTextureArray = useTextureArray ? 1 : 0;
+        }
+    }
+
+    public void loadLayer(int layer) {
+        super.loadFloat(location_layer, layer);
+    }
+
+    // Whether the transformation matrix & atlas offset come from the per-instance attributes or the uniforms
+    public void loadUseInstancing(boolean useInstancing) {
+        super.loadBoolean(location_useInstancing, useInstancing);
     }
 
     // Load in the clip plane for a water body
@@ -0,0 +1,45 @@
+package Shaders;
+
+/*
+    Composites a terrain's texture pack & blend map into its macro texture (see TerrainMacroBaker), the same blend the
+    TerrainShader does for every pixel, done once per tile instead.
+ */
+public class TerrainBakeShader extends ShaderProgram {
+
+    private static final String VERTEX_FILE = "src/Shaders/TerrainBakeVertexShader.txt";
+    private static final String FRAGMENT_FILE = "src/Shaders/TerrainBakeFragmentShader.txt";
+
+    // Texture pack and blend map locations
+    private int location_backgroundTexture;
+    private int location_rTexture;
+    private int location_gTexture;
+    private int location_bTexture;
+    private int location_blendMap;
+
+    public TerrainBakeShader() {
+        super(VERTEX_FILE, FRAGMENT_FILE);
+    }
+
+    @Override
+    protected void bindAttributes() {
+        super.bindAttribute(0, "position");
+    }
+
+    @Override
+    protected void getAllUniformLocations() {
+        location_backgroundTexture = super.getUniformLocation("backgroundTexture");
+        location_rTexture = super.getUniformLocation("rTexture");
+        location_gTexture = super.getUniformLocation("gTexture");
+        location_bTexture = super.getUniformLocation("bTexture");
+        location_blendMap = super.getUniformLocation("blendMap");
+    }
+
+    // The same texture units as the TerrainShader, so the textures are bound the same way
+    public void connectTextureUnits() {
+        super.loadInt(location_backgroundTexture, 0);
+        super.loadInt(location_rTexture, 1);
+        super.loadInt(location_gTexture, 2);
+        super.loadInt(location_bTexture, 3);
+        super.loadInt(location_blendMap, 4);
+    }
+}
@@ -2,8 +2,10 @@ package Shaders;
 
 import Entities.Camera;
 import Entities.Light;
+import Models.VertexFormat;
 import Tools.MatrixMath;
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector4f;
 
 import java.util.List;
@@ -12,6 +14,8 @@ public class TerrainShader extends ShaderProgram {
 
     private static final int NUM_LIGHTS = 10;
 
+    public static final int MACRO_TEXTURE_UNIT = 6; // After the texture pack, blend map & height map
+
     private static final String VERTEX_FILE = "src/Shaders/TerrainVertexShader.txt";
     private static final String FRAGMENT_FILE = "src/Shaders/TerrainFragmentShader.txt";
 
@@ -33,20 +37,37 @@ public class TerrainShader extends ShaderProgram {
     private int location_bTexture;
     private int location_blendMap;
 
+    // Baked texture for far away terrain
+    private int location_macroTexture;
+    private int location_macroRange; // Location of the distances the macro texture blends in between
+    private int location_macroTextureBaked;
+
     // Water necessities
     private int location_plane; // Location of the clip plane variable in the shader code
 
+    private final Vector2f macroRange = new Vector2f();
+    private final Matrix4f viewMatrix = new Matrix4f(); // Rebuilt every frame
+
 
     public TerrainShader() {
         super(VERTEX_FILE, FRAGMENT_FILE);
     }
 
+    // For terrain shaders that place their vertices differently but are lit & textured the same way
+    protected TerrainShader(String vertexFile) {
+        super(vertexFile, FRAGMENT_FILE);
+    }
+
+    protected TerrainShader(String vertexFile, String tessControlFile, String tessEvaluationFile) {
+        super(vertexFile, tessControlFile, tessEvaluationFile, FRAGMENT_FILE);
+    }
+
     @Override
     protected void bindAttributes() {
-        // Bind the position attribute in the shader
-        super.bindAttribute(0, "position");
-        super.bindAttribute(1, "textureCoords"); // Bind the textureCoords attribute
-        super.bindAttribute(2, "normal"); // Bind the normal attribute
+        // Bind the position, textureCoords & normal attributes to the slots of the standard vertex format
+        for(VertexFormat.Attribute attribute : VertexFormat.STANDARD.getAttributes()) {
+            super.bindAttribute(attribute.getIndex(), attribute.getName());
+        }
 
     }
 
@@ -79,6 +100,10 @@ public class TerrainShader extends ShaderProgram {
         location_bTexture = super.getUniformLocation("bTexture");
         location_blendMap = super.getUniformLocation("blendMap");
 
+        location_macroTexture = super.getUniformLocation("macroTexture");
+        location_macroRange = super.getUniformLocation("macroRange");
+        location_macroTextureBaked = super.getUniformLocation("macroTextureBaked");
+
         // Water necessities
         location_plane = super.getUniformLocation("plane");
     }
@@ -95,7 +120,7 @@ public class TerrainShader extends ShaderProgram {
 
     // Load view matrix in the shader code
     public void loadViewMatrix(Camera camera) {
-        Matrix4f viewMatrix = MatrixMath.createViewMatrix(camera);
+        MatrixMath.createViewMatrix(camera, viewMatrix);
         super.loadMatrix(location_viewMatrix, viewMatrix);
     }
 
@@ -126,6 +151,21 @@ public class TerrainShader extends ShaderProgram {
         super.loadInt(location_gTexture, 2);
         super.loadInt(location_bTexture, 3);
         super.loadInt(location_blendMap, 4);
+        super.loadInt(location_macroTexture, MACRO_TEXTURE_UNIT);
+    }
+
+    /*
+        Load the distances from the camera the macro texture starts to replace the texture pack at & fully replaces
+        it by; the shader gets the start & 1 / the length of the range.
+     */
+    public void loadMacroRange(float start, float end) {
+        macroRange.set(start, 1 / Math.max(end - start, 1e-3f));
+        super.load2DVector(location_macroRange, macroRange);
+    }
+
+    // Whether the terrain being drawn has a macro texture yet, the texture pack is used at every distance until it does
+    public void loadMacroTextureBaked(boolean baked) {
+        super.loadBoolean(location_macroTextureBaked, baked);
     }
 
     // Load in the clip plane for a water body
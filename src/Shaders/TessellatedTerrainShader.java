@@ -0,0 +1,68 @@
+package Shaders;
+
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+
+/*
+    The terrain shader of the tessellated terrain mode: the same lighting, texture pack & clip plane as the
+    TerrainShader, but what's drawn is a coarse grid of patches which the tessellation stages subdivide, the more the
+    closer they are to the camera, & displace with the tile's height texture.
+ */
+public class TessellatedTerrainShader extends TerrainShader {
+
+    private static final String VERTEX_FILE = "src/Shaders/TessellatedTerrainVertexShader.txt";
+    private static final String TESS_CONTROL_FILE = "src/Shaders/TessellatedTerrainControlShader.txt";
+    private static final String TESS_EVALUATION_FILE = "src/Shaders/TessellatedTerrainEvaluationShader.txt";
+
+    public static final int HEIGHT_MAP_UNIT = 5; // After the texture pack & blend map
+
+    private int location_heightMap;
+    private int location_tileOrigin; // Location of the corner of the tile being drawn
+    private int location_tileSize;
+    private int location_cameraPosition;
+    private int location_tessellationScale; // Location of the tessellation level of a unit long edge, one unit away
+    private int location_maxTessellationLevel;
+
+    private final Vector2f vector = new Vector2f(); // Reused to load the tile origin of every tile
+
+    public TessellatedTerrainShader() {
+        super(VERTEX_FILE, TESS_CONTROL_FILE, TESS_EVALUATION_FILE);
+    }
+
+    @Override
+    protected void getAllUniformLocations() {
+        super.getAllUniformLocations();
+
+        location_heightMap = super.getUniformLocation("heightMap");
+        location_tileOrigin = super.getUniformLocation("tileOrigin");
+        location_tileSize = super.getUniformLocation("tileSize");
+        location_cameraPosition = super.getUniformLocation("cameraPosition");
+        location_tessellationScale = super.getUniformLocation("tessellationScale");
+        location_maxTessellationLevel = super.getUniformLocation("maxTessellationLevel");
+    }
+
+    @Override
+    public void connectTextureUnits() {
+        super.connectTextureUnits();
+        super.loadInt(location_heightMap, HEIGHT_MAP_UNIT);
+    }
+
+    public void loadTileSize(float tileSize) {
+        super.loadFloat(location_tileSize, tileSize);
+    }
+
+    public void loadTessellationScale(float scale) {
+        super.loadFloat(location_tessellationScale, scale);
+    }
+
+    // Load the tile's origin & the most a patch of it is split, past which there'd be more triangles than height samples
+    public void loadTile(float x, float z, float maxTessellationLevel) {
+        vector.set(x, z);
+        super.load2DVector(location_tileOrigin, vector);
+        super.loadFloat(location_maxTessellationLevel, maxTessellationLevel);
+    }
+
+    public void loadCameraPosition(Vector3f position) {
+        super.load3DVector(location_cameraPosition, position);
+    }
+}
@@ -2,12 +2,12 @@ package Skybox;
 
 import Entities.Camera;
 import Models.RawModel;
+import RenderEngine.AssetPipeline;
 import RenderEngine.DisplayManager;
+import RenderEngine.GLState;
 import RenderEngine.Loader;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
@@ -67,8 +67,8 @@ public class SkyboxRenderer {
     private final RawModel cube;
     private final SkyboxShader shader;
 
-    private final int cube_map_1_textureID;
-    private final int cube_map_2_textureID;
+    private int cube_map_1_textureID;
+    private int cube_map_2_textureID;
 
     public static final Vector3f SKY_COLOUR = new Vector3f(0.5f, 0.6f, 0.6f);
 
@@ -76,15 +76,20 @@ public class SkyboxRenderer {
     private int first_cube_map;
     private int second_cube_map;
 
-    public SkyboxRenderer(Loader loader, Matrix4f projectionMatrix) {
+    public SkyboxRenderer(Loader loader, AssetPipeline assets, Matrix4f projectionMatrix) {
 
         // With disabling the depth mask and ranges, the Skybox won't clip the terrain when it's rendered
-        GL11.glDepthMask(false);
-        GL11.glDepthRange(1f, 1f);
+        GLState.depthMask(false);
+        GLState.depthRange(1f, 1f);
 
         cube = loader.loadToVAO(VERTICES, 3);
-        cube_map_1_textureID = loader.loadCubeMap(CUBE_MAP_1_TEXTURE_FILES);
-        cube_map_2_textureID = loader.loadCubeMap(CUBE_MAP_2_TEXTURE_FILES);
+
+        // Show a plain sky until the cube map faces have been decoded & uploaded in the background
+        int placeholder = loader.createPlaceholderCubeMap(SKY_COLOUR.x, SKY_COLOUR.y, SKY_COLOUR.z);
+        cube_map_1_textureID = placeholder;
+        cube_map_2_textureID = placeholder;
+        assets.loadCubeMap(CUBE_MAP_1_TEXTURE_FILES, textureID -> cube_map_1_textureID = textureID);
+        assets.loadCubeMap(CUBE_MAP_2_TEXTURE_FILES, textureID -> cube_map_2_textureID = textureID);
 
         shader = new SkyboxShader();
         shader.start();
@@ -93,8 +98,8 @@ public class SkyboxRenderer {
         shader.stop();
 
         // Re-enable the depth mask and reset the depth range after the skybox is rendered
-        GL11.glDepthRange(0, 1f);
-        GL11.glDepthMask(true);
+        GLState.depthRange(0, 1f);
+        GLState.depthMask(true);
     }
 
     public void render(Camera camera, Vector3f skyColour) {
@@ -103,14 +108,13 @@ public class SkyboxRenderer {
         shader.loadViewMatrix(camera);
         shader.loadFogColour(skyColour.x, skyColour.y, skyColour.z);
 
-        GL30.glBindVertexArray(cube.getVaoId());
-        GL20.glEnableVertexAttribArray(0);
+        GLState.bindVertexArray(cube.getVaoId());
+        GLState.enableVertexAttribArray(0);
 
         bindCubeMapTextures();
 
         GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, cube.getVertexCount());
-        GL20.glDisableVertexAttribArray(0);
-        GL30.glBindVertexArray(0);
+        GLState.bindVertexArray(0);
 
         shader.stop();
     }
@@ -127,12 +131,10 @@ public class SkyboxRenderer {
         shader.loadBlendFactor(blendFactor);
 
         // Bind the first cube map
-        GL13.glActiveTexture(GL13.GL_TEXTURE0);
-        GL11.glBindTexture(GL13.GL_TEXTURE_CUBE_MAP, first_cube_map);
+        GLState.bindTexture(0, GL13.GL_TEXTURE_CUBE_MAP, first_cube_map);
 
         // Bind the second cube map
-        GL13.glActiveTexture(GL13.GL_TEXTURE0);
-        GL11.glBindTexture(GL13.GL_TEXTURE_CUBE_MAP, second_cube_map);
+        GLState.bindTexture(0, GL13.GL_TEXTURE_CUBE_MAP, second_cube_map);
     }
 
     private float calculateBlendFactorAndTextures(float delta) {
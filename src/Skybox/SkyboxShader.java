@@ -22,6 +22,10 @@ public class SkyboxShader extends ShaderProgram {
 
     private static final float ROTATE_SPEED = 1f; // Speed at which the skybox will rotate
     private float current_rotation = 0;
+    private static final Vector3f Y_AXIS = new Vector3f(0, 1, 0);
+
+    private final Matrix4f viewMatrix = new Matrix4f(); // Rebuilt every frame
+    private final Vector3f fogColour = new Vector3f();
 
     public SkyboxShader() {
         super(VERTEX_FILE, FRAGMENT_FILE);
@@ -32,7 +36,7 @@ public class SkyboxShader extends ShaderProgram {
     }
 
     public void loadViewMatrix(Camera camera){
-        Matrix4f matrix = MatrixMath.createViewMatrix(camera);
+        Matrix4f matrix = MatrixMath.createViewMatrix(camera, viewMatrix);
 
         // Remove the translation in the view matrix so the skybox doesn't translate with respect to
         // the Camera's position
@@ -42,13 +46,14 @@ public class SkyboxShader extends ShaderProgram {
 
         // Accumulate the rotation of the skybox & rotate the skybox
         current_rotation += ROTATE_SPEED * DisplayManager.getDelta();
-        matrix.rotate((float) Math.toRadians(current_rotation), new Vector3f(0, 1, 0));
+        matrix.rotate((float) Math.toRadians(current_rotation), Y_AXIS);
 
         super.loadMatrix(location_viewMatrix, matrix);
     }
 
     public void loadFogColour(float r, float g, float b) {
-        super.load3DVector(location_fogColour, new Vector3f(r, g, b));
+        fogColour.set(r, g, b);
+        super.load3DVector(location_fogColour, fogColour);
     }
 
     public void loadCubeMapTextures() {
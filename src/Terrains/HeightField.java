@@ -0,0 +1,180 @@
+package Terrains;
+
+import Tools.ContentHash;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    The height samples of a terrain tile for collision & placing things on it, in one flat buffer (row after row
+    along z) rather than an array of arrays, so a lookup is a single bounds check & a few reads that sit next to each
+    other in memory.
+
+    Samples are quantised to unsigned 16 bits, a sample s standing for the height offset + s * scale; over the
+    whole range of a terrain that's still steps of around a thousandth of a unit, at half the memory of floats. The
+    buffer is either on the heap or a memory mapped raw 16 bit height map file (see mapRaw), in which case it takes
+    no heap at all. Building a tile's mesh still reads every sample once, so mapping saves the decoding & the heap
+    copy, not the reading.
+
+    Positions are in the tile's own space (0 to Terrain.SIZE on x & z); a position between samples is interpolated
+    across the triangle of the mesh it falls in, the same way the mesh is triangulated. Outside of the tile the
+    height is 0. Queries don't allocate anything, so they're fine to run every frame or for thousands of points.
+ */
+public class HeightField {
+
+    private static final int MAX_SAMPLE = 0xffff;
+
+    private final ShortBuffer samples; // samples.get(z * vertexCount + x), unsigned
+    private final float scale; // Height of one step of a sample
+    private final float offset; // Height of a sample of 0
+    private final int vertexCount; // Samples along each side
+    private final float samplesPerUnit; // Grid squares per world unit
+    private long contentHash;
+    private boolean hashed = false;
+
+    public HeightField(ShortBuffer samples, float scale, float offset, int vertexCount, float size) {
+        this.samples = samples;
+        this.scale = scale;
+        this.offset = offset;
+        this.vertexCount = vertexCount;
+        this.samplesPerUnit = (vertexCount - 1) / size;
+    }
+
+    // Quantise heights (heights[z * vertexCount + x]) over the range between the lowest & the highest of them
+    public static HeightField quantise(float[] heights, int vertexCount, float size) {
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for(float height : heights) {
+            min = Math.min(min, height);
+            max = Math.max(max, height);
+        }
+        return quantise(heights, vertexCount, size, min, max);
+    }
+
+    /*
+        Quantise heights over a fixed range, eg. the whole range of a world's height generator. Tiles quantised over
+        the same range share one scale & offset, so the same height on both sides of a seam becomes the same sample
+        (over a tile's own range they'd round differently & the seam would open up by a fraction of a step).
+        Heights outside the range are clamped to it.
+     */
+    public static HeightField quantise(float[] heights, int vertexCount, float size, float minHeight, float maxHeight) {
+        float scale = maxHeight > minHeight ? (maxHeight - minHeight) / MAX_SAMPLE : 1;
+
+        short[] samples = new short[heights.length];
+        for(int i = 0; i < heights.length; i++) {
+            samples[i] = (short) Math.max(0, Math.min(MAX_SAMPLE, Math.round((heights[i] - minHeight) / scale)));
+        }
+        return new HeightField(ShortBuffer.wrap(samples), scale, minHeight, vertexCount, size);
+    }
+
+    /*
+        Map a raw height map: nothing but vertexCount x vertexCount unsigned 16 bit little endian samples, row after
+        row, with 0 at minHeight & 65535 at maxHeight (the usual .r16/.raw export of terrain tools). Nothing is read
+        or decoded here; the OS pages the file in as samples are used, which for a tile is all of them as soon as its
+        mesh is generated.
+     */
+    public static HeightField mapRaw(Path file, float size, float minHeight, float maxHeight) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long sampleCount = channel.size() / 2;
+            int vertexCount = (int) Math.round(Math.sqrt(sampleCount));
+            if(channel.size() % 2 != 0 || (long) vertexCount * vertexCount != sampleCount || vertexCount < 2) {
+                throw new IOException("Not a square 16 bit height map: " + file + " (" + channel.size() + " bytes)");
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ShortBuffer samples = data.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            return new HeightField(samples, (maxHeight - minHeight) / MAX_SAMPLE, minHeight, vertexCount, size);
+        }
+    }
+
+    public float getHeight(float localX, float localZ) {
+        return interpolate(samples, scale, offset, vertexCount, localX * samplesPerUnit, localZ * samplesPerUnit);
+    }
+
+    // Like getHeight, but a position off the field gets the height at the nearest point on its edge instead of 0
+    public float getHeightClamped(float localX, float localZ) {
+        float gridX = Math.max(0, Math.min(vertexCount - 1, localX * samplesPerUnit));
+        float gridZ = Math.max(0, Math.min(vertexCount - 1, localZ * samplesPerUnit));
+        return interpolate(samples, scale, offset, vertexCount, gridX, gridZ);
+    }
+
+    /*
+        Heights at many points at once; out[i] is the height at (xs[i] - originX, zs[i] - originZ). The loop only
+        reads locals, which lets the JIT keep everything in registers across the whole batch.
+     */
+    public void getHeights(float[] xs, float[] zs, float originX, float originZ, float[] out) {
+        ShortBuffer samples = this.samples;
+        float scale = this.scale, offset = this.offset;
+        int vertexCount = this.vertexCount;
+        float samplesPerUnit = this.samplesPerUnit;
+
+        for(int i = 0; i < out.length; i++) {
+            out[i] = interpolate(samples, scale, offset, vertexCount, (xs[i] - originX) * samplesPerUnit, (zs[i] - originZ) * samplesPerUnit);
+        }
+    }
+
+    /*
+        Height at a position given in grid squares. Each square is split into two triangles along the diagonal from
+        its (1, 0) to its (0, 1) corner; the barycentric weights of those right angled triangles come out as simply
+        as below, without building any vectors. The weights add up to 1, so the raw samples are interpolated & only
+        scaled once at the end.
+     */
+    private static float interpolate(ShortBuffer samples, float scale, float offset, int vertexCount, float gridX, float gridZ) {
+        if(gridX < 0 || gridX > vertexCount - 1 || gridZ < 0 || gridZ > vertexCount - 1) {
+            return 0;
+        }
+
+        // A point on the far edge belongs to the last grid square, so tiles meet without a gap at their seams
+        int x = Math.min((int) gridX, vertexCount - 2);
+        int z = Math.min((int) gridZ, vertexCount - 2);
+
+        // Position inside the grid square
+        float fx = gridX - x;
+        float fz = gridZ - z;
+
+        int topLeft = z * vertexCount + x;
+        int bottomLeft = topLeft + vertexCount;
+        int sampleTopRight = samples.get(topLeft + 1) & MAX_SAMPLE;
+        int sampleBottomLeft = samples.get(bottomLeft) & MAX_SAMPLE;
+
+        float sample;
+        if(fx <= 1 - fz) {
+            // Left triangle: (0, 0), (1, 0), (0, 1)
+            sample = (1 - fx - fz) * (samples.get(topLeft) & MAX_SAMPLE) + fx * sampleTopRight + fz * sampleBottomLeft;
+        }
+        else {
+            // Right triangle: (1, 0), (1, 1), (0, 1)
+            sample = (1 - fz) * sampleTopRight + (fx + fz - 1) * (samples.get(bottomLeft + 1) & MAX_SAMPLE) + (1 - fx) * sampleBottomLeft;
+        }
+        return offset + sample * scale;
+    }
+
+    // Hash of the samples & what they stand for, worked out the first time it's needed (which can be on a worker thread)
+    public long getContentHash() {
+        if(!hashed) {
+            long hash = ContentHash.EMPTY;
+            for(int i = 0; i < vertexCount * vertexCount; i++) {
+                hash = ContentHash.update(hash, samples.get(i));
+            }
+            hash = ContentHash.update(hash, Float.floatToIntBits(scale));
+            hash = ContentHash.update(hash, Float.floatToIntBits(offset));
+            contentHash = ContentHash.update(hash, vertexCount);
+            hashed = true;
+        }
+        return contentHash;
+    }
+
+    // Getters
+    public int getVertexCount() { return vertexCount; }
+
+    // Distance between two samples in world units
+    public float getSampleSpacing() { return 1 / samplesPerUnit; }
+
+    // Height of a sample, x & z are sample indices
+    public float getSample(int x, int z) { return offset + (samples.get(z * vertexCount + x) & MAX_SAMPLE) * scale; }
+}
@@ -0,0 +1,87 @@
+package Terrains;
+
+/*
+    Procedural heights for a world of any size: a few octaves of value noise (random heights at the corners of a
+    lattice, smoothly interpolated in between), each twice as fine & ROUGHNESS times as tall as the one before.
+
+    The noise is a pure function of the world position & the seed, with nothing stored, so any tile can be generated
+    on its own, in any order, on any thread, & always comes out the same. Tiles sample it at their world positions,
+    so the edge of one tile gets exactly the same heights as the edge of its neighbour & there are no seams.
+ */
+public class HeightGenerator {
+
+    public static final int VERTEX_COUNT = 256; // Samples along each side of a tile, the same as the height map files
+
+    public static final float MAX_HEIGHT = 40; // Heights are always from -MAX_HEIGHT to MAX_HEIGHT
+    private static final int OCTAVES = 4;
+    private static final float ROUGHNESS = 0.35f;
+    private static final float FEATURE_SIZE = 400; // Width of the largest hills in world units
+
+    private final int seed;
+
+    public HeightGenerator(int seed) {
+        this.seed = seed;
+    }
+
+    // The heights of a whole tile, row after row along z, ready for Terrain.generateTerrainData
+    public float[] generateHeights(int gridX, int gridZ, int vertexCount) {
+        float[] heights = new float[vertexCount * vertexCount];
+        for(int z = 0; z < vertexCount; z++) {
+            // Computed from the grid position so the last row of a tile is exactly the first row of the next
+            float worldZ = (gridZ + z / (float) (vertexCount - 1)) * Terrain.SIZE;
+            for(int x = 0; x < vertexCount; x++) {
+                float worldX = (gridX + x / (float) (vertexCount - 1)) * Terrain.SIZE;
+                heights[z * vertexCount + x] = getHeight(worldX, worldZ);
+            }
+        }
+        return heights;
+    }
+
+    public float getHeight(float worldX, float worldZ) {
+        float total = 0;
+        float amplitude = 1;
+        float frequency = 1 / FEATURE_SIZE;
+        float amplitudes = 0;
+        for(int octave = 0; octave < OCTAVES; octave++) {
+            total += interpolatedNoise(worldX * frequency, worldZ * frequency, octave) * amplitude;
+            amplitudes += amplitude;
+            amplitude *= ROUGHNESS;
+            frequency *= 2;
+        }
+        return total / amplitudes * MAX_HEIGHT;
+    }
+
+    // Noise between the lattice points, blended with a smoothstep so the slope is continuous across them
+    private float interpolatedNoise(float x, float z, int octave) {
+        int latticeX = (int) Math.floor(x);
+        int latticeZ = (int) Math.floor(z);
+        float fx = smoothStep(x - latticeX);
+        float fz = smoothStep(z - latticeZ);
+
+        float topLeft = noise(latticeX, latticeZ, octave);
+        float topRight = noise(latticeX + 1, latticeZ, octave);
+        float bottomLeft = noise(latticeX, latticeZ + 1, octave);
+        float bottomRight = noise(latticeX + 1, latticeZ + 1, octave);
+
+        float top = topLeft + (topRight - topLeft) * fx;
+        float bottom = bottomLeft + (bottomRight - bottomLeft) * fx;
+        return top + (bottom - top) * fz;
+    }
+
+    private static float smoothStep(float t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    // A random value from -1 to 1 for a lattice point, by hashing its coordinates (integer mixing, as in a hash table)
+    private float noise(int x, int z, int octave) {
+        int hash = seed + octave * 0x27d4eb2d;
+        hash ^= x * 0x1b873593;
+        hash = Integer.rotateLeft(hash, 13) * 0x5bd1e995;
+        hash ^= z * 0xcc9e2d51;
+        hash = Integer.rotateLeft(hash, 15) * 0x85ebca6b;
+        hash ^= hash >>> 16;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 13;
+        return (hash & 0xffffff) / (float) 0x800000 - 1;
+    }
+}
@@ -1,156 +1,305 @@
 package Terrains;
 
+import Models.BoundingVolume;
+import Models.MeshData;
 import Models.RawModel;
+import Models.VertexFormat;
 import RenderEngine.Loader;
-import Tools.MatrixMath;
-import org.lwjgl.util.vector.Vector2f;
-import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 public class Terrain {
     public static final float SIZE = 800;
-    private static final float MAX_HEIGHT = 40; // # of vertices on each side of a terrain
+    public static final float MAX_HEIGHT = 40; // Height maps go from -MAX_HEIGHT to MAX_HEIGHT
     private static final float MAX_PIXEL_COLOR = 256 * 256 * 256;
 
+    private static final String[] RAW_EXTENSIONS = { ".r16", ".raw" };
+
+    private static final Map<Integer, ByteBuffer> INDEX_BUFFERS = new ConcurrentHashMap<>(); // By vertices per side
+
     private float x;
     private float z;
-    private float[][] heights;
+    private HeightField heights;
+    private TerrainQuadTree quadTree;
+    private int heightTexture; // The heights as a texture, for the level of detail renderer
+    private int macroTexture = 0; // The texture pack & blend map baked into one texture for far away terrain, 0 until baked
+    private long macroSource; // Which textures the macro texture was baked from
 
     private RawModel model;
+    private MeshData mesh; // The full resolution mesh until it's uploaded, only the mesh renderer needs it
+    private long meshBytes = 0; // Size of the vertex data once it's been uploaded
+    private BoundingVolume bounds;
     private TerrainTexturePack texturePack;
     private TerrainTexture blendMap;
 
     public Terrain(int gridX, int gridZ, Loader loader, TerrainTexturePack texturePack, TerrainTexture blendMap, String heigthMap) {
+        this(gridX, gridZ, texturePack, blendMap, (RawModel) null);
+        load(loader, generateTerrainData(heigthMap));
+        loadMesh(loader);
+    }
+
+    // A terrain whose mesh is still being generated; it's flat and drawn with the placeholder model until load()
+    public Terrain(int gridX, int gridZ, TerrainTexturePack texturePack, TerrainTexture blendMap, RawModel placeholder) {
         this.texturePack = texturePack;
         this.blendMap = blendMap;
         this.x = gridX * SIZE;
         this.z = gridZ * SIZE;
-        this.model = generateTerrain(loader, heigthMap);
+        this.model = placeholder;
     }
 
-    // This is responsible for generating a flat terrain. Quite messy but it will bound to
-    // change anyway, so this is just here for testing purposes
-    private RawModel generateTerrain(Loader loader, String heightMap) {
+    /*
+        Upload a generated terrain's heights & start using them, must be called on the thread owning the GL context.
+        The level of detail & tessellated renderers only need the height texture, so the full resolution mesh isn't
+        uploaded until something asks for it with loadMesh(); until then the placeholder model stays in place.
+     */
+    public void load(Loader loader, TerrainData data) {
+        this.heights = data.getHeights();
+        this.quadTree = data.getQuadTree();
+        this.mesh = data.getMesh();
+        this.bounds = data.getMesh().getBounds();
+        this.heightTexture = loader.loadHeightTexture(data.getHeights());
+    }
 
-        BufferedImage image = null;
+    // Upload the full resolution mesh, if the terrain is loaded & it hasn't been uploaded yet
+    public void loadMesh(Loader loader) {
+        if(mesh != null) {
+            this.model = loader.loadToVAO(mesh);
+            this.meshBytes = mesh.getVertexData().remaining();
+            this.mesh = null;
+        }
+    }
 
-        // Load in the heightMap (a form of perlin noise)
-        try {
-            image = ImageIO.read(new File("src/Resources/" + heightMap + ".png"));
+    /*
+        Release the GPU resources of a loaded terrain (its height texture & its mesh if that was uploaded), eg. when
+        it's too far away to be kept. The terrain can't be drawn anymore afterwards, only thrown away.
+     */
+    public void unload(Loader loader) {
+        if(heights == null) {
+            return;
         }
-        catch (IOException e) {
-            e.printStackTrace();
+        loader.releaseTexture(heightTexture);
+        if(macroTexture != 0) {
+            loader.releaseTexture(macroTexture);
+            macroTexture = 0;
+        }
+        if(meshBytes > 0) {
+            loader.releaseModel(model);
+        }
+        heights = null;
+        quadTree = null;
+        mesh = null;
+        meshBytes = 0;
+    }
+
+    // Estimated GPU memory used by this terrain alone; the index buffer & macro texture are shared with other tiles, so they aren't counted
+    public long getResidentBytes() {
+        if(heights == null) {
+            return 0;
+        }
+        return (long) heights.getVertexCount() * heights.getVertexCount() * 4 + meshBytes;
+    }
+
+    // A flat square the size of a terrain, drawn in place of terrains that haven't been generated yet
+    public static RawModel createPlaceholderModel(Loader loader) {
+        float[] vertices = { 0, 0, 0,   0, 0, SIZE,   SIZE, 0, 0,   SIZE, 0, SIZE };
+        float[] textureCoords = { 0, 0,   0, 1,   1, 0,   1, 1 };
+        float[] normals = { 0, 1, 0,   0, 1, 0,   0, 1, 0,   0, 1, 0 };
+        int[] indices = { 0, 1, 2, 2, 1, 3 };
+        return loader.loadToVAO(MeshData.fromArrays(vertices, textureCoords, normals, indices, BoundingVolume.fromPositions(vertices)));
+    }
+
+    /*
+        This is responsible for generating a terrain from a height map. It only builds the mesh & height data on the
+        CPU and doesn't touch OpenGL, so it's safe to run on a worker thread; load() uploads the result.
+
+        A raw 16 bit height map (src/Resources/<name>.r16 or .raw, see HeightMapConverter) is used if there is one:
+        it's memory mapped rather than decoded, so its samples never take any heap (they're all read once to build
+        the mesh all the same). The PNG is only decoded when there's no raw file. This is for tiles built from height
+        map files; the procedural tiles of the TerrainPager come from the generator below.
+     */
+    public static TerrainData generateTerrainData(String heightMap) {
+        for(String extension : RAW_EXTENSIONS) {
+            Path raw = Paths.get("src/Resources/" + heightMap + extension);
+            if(Files.exists(raw)) {
+                try {
+                    return generateTerrainData(HeightField.mapRaw(raw, SIZE, -MAX_HEIGHT, MAX_HEIGHT));
+                }
+                catch (IOException e) {
+                    System.err.println("Could not map height map: " + raw + ", falling back to the PNG");
+                    e.printStackTrace();
+                }
+            }
         }
 
-        int VERTEX_COUNT = image.getHeight();
-        heights = new float[VERTEX_COUNT][VERTEX_COUNT];
+        float[] samples = readHeightMap(heightMap);
+        return generateTerrainData(samples, (int) Math.round(Math.sqrt(samples.length)));
+    }
+
+    // Generate a terrain from heights that are already known, VERTEX_COUNT x VERTEX_COUNT of them row after row along z
+    public static TerrainData generateTerrainData(float[] samples, int VERTEX_COUNT) {
+        return generateTerrainData(HeightField.quantise(samples, VERTEX_COUNT, SIZE));
+    }
+
+    /*
+        The same, with the heights quantised over a fixed range instead of the tile's own; neighbouring tiles built
+        over the same range (eg. a height generator's) meet exactly at their seams
+     */
+    public static TerrainData generateTerrainData(float[] samples, int VERTEX_COUNT, float minHeight, float maxHeight) {
+        return generateTerrainData(HeightField.quantise(samples, VERTEX_COUNT, SIZE, minHeight, maxHeight));
+    }
+
+    /*
+        Every row of vertices (position, normal & texture coordinates) is written straight into the interleaved
+        vertex buffer. Rows don't depend on each other, so they're spread over the fork-join pool.
+     */
+    public static TerrainData generateTerrainData(HeightField heights) {
+        int VERTEX_COUNT = heights.getVertexCount();
+        int stride = VertexFormat.STANDARD.getStride();
+        ByteBuffer vertices = BufferUtils.createByteBuffer(VERTEX_COUNT * VERTEX_COUNT * stride);
 
-        int count = VERTEX_COUNT * VERTEX_COUNT;
-        float[] vertices = new float[count * 3];
-        float[] normals = new float[count * 3];
-        float[] textureCoords = new float[count * 2];
-        int[] indices = new int[6 * (VERTEX_COUNT - 1) * (VERTEX_COUNT - 1)];
-        int vertexPointer = 0;
+        IntStream.range(0, VERTEX_COUNT).parallel().forEach(i -> {
+            // Every row writes into its own slice of the buffer through its own view (duplicate() resets the byte order)
+            ByteBuffer row = vertices.duplicate().order(ByteOrder.nativeOrder());
+            row.position(i * VERTEX_COUNT * stride);
 
-        for (int i = 0; i < VERTEX_COUNT; i++) {
             for (int j = 0; j < VERTEX_COUNT; j++) {
                 // Vertex calculations
-                float height = getHeight(j, i, image);
-                heights[j][i] = height;
-                vertices[vertexPointer * 3] = (float) j / ((float) VERTEX_COUNT - 1) * SIZE;
-                vertices[vertexPointer * 3 + 1] = height;
-                vertices[vertexPointer * 3 + 2] = (float) i / ((float) VERTEX_COUNT - 1) * SIZE;
-
-                // Normal calculations
-                Vector3f normal = calculateNormal(j, i, image);
-                normals[vertexPointer * 3] = normal.x;
-                normals[vertexPointer * 3 + 1] = normal.y;
-                normals[vertexPointer * 3 + 2] = normal.z;
+                float height = heights.getSample(j, i);
+
+                // Normal calculations, from the heights of the surrounding vertices
+                float heightL = getSample(heights, j - 1, i);
+                float heightR = getSample(heights, j + 1, i);
+                float heightD = getSample(heights, j, i - 1);
+                float heightU = getSample(heights, j, i + 1);
+                float normalX = heightL - heightR, normalZ = heightD - heightU;
+                float length = (float) Math.sqrt(normalX * normalX + 4f + normalZ * normalZ);
 
                 // Texture calculations
-                textureCoords[vertexPointer * 2] = (float) j / ((float) VERTEX_COUNT - 1);
-                textureCoords[vertexPointer * 2 + 1] = (float) i / ((float) VERTEX_COUNT - 1);
-                vertexPointer++;
+                float u = (float) j / ((float) VERTEX_COUNT - 1);
+                float v = (float) i / ((float) VERTEX_COUNT - 1);
+
+                VertexFormat.putStandardVertex(row, u * SIZE, height, v * SIZE, u, v,
+                        normalX / length, 2f / length, normalZ / length);
+            }
+        });
+
+        // Bounds for frustum culling
+        float minHeight = Float.POSITIVE_INFINITY, maxHeight = Float.NEGATIVE_INFINITY;
+        for(int z = 0; z < VERTEX_COUNT; z++) {
+            for(int x = 0; x < VERTEX_COUNT; x++) {
+                float height = heights.getSample(x, z);
+                minHeight = Math.min(minHeight, height);
+                maxHeight = Math.max(maxHeight, height);
             }
         }
-        int pointer = 0;
+        float heightRange = maxHeight - minHeight;
+        float radius = (float) Math.sqrt(2 * SIZE * SIZE + heightRange * heightRange) / 2f;
+        BoundingVolume bounds = new BoundingVolume(0, minHeight, 0, SIZE, maxHeight, SIZE, radius);
+
+        int vertexCount = VERTEX_COUNT * VERTEX_COUNT;
+        int indexCount = 6 * (VERTEX_COUNT - 1) * (VERTEX_COUNT - 1);
+        MeshData mesh = new MeshData(vertices, getIndexBuffer(VERTEX_COUNT), vertexCount, indexCount,
+                MeshData.indexTypeFor(vertexCount), bounds);
+        return new TerrainData(heights, mesh, new TerrainQuadTree(heights));
+    }
+
+    // Every terrain of the same resolution has the same indices, so they're only built once
+    private static ByteBuffer getIndexBuffer(int VERTEX_COUNT) {
+        ByteBuffer indices = INDEX_BUFFERS.computeIfAbsent(VERTEX_COUNT, Terrain::createIndexBuffer);
+        return indices.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer createIndexBuffer(int VERTEX_COUNT) {
+        boolean shortIndices = MeshData.indexTypeFor(VERTEX_COUNT * VERTEX_COUNT) == GL11.GL_UNSIGNED_SHORT;
+        int quads = (VERTEX_COUNT - 1) * (VERTEX_COUNT - 1);
+        ByteBuffer indices = BufferUtils.createByteBuffer(6 * quads * (shortIndices ? 2 : 4));
+
         for (int gz = 0; gz < VERTEX_COUNT - 1; gz++) {
             for (int gx = 0; gx < VERTEX_COUNT - 1; gx++) {
                 int topLeft = (gz * VERTEX_COUNT) + gx;
                 int topRight = topLeft + 1;
                 int bottomLeft = ((gz + 1) * VERTEX_COUNT) + gx;
                 int bottomRight = bottomLeft + 1;
-                indices[pointer++] = topLeft;
-                indices[pointer++] = bottomLeft;
-                indices[pointer++] = topRight;
-                indices[pointer++] = topRight;
-                indices[pointer++] = bottomLeft;
-                indices[pointer++] = bottomRight;
+                int[] quad = { topLeft, bottomLeft, topRight, topRight, bottomLeft, bottomRight };
+                for(int index : quad) {
+                    if(shortIndices) {
+                        indices.putShort((short) index);
+                    }
+                    else {
+                        indices.putInt(index);
+                    }
+                }
             }
         }
-        return loader.loadToVAO(vertices, textureCoords, normals, indices);
+        indices.flip();
+        return indices;
     }
 
     public float getHeightOfTerrain(float worldX, float worldZ) {
-        float terrainX = worldX - this.x; // x index into tile into the terrain
-        float terrainZ = worldZ - this.z; // z index into a tile in the terrain
-
-        // Size of the terrain tile
-        float gridSquareSize = SIZE / ((float) heights.length - 1);
+        if(heights == null) {
+            return 0; // Still flat until it's loaded
+        }
+        return heights.getHeight(worldX - this.x, worldZ - this.z);
+    }
 
-        // Calculate the X and Z coordinates of the worldX and worldZ into the tile
-        int gridX = (int) Math.floor(terrainX / gridSquareSize);
-        int gridZ = (int) Math.floor(terrainZ / gridSquareSize);
-        if(gridX < 0 || gridX >= heights.length - 1 || gridZ < 0 || gridZ >= heights.length - 1) {
-            return 0;
+    // The heights at many points at once (out[i] is the height at xs[i], zs[i]), eg. to place thousands of objects
+    public void heightsAt(float[] xs, float[] zs, float[] out) {
+        if(heights == null) {
+            Arrays.fill(out, 0);
+            return;
         }
+        heights.getHeights(xs, zs, this.x, this.z, out);
+    }
 
-        // X and Z coordinates of the specific quad made from the triangles in this tile
-        float xCoordinate = (terrainX % gridSquareSize) / gridSquareSize;
-        float zCoordinate = (terrainZ % gridSquareSize) / gridSquareSize;
-        float height;
+    // Decode a PNG height map in src/Resources to heights, row after row along z (it has to be square)
+    public static float[] readHeightMap(String heightMap) {
+        BufferedImage image = null;
 
-        // If the coordinates are a part of the left triangle in the quad
-        if (xCoordinate <= (1- zCoordinate)) {
-            height = MatrixMath.barryCentric(new Vector3f(0, heights[gridX][gridZ], 0), new Vector3f(1,
-                            heights[gridX + 1][gridZ], 0), new Vector3f(0,
-                            heights[gridX][gridZ + 1], 1), new Vector2f(xCoordinate, zCoordinate));
+        // Load in the heightMap (a form of perlin noise)
+        try {
+            image = ImageIO.read(new File("src/Resources/" + heightMap + ".png"));
         }
-        // Coordinates are a part of the right triangle in the quad
-        else {
-            height = MatrixMath.barryCentric(new Vector3f(1, heights[gridX + 1][gridZ], 0), new Vector3f(1,
-                            heights[gridX + 1][gridZ + 1], 1), new Vector3f(0,
-                            heights[gridX][gridZ + 1], 1), new Vector2f(xCoordinate, zCoordinate));
+        catch (IOException e) {
+            e.printStackTrace();
         }
-        return height;
-    }
 
-    // Calculate the normal of a vertex based on the heights of the surrounding heights in the height map
-    private Vector3f calculateNormal(int x, int z, BufferedImage image) {
-        float heightL = getHeight(x-1,    z  , image);
-        float heightR = getHeight(x+1,    z  , image);
-        float heightD = getHeight(   x  , z-1, image);
-        float heightU = getHeight(   x  , z+1, image);
+        return readHeightSamples(image, image.getHeight());
+    }
 
-        Vector3f normal = new Vector3f(heightL - heightR, 2f, heightD - heightU);
-        normal.normalise();
-        return normal;
+    // Convert the whole height map to heights in one go, rows top to bottom; getRGB is far too slow to call per pixel
+    private static float[] readHeightSamples(BufferedImage image, int VERTEX_COUNT) {
+        int[] pixels = image.getRGB(0, 0, VERTEX_COUNT, VERTEX_COUNT, null, 0, VERTEX_COUNT);
+        float[] samples = new float[pixels.length];
+        for(int i = 0; i < pixels.length; i++) {
+            float height = pixels[i];
+            height += MAX_PIXEL_COLOR / 2f;
+            height /= MAX_PIXEL_COLOR / 2f;
+            height *= MAX_HEIGHT;
+            samples[i] = height;
+        }
+        return samples;
     }
 
-    // Get the height of a vertex at one point in the height map
-    private float getHeight(int x, int y, BufferedImage image) {
-        if(x < 0 || x >= image.getHeight() || y < 0 || y >= image.getHeight()) {
+    // Get the height at one point in the height map, everything outside of it is at 0
+    private static float getSample(HeightField heights, int x, int z) {
+        if(x < 0 || x >= heights.getVertexCount() || z < 0 || z >= heights.getVertexCount()) {
             return 0;
         }
-        float height = image.getRGB(x, y);
-        height += MAX_PIXEL_COLOR / 2f;
-        height /= MAX_PIXEL_COLOR / 2f;
-        height *= MAX_HEIGHT;
-        return height;
+        return heights.getSample(x, z);
     }
 
     // Getters
@@ -166,9 +315,30 @@ public class Terrain {
         return model;
     }
 
+    // Bounds of the terrain's heights (relative to its corner), or of the placeholder until it's loaded
+    public BoundingVolume getBounds() { return bounds != null ? bounds : model.getBounds(); }
+
+    public boolean isLoaded() { return heights != null; }
+
+    public HeightField getHeightField() { return heights; } // null until it's loaded
+
+    public TerrainQuadTree getQuadTree() { return quadTree; } // null until it's loaded
+
+    public int getHeightTexture() { return heightTexture; }
+
     public TerrainTexturePack getTexturePack() {
         return texturePack;
     }
 
     public TerrainTexture getBlendMap() { return blendMap; }
+
+    public int getMacroTexture() { return macroTexture; }
+
+    public long getMacroSource() { return macroSource; }
+
+    // Setters
+    public void setMacroTexture(int macroTexture, long macroSource) {
+        this.macroTexture = macroTexture;
+        this.macroSource = macroSource;
+    }
 }
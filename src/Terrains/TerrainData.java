@@ -0,0 +1,27 @@
+package Terrains;
+
+import Models.MeshData;
+
+/*
+    The CPU side result of generating a terrain: its height samples for collision, its mesh, ready to be uploaded, &
+    the quadtree the level of detail renderer draws it with
+ */
+public class TerrainData {
+
+    private HeightField heights;
+    private MeshData mesh;
+    private TerrainQuadTree quadTree;
+
+    public TerrainData(HeightField heights, MeshData mesh, TerrainQuadTree quadTree) {
+        this.heights = heights;
+        this.mesh = mesh;
+        this.quadTree = quadTree;
+    }
+
+    // Getters
+    public HeightField getHeights() { return heights; }
+
+    public MeshData getMesh() { return mesh; }
+
+    public TerrainQuadTree getQuadTree() { return quadTree; }
+}
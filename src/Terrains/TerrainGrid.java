@@ -0,0 +1,187 @@
+package Terrains;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    The terrain of the whole world: a grid of tiles, each Terrain.SIZE wide, with tile (gridX, gridZ) covering x from
+    gridX * SIZE & z from gridZ * SIZE. Anything that needs the ground at a world position asks the grid, which finds
+    the right tile in O(1) by dividing the position by the tile size, so nothing has to pick tiles by hand.
+
+    Positions off the grid (or on a tile that isn't there / hasn't loaded yet) are at height 0 rather than an error,
+    so walking off the edge of the world is harmless.
+ */
+public class TerrainGrid {
+
+    private final int width; // Tiles along x
+    private final int depth; // Tiles along z
+    private final Terrain[] tiles; // tiles[gridZ * width + gridX], null where there's no tile
+
+    private final List<Terrain> nearbyTiles = new ArrayList<>(); // Reused by getTilesNear()
+
+    public TerrainGrid(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.tiles = new Terrain[width * depth];
+    }
+
+    public void setTile(int gridX, int gridZ, Terrain tile) {
+        tiles[gridZ * width + gridX] = tile;
+    }
+
+    // The tile at a grid position, or null if it's off the grid
+    public Terrain getTile(int gridX, int gridZ) {
+        if(gridX < 0 || gridX >= width || gridZ < 0 || gridZ >= depth) {
+            return null;
+        }
+        return tiles[gridZ * width + gridX];
+    }
+
+    // The tile under a world position, or null if it's off the grid
+    public Terrain getTileAt(float worldX, float worldZ) {
+        int index = getTileIndex(worldX, worldZ);
+        return index < 0 ? null : tiles[index];
+    }
+
+    public float getHeight(float worldX, float worldZ) {
+        Terrain tile = getTileAt(worldX, worldZ);
+        return tile == null ? 0 : tile.getHeightOfTerrain(worldX, worldZ);
+    }
+
+    /*
+        The heights at many points at once (out[i] is the height at xs[i], zs[i]). The points are sorted by tile
+        first (a counting sort, so it's linear), then each tile answers all of its points in one batch.
+     */
+    public void heightsAt(float[] xs, float[] zs, float[] out) {
+        int count = out.length;
+
+        // Count the points on every tile, then turn the counts into where each tile's points start
+        int[] tileOf = new int[count];
+        int[] start = new int[tiles.length + 1];
+        for(int i = 0; i < count; i++) {
+            tileOf[i] = getTileIndex(xs[i], zs[i]);
+            if(tileOf[i] >= 0) {
+                start[tileOf[i] + 1]++;
+            }
+            else {
+                out[i] = 0;
+            }
+        }
+        for(int tile = 0; tile < tiles.length; tile++) {
+            start[tile + 1] += start[tile];
+        }
+
+        int[] order = new int[start[tiles.length]];
+        int[] next = Arrays.copyOf(start, tiles.length);
+        for(int i = 0; i < count; i++) {
+            if(tileOf[i] >= 0) {
+                order[next[tileOf[i]]++] = i;
+            }
+        }
+
+        for(int tile = 0; tile < tiles.length; tile++) {
+            int tileCount = start[tile + 1] - start[tile];
+            if(tileCount == 0) {
+                continue;
+            }
+
+            float[] tileXs = new float[tileCount], tileZs = new float[tileCount], tileHeights = new float[tileCount];
+            for(int i = 0; i < tileCount; i++) {
+                int point = order[start[tile] + i];
+                tileXs[i] = xs[point];
+                tileZs[i] = zs[point];
+            }
+            if(tiles[tile] != null) {
+                tiles[tile].heightsAt(tileXs, tileZs, tileHeights);
+            }
+            for(int i = 0; i < tileCount; i++) {
+                out[order[start[tile] + i]] = tileHeights[i];
+            }
+        }
+    }
+
+    /*
+        The surface normal at a world position, from the slope between the heights one sample to either side. Those
+        can be on the neighbouring tiles, so the normal is continuous across seams. Written into dest, which is
+        returned; straight up where there's no loaded tile.
+     */
+    public Vector3f getNormal(float worldX, float worldZ, Vector3f dest) {
+        Terrain tile = getTileAt(worldX, worldZ);
+        if(tile == null || tile.getHeightField() == null) {
+            dest.set(0, 1, 0);
+            return dest;
+        }
+
+        float step = tile.getHeightField().getSampleSpacing();
+        float heightL = getNeighbourHeight(tile, worldX - step, worldZ);
+        float heightR = getNeighbourHeight(tile, worldX + step, worldZ);
+        float heightD = getNeighbourHeight(tile, worldX, worldZ - step);
+        float heightU = getNeighbourHeight(tile, worldX, worldZ + step);
+
+        dest.set(heightL - heightR, 2 * step, heightD - heightU);
+        dest.normalise();
+        return dest;
+    }
+
+    /*
+        The height at a point next to one on tile. Where there's no loaded tile there (past the outer edge of the
+        grid, or a neighbour that isn't there or hasn't loaded yet) it's the height at tile's own closest edge, so
+        the slope flattens out instead of dropping to a height of 0.
+     */
+    private float getNeighbourHeight(Terrain tile, float worldX, float worldZ) {
+        Terrain neighbour = getTileAt(worldX, worldZ);
+        if(neighbour != null && neighbour.getHeightField() != null) {
+            return neighbour.getHeightOfTerrain(worldX, worldZ);
+        }
+        return tile.getHeightField().getHeightClamped(worldX - tile.getX(), worldZ - tile.getZ());
+    }
+
+    /*
+        The tiles that come within distance of a world position (on x & z), eg. the camera & its far plane; only the
+        tiles in that range are looked at, however large the grid is. The list is reused by the next call.
+     */
+    public List<Terrain> getTilesNear(float worldX, float worldZ, float distance) {
+        nearbyTiles.clear();
+
+        int minX = Math.max(0, (int) Math.floor((worldX - distance) / Terrain.SIZE));
+        int maxX = Math.min(width - 1, (int) Math.floor((worldX + distance) / Terrain.SIZE));
+        int minZ = Math.max(0, (int) Math.floor((worldZ - distance) / Terrain.SIZE));
+        int maxZ = Math.min(depth - 1, (int) Math.floor((worldZ + distance) / Terrain.SIZE));
+
+        for(int gridZ = minZ; gridZ <= maxZ; gridZ++) {
+            for(int gridX = minX; gridX <= maxX; gridX++) {
+                Terrain tile = tiles[gridZ * width + gridX];
+                if(tile != null && getDistanceToTile(gridX, gridZ, worldX, worldZ) <= distance) {
+                    nearbyTiles.add(tile);
+                }
+            }
+        }
+        return nearbyTiles;
+    }
+
+    // Distance on x & z from a world position to the closest point of the tile at a grid position (0 if it's on it)
+    public static float getDistanceToTile(int gridX, int gridZ, float worldX, float worldZ) {
+        float minX = gridX * Terrain.SIZE, minZ = gridZ * Terrain.SIZE;
+        float dx = Math.max(0, Math.max(minX - worldX, worldX - (minX + Terrain.SIZE)));
+        float dz = Math.max(0, Math.max(minZ - worldZ, worldZ - (minZ + Terrain.SIZE)));
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    // Index into tiles of the tile under a world position, or -1 if it's off the grid
+    private int getTileIndex(float worldX, float worldZ) {
+        int gridX = (int) Math.floor(worldX / Terrain.SIZE);
+        int gridZ = (int) Math.floor(worldZ / Terrain.SIZE);
+        if(gridX < 0 || gridX >= width || gridZ < 0 || gridZ >= depth) {
+            return -1;
+        }
+        return gridZ * width + gridX;
+    }
+
+    // Getters
+    public int getWidth() { return width; }
+
+    public int getDepth() { return depth; }
+}
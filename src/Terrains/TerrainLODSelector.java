@@ -0,0 +1,189 @@
+package Terrains;
+
+import Tools.Frustum;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Picks the chunks the terrain is drawn with each frame (continuous distance-dependent level of detail): every
+    level of the quadtree (see TerrainQuadTree) gets a range from the camera it's used within, and each tile's tree is
+    walked from the root down, going to a finer level only where a node comes within the next finer level's range.
+    Nodes entirely outside of the view frustum are dropped along the way, together with everything under them.
+
+    The ranges come from the screen space error: a level's range is how far away its geometric error shrinks to
+    MAX_SCREEN_ERROR pixels on screen, so rough terrain keeps its detail further out than smooth terrain does. Each
+    range is at least double the one below it (and a couple of its own nodes wide), which is what makes the levels
+    of neighbouring chunks never differ by more than one.
+
+    Within the last part of its range a chunk's vertices are morphed into the positions of the next coarser level's
+    (see getMorphStart), so by the time a chunk is swapped for its parent it already looks just like it and nothing
+    pops. Because the morph depends on the distance of each vertex rather than of the chunk, the edges where chunks
+    of different levels meet match up as well.
+
+    Nothing in here touches OpenGL, the CDLODTerrainRenderer draws the chunks that are picked.
+ */
+public class TerrainLODSelector {
+
+    public static final float MAX_SCREEN_ERROR = 2; // Pixels
+    private static final float MORPH_START = 0.7f; // Fraction of the way through its range where a level starts morphing
+    private static final float MIN_RANGE = 2; // In nodes of the level, so there's room to morph before the next level
+
+    public static final int WHOLE_NODE = -1;
+
+    private final float pixelsPerUnit; // Screen pixels covered by one world unit, one unit in front of the camera
+
+    // Per level
+    private final float[] maxErrors = new float[TerrainQuadTree.LEVELS]; // Largest error of any tile seen so far
+    private final float[] ranges = new float[TerrainQuadTree.LEVELS];
+    private final float[] morphStarts = new float[TerrainQuadTree.LEVELS];
+
+    // The chunks picked this frame; Chunk objects are reused from frame to frame
+    private final List<Chunk> chunkPool = new ArrayList<>();
+    private final List<Chunk> selection = new ArrayList<>();
+    private int culledChunks = 0;
+
+    public TerrainLODSelector(float pixelsPerUnit) {
+        this.pixelsPerUnit = pixelsPerUnit;
+        updateRanges();
+    }
+
+    // Pick the chunks to draw every loaded tile with (none are culled when frustum is null); the list is reused by the
+    // next call
+    public List<Chunk> select(List<Terrain> terrains, Vector3f camera, Frustum frustum) {
+        selection.clear();
+        culledChunks = 0;
+
+        for(Terrain terrain : terrains) {
+            TerrainQuadTree tree = terrain.getQuadTree();
+            if(tree == null) {
+                continue; // Still loading
+            }
+            includeErrors(tree);
+            selectNode(terrain, tree, TerrainQuadTree.LEVELS - 1, 0, 0, camera, frustum);
+        }
+        return selection;
+    }
+
+    /*
+        Returns false when the node is beyond its level's range, so its parent has to cover its area itself. A node
+        that's out of view counts as handled, nothing has to be drawn for it.
+     */
+    private boolean selectNode(Terrain terrain, TerrainQuadTree tree, int level, int nodeX, int nodeZ, Vector3f camera, Frustum frustum) {
+        float size = TerrainQuadTree.getNodeSize(level);
+        float minX = terrain.getX() + nodeX * size, minZ = terrain.getZ() + nodeZ * size;
+        float minY = tree.getMinHeight(level, nodeX, nodeZ), maxY = tree.getMaxHeight(level, nodeX, nodeZ);
+
+        if(!isWithin(camera, ranges[level], minX, minY, minZ, minX + size, maxY, minZ + size)) {
+            return false;
+        }
+        if(frustum != null && !frustum.isBoxVisible(minX, minY, minZ, minX + size, maxY, minZ + size)) {
+            culledChunks++;
+            return true;
+        }
+
+        if(level == 0 || !isWithin(camera, ranges[level - 1], minX, minY, minZ, minX + size, maxY, minZ + size)) {
+            addChunk(terrain, level, minX, minZ, size, WHOLE_NODE);
+            return true;
+        }
+
+        // Close enough for the finer level somewhere; the children that aren't are drawn as quarters of this node
+        for(int quadrant = 0; quadrant < 4; quadrant++) {
+            int childX = nodeX * 2 + (quadrant & 1), childZ = nodeZ * 2 + (quadrant >> 1);
+            if(!selectNode(terrain, tree, level - 1, childX, childZ, camera, frustum)) {
+                addChunk(terrain, level, minX, minZ, size, quadrant);
+            }
+        }
+        return true;
+    }
+
+    // Whether a box comes within a distance of the camera
+    private static boolean isWithin(Vector3f camera, float distance, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float dx = Math.max(0, Math.max(minX - camera.x, camera.x - maxX));
+        float dy = Math.max(0, Math.max(minY - camera.y, camera.y - maxY));
+        float dz = Math.max(0, Math.max(minZ - camera.z, camera.z - maxZ));
+        return dx * dx + dy * dy + dz * dz <= distance * distance;
+    }
+
+    private void addChunk(Terrain terrain, int level, float x, float z, float size, int quadrant) {
+        if(selection.size() == chunkPool.size()) {
+            chunkPool.add(new Chunk());
+        }
+        Chunk chunk = chunkPool.get(selection.size());
+        chunk.terrain = terrain;
+        chunk.level = level;
+        chunk.x = x;
+        chunk.z = z;
+        chunk.size = size;
+        chunk.quadrant = quadrant;
+        selection.add(chunk);
+    }
+
+    // The ranges have to be the same for every tile, or chunks wouldn't match up at the seams; so they're set by the roughest tile
+    private void includeErrors(TerrainQuadTree tree) {
+        boolean changed = false;
+        for(int level = 0; level < TerrainQuadTree.LEVELS; level++) {
+            if(tree.getError(level) > maxErrors[level]) {
+                maxErrors[level] = tree.getError(level);
+                changed = true;
+            }
+        }
+        if(changed) {
+            updateRanges();
+        }
+    }
+
+    private void updateRanges() {
+        float previous = 0;
+        for(int level = 0; level < TerrainQuadTree.LEVELS - 1; level++) {
+            float range = maxErrors[level] * pixelsPerUnit / MAX_SCREEN_ERROR;
+            range = Math.max(range, Math.max(previous * 2, MIN_RANGE * TerrainQuadTree.getNodeSize(level)));
+
+            ranges[level] = range;
+            morphStarts[level] = previous + (range - previous) * MORPH_START;
+            previous = range;
+        }
+
+        // The root is used however far away it is, and there's no coarser level for it to morph into
+        ranges[TerrainQuadTree.LEVELS - 1] = Float.POSITIVE_INFINITY;
+        morphStarts[TerrainQuadTree.LEVELS - 1] = Float.MAX_VALUE;
+    }
+
+    // Distance from the camera where a level starts morphing into the next coarser one; it's fully morphed at getMorphEnd
+    public float getMorphStart(int level) { return morphStarts[level]; }
+
+    public float getMorphEnd(int level) { return ranges[level]; }
+
+    // Getters
+    public float getRange(int level) { return ranges[level]; }
+
+    public int getCulledChunks() { return culledChunks; }
+
+    /*
+        A chunk to draw: a node of a tile's quadtree at its level, either whole or only one quadrant of it (0 to 3,
+        x first then z, the same as the order of its children) where the rest of it is covered by finer chunks.
+     */
+    public static class Chunk {
+
+        private Terrain terrain;
+        private int level;
+        private float x; // World position of the node's corner
+        private float z;
+        private float size;
+        private int quadrant; // WHOLE_NODE or the quadrant
+
+        // Getters
+        public Terrain getTerrain() { return terrain; }
+
+        public int getLevel() { return level; }
+
+        public float getX() { return x; }
+
+        public float getZ() { return z; }
+
+        public float getSize() { return size; }
+
+        public int getQuadrant() { return quadrant; }
+    }
+}
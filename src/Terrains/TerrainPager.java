@@ -0,0 +1,175 @@
+package Terrains;
+
+import RenderEngine.AssetPipeline;
+import RenderEngine.Loader;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+    Streams the tiles of a large world in & out around the camera, so only the part of the world near it is ever
+    generated or resident, however big the TerrainGrid is.
+
+    Every frame update():
+        - requests the missing tiles within loadDistance, nearest first, to be generated on the asset workers; no
+          more than MAX_PENDING at a time, so a fast camera doesn't queue up tiles it will have left long before
+          they're done
+        - marks the resident tiles within unloadDistance as used
+        - while the resident tiles take more GPU memory than the budget, evicts the least recently used one, as long
+          as it's beyond unloadDistance
+
+    unloadDistance is larger than loadDistance by the hysteresis, so a tile that was just loaded isn't evicted again
+    when the camera wanders back & forth over the border between the two; and tiles beyond it are only evicted
+    once the budget is used up, so going back to where the camera just was doesn't have to generate anything.
+
+    Callbacks tell the game when a tile has been loaded or evicted, eg. to place or remove what stands on it.
+ */
+public class TerrainPager {
+
+    private static final int MAX_PENDING = 4;
+
+    private final TerrainGrid grid;
+    private final AssetPipeline assets;
+    private final Loader loader;
+    private final TerrainTexturePack texturePack;
+    private final TerrainTexture blendMap;
+    private final HeightGenerator heights;
+
+    private final float loadDistance;
+    private final float unloadDistance;
+    private final long memoryBudget; // Bytes
+
+    // Loaded tiles, least recently used first (access order)
+    private final LinkedHashMap<Terrain, Boolean> residentTiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<int[]> missingTiles = new ArrayList<>(); // Reused by requestMissingTiles()
+
+    private int pendingTiles = 0;
+    private int evictedTiles = 0;
+
+    private Consumer<Terrain> onTileLoaded = tile -> { };
+    private Consumer<Terrain> onTileEvicted = tile -> { };
+
+    public TerrainPager(TerrainGrid grid, AssetPipeline assets, Loader loader, TerrainTexturePack texturePack,
+                        TerrainTexture blendMap, HeightGenerator heights, float loadDistance, float hysteresis, long memoryBudget) {
+        this.grid = grid;
+        this.assets = assets;
+        this.loader = loader;
+        this.texturePack = texturePack;
+        this.blendMap = blendMap;
+        this.heights = heights;
+        this.loadDistance = loadDistance;
+        this.unloadDistance = loadDistance + hysteresis;
+        this.memoryBudget = memoryBudget;
+    }
+
+    // Must be called on the main thread, once per frame
+    public void update(float cameraX, float cameraZ) {
+        touchTilesInRange(cameraX, cameraZ);
+        requestMissingTiles(cameraX, cameraZ);
+        evictTiles(cameraX, cameraZ);
+    }
+
+    private void touchTilesInRange(float cameraX, float cameraZ) {
+        for(Terrain tile : grid.getTilesNear(cameraX, cameraZ, unloadDistance)) {
+            residentTiles.get(tile); // Moves it to the most recently used end (does nothing for pending tiles)
+        }
+    }
+
+    private void requestMissingTiles(float cameraX, float cameraZ) {
+        if(pendingTiles >= MAX_PENDING) {
+            return;
+        }
+
+        int minX = Math.max(0, (int) Math.floor((cameraX - loadDistance) / Terrain.SIZE));
+        int maxX = Math.min(grid.getWidth() - 1, (int) Math.floor((cameraX + loadDistance) / Terrain.SIZE));
+        int minZ = Math.max(0, (int) Math.floor((cameraZ - loadDistance) / Terrain.SIZE));
+        int maxZ = Math.min(grid.getDepth() - 1, (int) Math.floor((cameraZ + loadDistance) / Terrain.SIZE));
+
+        missingTiles.clear();
+        for(int gridZ = minZ; gridZ <= maxZ; gridZ++) {
+            for(int gridX = minX; gridX <= maxX; gridX++) {
+                if(grid.getTile(gridX, gridZ) == null && TerrainGrid.getDistanceToTile(gridX, gridZ, cameraX, cameraZ) <= loadDistance) {
+                    missingTiles.add(new int[] { gridX, gridZ });
+                }
+            }
+        }
+        if(missingTiles.isEmpty()) {
+            return;
+        }
+
+        missingTiles.sort((a, b) -> Float.compare(TerrainGrid.getDistanceToTile(a[0], a[1], cameraX, cameraZ),
+                TerrainGrid.getDistanceToTile(b[0], b[1], cameraX, cameraZ)));
+        for(int i = 0; i < missingTiles.size() && pendingTiles < MAX_PENDING; i++) {
+            requestTile(missingTiles.get(i)[0], missingTiles.get(i)[1]);
+        }
+    }
+
+    // The tile is put in the grid right away, it's drawn flat until it's been generated. Every tile is quantised over
+    // the generator's whole range, so the heights along a seam are the same samples on both tiles. A tile that
+    // fails to generate is taken out of the grid again, so it's requested again once it's wanted
+    private void requestTile(int gridX, int gridZ) {
+        pendingTiles++;
+        grid.setTile(gridX, gridZ, assets.loadTerrain(gridX, gridZ, texturePack, blendMap, "tile " + gridX + ", " + gridZ,
+                () -> Terrain.generateTerrainData(heights.generateHeights(gridX, gridZ, HeightGenerator.VERTEX_COUNT),
+                        HeightGenerator.VERTEX_COUNT, -HeightGenerator.MAX_HEIGHT, HeightGenerator.MAX_HEIGHT),
+                tile -> {
+                    pendingTiles--;
+                    residentTiles.put(tile, Boolean.TRUE);
+                    onTileLoaded.accept(tile);
+                },
+                () -> {
+                    pendingTiles--;
+                    grid.setTile(gridX, gridZ, null);
+                }));
+    }
+
+    private void evictTiles(float cameraX, float cameraZ) {
+        long residentBytes = getResidentBytes();
+        Iterator<Terrain> leastRecentlyUsed = residentTiles.keySet().iterator();
+
+        while(residentBytes > memoryBudget && leastRecentlyUsed.hasNext()) {
+            Terrain tile = leastRecentlyUsed.next();
+            int gridX = Math.round(tile.getX() / Terrain.SIZE), gridZ = Math.round(tile.getZ() / Terrain.SIZE);
+            if(TerrainGrid.getDistanceToTile(gridX, gridZ, cameraX, cameraZ) <= unloadDistance) {
+                break; // Every tile from here on has been used this frame, they're all still needed
+            }
+
+            residentBytes -= tile.getResidentBytes();
+            leastRecentlyUsed.remove();
+            grid.setTile(gridX, gridZ, null);
+            tile.unload(loader);
+            evictedTiles++;
+            onTileEvicted.accept(tile);
+        }
+    }
+
+    // The GPU memory of every resident tile, worked out on demand since it grows when a tile's mesh is uploaded
+    public long getResidentBytes() {
+        long bytes = 0;
+        for(Terrain tile : residentTiles.keySet()) {
+            bytes += tile.getResidentBytes();
+        }
+        return bytes;
+    }
+
+    public void printStatus() {
+        System.out.println(String.format("Terrain tiles: %d pending, %d resident (%.1f of %.1f MB), %d evicted so far",
+                pendingTiles, residentTiles.size(), getResidentBytes() / (1024.0 * 1024.0),
+                memoryBudget / (1024.0 * 1024.0), evictedTiles));
+    }
+
+    // Getters
+    public int getPendingTiles() { return pendingTiles; }
+
+    public int getResidentTiles() { return residentTiles.size(); }
+
+    public int getEvictedTiles() { return evictedTiles; }
+
+    // Setters
+    public void setOnTileLoaded(Consumer<Terrain> onTileLoaded) { this.onTileLoaded = onTileLoaded; }
+
+    public void setOnTileEvicted(Consumer<Terrain> onTileEvicted) { this.onTileEvicted = onTileEvicted; }
+}
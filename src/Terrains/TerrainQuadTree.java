@@ -0,0 +1,143 @@
+package Terrains;
+
+/*
+    The quadtree a terrain tile is drawn with by the level of detail renderer. Every node of it is a square chunk of
+    the tile drawn with the same shared grid mesh (GRID_RESOLUTION quads a side), so a node at level 0 (the leaves)
+    is drawn at about the resolution of the height map, and every level up covers twice the area at half of that.
+    The root, at LEVELS - 1, is the whole tile.
+
+    What's kept per node is only the lowest & highest height under it, for frustum culling & for the distance to
+    the camera. Per level, the geometric error: how far (in world units) the terrain drawn at that level's resolution
+    is from the height map at worst, which tells how far away a level can be used before the error is visible.
+
+    Built from the height samples alone, without touching OpenGL, so it's generated on a worker thread with the rest
+    of the terrain data.
+ */
+public class TerrainQuadTree {
+
+    public static final int LEVELS = 4; // Leaves are 1/8th of a tile a side
+    public static final int GRID_RESOLUTION = 32; // Quads on each side of the shared grid mesh
+
+    private final float[][] minHeights; // [level][nodeZ * nodesPerSide + nodeX]
+    private final float[][] maxHeights;
+    private final float[] errors; // [level]
+
+    public TerrainQuadTree(HeightField heights) {
+        minHeights = new float[LEVELS][];
+        maxHeights = new float[LEVELS][];
+        errors = new float[LEVELS];
+
+        computeLeafBounds(heights);
+        for(int level = 1; level < LEVELS; level++) {
+            computeParentBounds(level);
+        }
+        for(int level = 0; level < LEVELS; level++) {
+            errors[level] = computeError(heights, level);
+        }
+    }
+
+    // The lowest & highest sample under each leaf, including the samples on its edges
+    private void computeLeafBounds(HeightField heights) {
+        int nodes = getNodesPerSide(0);
+        int vertexCount = heights.getVertexCount();
+        float samplesPerNode = (vertexCount - 1) / (float) nodes;
+
+        minHeights[0] = new float[nodes * nodes];
+        maxHeights[0] = new float[nodes * nodes];
+        for(int nodeZ = 0; nodeZ < nodes; nodeZ++) {
+            for(int nodeX = 0; nodeX < nodes; nodeX++) {
+                int minX = (int) Math.floor(nodeX * samplesPerNode);
+                int maxX = Math.min(vertexCount - 1, (int) Math.ceil((nodeX + 1) * samplesPerNode));
+                int minZ = (int) Math.floor(nodeZ * samplesPerNode);
+                int maxZ = Math.min(vertexCount - 1, (int) Math.ceil((nodeZ + 1) * samplesPerNode));
+
+                float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+                for(int z = minZ; z <= maxZ; z++) {
+                    for(int x = minX; x <= maxX; x++) {
+                        min = Math.min(min, heights.getSample(x, z));
+                        max = Math.max(max, heights.getSample(x, z));
+                    }
+                }
+                minHeights[0][nodeZ * nodes + nodeX] = min;
+                maxHeights[0][nodeZ * nodes + nodeX] = max;
+            }
+        }
+    }
+
+    // A node's bounds are those of its four children together
+    private void computeParentBounds(int level) {
+        int nodes = getNodesPerSide(level);
+        int childNodes = nodes * 2;
+        float[] childMin = minHeights[level - 1], childMax = maxHeights[level - 1];
+
+        minHeights[level] = new float[nodes * nodes];
+        maxHeights[level] = new float[nodes * nodes];
+        for(int nodeZ = 0; nodeZ < nodes; nodeZ++) {
+            for(int nodeX = 0; nodeX < nodes; nodeX++) {
+                int child = (nodeZ * 2) * childNodes + nodeX * 2;
+                minHeights[level][nodeZ * nodes + nodeX] = Math.min(Math.min(childMin[child], childMin[child + 1]),
+                        Math.min(childMin[child + childNodes], childMin[child + childNodes + 1]));
+                maxHeights[level][nodeZ * nodes + nodeX] = Math.max(Math.max(childMax[child], childMax[child + 1]),
+                        Math.max(childMax[child + childNodes], childMax[child + childNodes + 1]));
+            }
+        }
+    }
+
+    /*
+        The largest difference between a height sample & the height at the same point when the tile is drawn at a
+        level's resolution, where only the grid's vertices take their height from the height map & everything in
+        between is interpolated across the grid square.
+     */
+    private static float computeError(HeightField heights, int level) {
+        int gridVertices = getNodesPerSide(level) * GRID_RESOLUTION + 1; // Along each side of the whole tile
+        float gridSpacing = Terrain.SIZE / (gridVertices - 1);
+
+        float[] gridHeights = new float[gridVertices * gridVertices];
+        for(int z = 0; z < gridVertices; z++) {
+            for(int x = 0; x < gridVertices; x++) {
+                gridHeights[z * gridVertices + x] = heights.getHeight(x * gridSpacing, z * gridSpacing);
+            }
+        }
+
+        int vertexCount = heights.getVertexCount();
+        float samplesPerGridSquare = heights.getSampleSpacing() / gridSpacing;
+        float error = 0;
+        for(int z = 0; z < vertexCount; z++) {
+            float gridZ = z * samplesPerGridSquare;
+            int cellZ = Math.min((int) gridZ, gridVertices - 2);
+            float fz = gridZ - cellZ;
+
+            for(int x = 0; x < vertexCount; x++) {
+                float gridX = x * samplesPerGridSquare;
+                int cellX = Math.min((int) gridX, gridVertices - 2);
+                float fx = gridX - cellX;
+
+                int corner = cellZ * gridVertices + cellX;
+                float top = gridHeights[corner] + (gridHeights[corner + 1] - gridHeights[corner]) * fx;
+                float bottom = gridHeights[corner + gridVertices]
+                        + (gridHeights[corner + gridVertices + 1] - gridHeights[corner + gridVertices]) * fx;
+                float drawn = top + (bottom - top) * fz;
+
+                error = Math.max(error, Math.abs(heights.getSample(x, z) - drawn));
+            }
+        }
+        return error;
+    }
+
+    // Nodes along each side of the tile at a level
+    public static int getNodesPerSide(int level) {
+        return 1 << (LEVELS - 1 - level);
+    }
+
+    // Size of a node at a level in world units
+    public static float getNodeSize(int level) {
+        return Terrain.SIZE / getNodesPerSide(level);
+    }
+
+    // Getters
+    public float getMinHeight(int level, int nodeX, int nodeZ) { return minHeights[level][nodeZ * getNodesPerSide(level) + nodeX]; }
+
+    public float getMaxHeight(int level, int nodeX, int nodeZ) { return maxHeights[level][nodeZ * getNodesPerSide(level) + nodeX]; }
+
+    public float getError(int level) { return errors[level]; }
+}
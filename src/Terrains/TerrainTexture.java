@@ -12,4 +12,7 @@ public class TerrainTexture {
     public int getTextureID() {
         return textureID;
     }
+
+    // Setters
+    public void setTextureID(int textureID) { this.textureID = textureID; }
 }
@@ -0,0 +1,45 @@
+package Terrains;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/*
+    Generates the data of terrain tiles, decoding each height map only once however many tiles are built from it.
+
+    Tiles made from the same height map get the very same TerrainData: one heights array for collision, and one mesh
+    which the Loader then uploads once & shares between them (tiles are placed by their grid coordinates, so the mesh
+    itself is the same for all of them). Tiles of the same resolution also share their index buffer on the GPU, even
+    if their height maps differ, since the Loader shares index buffers by content.
+
+    Safe to use from several worker threads at once; a thread asking for a height map that another thread is still
+    generating waits for that one instead of generating it again.
+ */
+public class TerrainTileFactory {
+
+    private final Map<String, Future<TerrainData>> heightMaps = new ConcurrentHashMap<>();
+
+    public TerrainData getTerrainData(String heightMap) throws InterruptedException, ExecutionException {
+        Future<TerrainData> data = heightMaps.get(heightMap);
+        if(data == null) {
+            FutureTask<TerrainData> generate = new FutureTask<>(() -> Terrain.generateTerrainData(heightMap));
+            data = heightMaps.putIfAbsent(heightMap, generate);
+            if(data == null) {
+                data = generate;
+                generate.run(); // This thread won the race, the others wait for it in get()
+            }
+        }
+        return data.get();
+    }
+
+    /*
+        Forget every decoded height map. Tiles that were already built keep their data, this only lets the meshes
+        (which aren't needed anymore once they've been uploaded) be garbage collected; a tile requested afterwards
+        decodes its height map again.
+     */
+    public void clear() {
+        heightMaps.clear();
+    }
+}
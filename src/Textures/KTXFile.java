@@ -0,0 +1,159 @@
+package Textures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Reads & writes KTX (version 1) texture containers holding a block compressed 2D texture with its whole mip chain.
+
+    File layout:
+        12 bytes   identifier     0xAB 'KTX 11' 0xBB '\r' '\n' 0x1A '\n'
+        int        endianness     0x04030201 in the byte order the rest of the file is written in
+        int        glType, glTypeSize, glFormat   0, 1, 0 for compressed textures
+        int        glInternalFormat               eg. GL_COMPRESSED_RGBA_S3TC_DXT5_EXT
+        int        glBaseInternalFormat           GL_RGB or GL_RGBA
+        int        pixelWidth, pixelHeight, pixelDepth (0), numberOfArrayElements (0), numberOfFaces (1)
+        int        numberOfMipmapLevels
+        int        bytesOfKeyValueData            skipped
+        for every mip level, largest first:
+            int    imageSize
+            ...    imageSize bytes of compressed blocks, padded to a multiple of 4 bytes
+
+    The file is memory mapped and the mip levels are handed out as views into the mapping, so they can be passed
+    straight to glCompressedTexImage2D without copying them first.
+ */
+public class KTXFile {
+
+    private static final byte[] IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int ENDIANNESS = 0x04030201;
+    private static final int HEADER_SIZE = 64;
+
+    // Map a KTX file, or return null if there isn't one (or it holds something we can't upload)
+    public static TextureData read(Path path) {
+        if(!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_SIZE) {
+                return invalid(path, "truncated header");
+            }
+
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for(int i = 0; i < IDENTIFIER.length; i++) {
+                if(file.get(i) != IDENTIFIER[i]) {
+                    return invalid(path, "not a KTX file");
+                }
+            }
+
+            file.order(ByteOrder.LITTLE_ENDIAN);
+            if(file.getInt(12) != ENDIANNESS) {
+                file.order(ByteOrder.BIG_ENDIAN);
+            }
+
+            int glType = file.getInt(16);
+            int internalFormat = file.getInt(28);
+            int width = file.getInt(36);
+            int height = file.getInt(40);
+            int depth = file.getInt(44);
+            int arrayElements = file.getInt(48);
+            int faces = file.getInt(52);
+            int levels = file.getInt(56);
+            int keyValueBytes = file.getInt(60);
+
+            if(glType != 0 || TextureData.getBlockSize(internalFormat) == 0) {
+                return invalid(path, "not an S3TC compressed texture");
+            }
+            if(depth != 0 || arrayElements != 0 || faces != 1 || levels < 1 || width < 1 || height < 1) {
+                return invalid(path, "not a single 2D texture with mipmaps");
+            }
+            // Both come straight from the file, so check them before they're used to allocate or index anything
+            if(levels > 32 - Integer.numberOfLeadingZeros(Math.max(width, height))) {
+                return invalid(path, "more mip levels than a " + width + "x" + height + " texture has");
+            }
+            if(keyValueBytes < 0 || keyValueBytes > file.limit() - HEADER_SIZE) {
+                return invalid(path, "bad key/value data size");
+            }
+
+            ByteBuffer[] mipLevels = new ByteBuffer[levels];
+            int offset = HEADER_SIZE + keyValueBytes;
+            for(int level = 0; level < levels; level++) {
+                if(offset + 4 > file.limit()) {
+                    return invalid(path, "truncated mip level " + level);
+                }
+
+                int imageSize = file.getInt(offset);
+                int levelWidth = Math.max(1, width >> level), levelHeight = Math.max(1, height >> level);
+                if(imageSize != TextureData.getCompressedSize(internalFormat, levelWidth, levelHeight)
+                        || offset + 4 + imageSize > file.limit()) {
+                    return invalid(path, "bad size for mip level " + level);
+                }
+
+                ByteBuffer view = file.duplicate();
+                view.position(offset + 4);
+                view.limit(offset + 4 + imageSize);
+                mipLevels[level] = view.slice();
+
+                offset += 4 + ((imageSize + 3) & ~3); // Each level is padded to 4 bytes
+            }
+
+            return new TextureData(mipLevels, internalFormat, width, height);
+        }
+        catch (IOException e) {
+            System.err.println("Could not read compressed texture: " + path);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Write a compressed texture & its mip levels (largest first) as a little endian KTX file
+    public static void write(Path path, int internalFormat, int baseInternalFormat, int width, int height,
+                             ByteBuffer[] mipLevels) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(IDENTIFIER);
+        header.putInt(ENDIANNESS);
+        header.putInt(0).putInt(1).putInt(0); // glType, glTypeSize, glFormat
+        header.putInt(internalFormat).putInt(baseInternalFormat);
+        header.putInt(width).putInt(height).putInt(0); // Depth
+        header.putInt(0).putInt(1); // Array elements, faces
+        header.putInt(mipLevels.length);
+        header.putInt(0); // No key/value data
+        header.flip();
+
+        if(path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+
+            for(ByteBuffer level : mipLevels) {
+                int imageSize = level.remaining();
+                ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(imageSize);
+                size.flip();
+                writeFully(channel, size);
+                writeFully(channel, level.duplicate());
+                writeFully(channel, ByteBuffer.allocate(((imageSize + 3) & ~3) - imageSize)); // Padding
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while(data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static TextureData invalid(Path path, String reason) {
+        System.err.println("Ignoring compressed texture " + path + ": " + reason);
+        return null;
+    }
+}
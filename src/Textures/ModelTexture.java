@@ -2,6 +2,8 @@ package Textures;
 
 public class ModelTexture {
 
+    public static final int NO_LAYER = -1; // textureID is a plain 2D texture
+
     private int textureID;
 
     private float shineDamper = 1;
@@ -12,6 +14,9 @@ public class ModelTexture {
 
     private int numberOfRows = 1;
 
+    private int layer = NO_LAYER; // Layer of the texture array textureID refers to, if it's packed into one
+
+
     public ModelTexture(int id) {
         this.textureID = id;
     }
@@ -35,7 +40,27 @@ public class ModelTexture {
 
     public int getNumberOfRows() { return numberOfRows; }
 
+    public int getLayer() { return layer; }
+
+    public boolean isInTextureArray() { return layer != NO_LAYER; }
+
+    // Whether models using either texture can be drawn in one batch: the same texture bound & the same shader inputs
+    public boolean hasSameMaterial(ModelTexture other) {
+        return textureID == other.textureID && isInTextureArray() == other.isInTextureArray()
+                && shineDamper == other.shineDamper && reflectivity == other.reflectivity
+                && hasTransparency == other.hasTransparency && useFakeLighting == other.useFakeLighting
+                && numberOfRows == other.numberOfRows;
+    }
+
     // Setters
+    public void setTextureID(int textureID) { this.textureID = textureID; }
+
+    // Point at one layer of a texture array
+    public void setTextureArray(int textureArrayID, int layer) {
+        this.textureID = textureArrayID;
+        this.layer = layer;
+    }
+
     public void setReflectivity(float reflectivity) {
         this.reflectivity = reflectivity;
     }
@@ -0,0 +1,110 @@
+package Textures;
+
+import Tools.ContentHash;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    The layers of a GL_TEXTURE_2D_ARRAY, ready to be uploaded. Every layer is a whole texture of the same size & format,
+    so models using different layers can be drawn with one texture bound, the layer to sample is picked per instance.
+
+    pack() sorts a set of decoded textures into as few arrays as possible: one per size & format, split further if
+    there are more textures of one kind than an array is guaranteed to hold. The pixels of every mip level are stored
+    layer after layer in a single buffer, which is the order glTexImage3D & glCompressedTexImage3D expect them in.
+ */
+public class TextureArrayData {
+
+    public static final int MAX_LAYERS = 256; // The minimum GL_MAX_ARRAY_TEXTURE_LAYERS of GL 3.0
+
+    private final int[] textures; // Index (into the textures given to pack()) of the texture in each layer
+    private final int width;
+    private final int height;
+    private final int compressedFormat; // 0 if the layers are uncompressed RGBA8, mipmaps are then generated on the GPU
+    private final ByteBuffer[] levels; // Largest first; just level 0 for uncompressed layers
+    private final long contentHash;
+
+    private TextureArrayData(int[] textures, TextureData[] layers) {
+        TextureData first = layers[0];
+        this.textures = textures;
+        this.width = first.getWidth();
+        this.height = first.getHeight();
+        this.compressedFormat = first.getCompressedFormat();
+
+        int levelCount = first.isCompressed() ? first.getMipLevels().length : 1;
+        this.levels = new ByteBuffer[levelCount];
+
+        for(int level = 0; level < levelCount; level++) {
+            int size = 0;
+            for(TextureData layer : layers) {
+                size += getLevel(layer, level).remaining();
+            }
+
+            ByteBuffer buffer = BufferUtils.createByteBuffer(size);
+            for(TextureData layer : layers) {
+                buffer.put(getLevel(layer, level).duplicate());
+            }
+            buffer.flip();
+            levels[level] = buffer;
+        }
+
+        // The layers already have a hash of their size, format & pixels, so hashing those hashes is enough
+        long hash = ContentHash.update(ContentHash.EMPTY, layers.length);
+        for(TextureData layer : layers) {
+            hash = ContentHash.update(hash, (int) layer.getContentHash());
+            hash = ContentHash.update(hash, (int) (layer.getContentHash() >>> 32));
+        }
+        this.contentHash = hash;
+    }
+
+    // Group textures into arrays of the same size & format, keeping them in the order they were given in
+    public static List<TextureArrayData> pack(TextureData[] textures) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for(int i = 0; i < textures.length; i++) {
+            TextureData texture = textures[i];
+            int levels = texture.isCompressed() ? texture.getMipLevels().length : 1;
+            String kind = texture.getWidth() + "x" + texture.getHeight() + "/" + texture.getCompressedFormat() + "/" + levels;
+            groups.computeIfAbsent(kind, k -> new ArrayList<>()).add(i);
+        }
+
+        List<TextureArrayData> arrays = new ArrayList<>();
+        for(List<Integer> group : groups.values()) {
+            for(int start = 0; start < group.size(); start += MAX_LAYERS) {
+                int count = Math.min(MAX_LAYERS, group.size() - start);
+                int[] indices = new int[count];
+                TextureData[] layers = new TextureData[count];
+                for(int layer = 0; layer < count; layer++) {
+                    indices[layer] = group.get(start + layer);
+                    layers[layer] = textures[indices[layer]];
+                }
+                arrays.add(new TextureArrayData(indices, layers));
+            }
+        }
+        return arrays;
+    }
+
+    private static ByteBuffer getLevel(TextureData texture, int level) {
+        return texture.isCompressed() ? texture.getMipLevels()[level] : texture.getBuffer();
+    }
+
+    // Getters
+    public int getLayerCount() { return textures.length; }
+
+    public int getTexture(int layer) { return textures[layer]; }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public boolean isCompressed() { return compressedFormat != 0; }
+
+    public int getCompressedFormat() { return compressedFormat; }
+
+    public ByteBuffer[] getLevels() { return levels; }
+
+    public long getContentHash() { return contentHash; }
+}
@@ -1,12 +1,23 @@
 package Textures;
 
+import Tools.ContentHash;
+import org.lwjgl.opengl.EXTTextureCompressionS3TC;
+
 import java.nio.ByteBuffer;
 
+/*
+    A decoded texture, ready to be uploaded. It's either uncompressed RGBA8 pixels in a single buffer (mipmaps are then
+    generated on the GPU), or a block compressed texture with its whole mip chain already worked out (see KTXFile).
+ */
 public class TextureData {
 
     private int width;
     private int height;
     private ByteBuffer buffer;
+    private ByteBuffer[] mipLevels; // Compressed textures only, largest first
+    private int compressedFormat = 0; // GL internal format of a compressed texture, 0 if it's uncompressed
+    private long contentHash;
+    private boolean hashed = false;
 
     public TextureData(ByteBuffer buffer, int width, int height) {
         this.width = width;
@@ -14,10 +25,60 @@ public class TextureData {
         this.buffer = buffer;
     }
 
+    public TextureData(ByteBuffer[] mipLevels, int compressedFormat, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.mipLevels = mipLevels;
+        this.compressedFormat = compressedFormat;
+    }
+
+    // Bytes per 4x4 block of an S3TC format, or 0 if it isn't one
+    public static int getBlockSize(int compressedFormat) {
+        switch(compressedFormat) {
+            case EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT:
+            case EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT1_EXT:
+                return 8;
+            case EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT3_EXT:
+            case EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT:
+                return 16;
+            default:
+                return 0;
+        }
+    }
+
+    public static int getCompressedSize(int compressedFormat, int width, int height) {
+        return Math.max(1, (width + 3) / 4) * Math.max(1, (height + 3) / 4) * getBlockSize(compressedFormat);
+    }
+
     // Getters
     public int getWidth() { return width; }
 
     public int getHeight() { return height; }
 
     public ByteBuffer getBuffer() { return buffer; }
+
+    public boolean isCompressed() { return compressedFormat != 0; }
+
+    public int getCompressedFormat() { return compressedFormat; }
+
+    public ByteBuffer[] getMipLevels() { return mipLevels; }
+
+    // Hash of the size & pixels, worked out the first time it's needed (which can be on a worker thread)
+    public long getContentHash() {
+        if(!hashed) {
+            long hash = ContentHash.update(ContentHash.update(ContentHash.EMPTY, width), height);
+            if(isCompressed()) {
+                hash = ContentHash.update(hash, compressedFormat);
+                for(ByteBuffer level : mipLevels) {
+                    hash = ContentHash.update(hash, level);
+                }
+            }
+            else {
+                hash = ContentHash.update(hash, buffer);
+            }
+            contentHash = hash;
+            hashed = true;
+        }
+        return contentHash;
+    }
 }
@@ -0,0 +1,45 @@
+package Tools;
+
+import java.nio.ByteBuffer;
+
+/*
+    64 bit FNV-1a hashing of raw data, used to recognise identical content (eg. a source file that hasn't changed,
+    or two textures with the same pixels) without comparing it byte by byte. Different data can still hash the same,
+    so where sharing the wrong copy would show (the Loader's GPU objects) a match is confirmed by comparing bytes.
+ */
+public class ContentHash {
+
+    public static final long EMPTY = 0xcbf29ce484222325L; // FNV offset basis, the hash of no data at all
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Hash of the remaining bytes of a buffer (its position isn't changed)
+    public static long of(ByteBuffer data) {
+        return update(EMPTY, data);
+    }
+
+    public static long of(float[] data) {
+        long hash = EMPTY;
+        for(float value : data) {
+            hash = update(hash, Float.floatToIntBits(value));
+        }
+        return hash;
+    }
+
+    // Continue a hash with the remaining bytes of a buffer
+    public static long update(long hash, ByteBuffer data) {
+        for(int i = data.position(); i < data.limit(); i++) {
+            hash ^= data.get(i) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Continue a hash with the 4 bytes of an int, lowest byte first
+    public static long update(long hash, int value) {
+        for(int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
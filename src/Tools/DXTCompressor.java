@@ -0,0 +1,237 @@
+package Tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+    S3TC (DXT) block compression of RGBA8 images, used by the offline TextureConverter.
+
+    The image is split into 4x4 pixel blocks, and every block is stored as:
+        DXT1 (8 bytes):  two RGB565 end point colours + a 2 bit index per pixel into the 4 colour palette made of the
+                         end points and two colours interpolated between them (1/3 and 2/3 of the way)
+        DXT5 (16 bytes): an alpha block (two 8 bit end points + a 3 bit index per pixel into an 8 value palette),
+                         followed by the same colour block as DXT1
+
+    So an RGBA8 texture shrinks 8x as DXT1 and 4x as DXT5. The end points are picked along the principal axis of
+    the block's colours (the direction they vary in the most), which keeps gradients far better than just taking
+    the per channel minimum & maximum.
+ */
+public class DXTCompressor {
+
+    public static final int DXT1_BLOCK_SIZE = 8;
+    public static final int DXT5_BLOCK_SIZE = 16;
+
+    private static final int POWER_ITERATIONS = 8;
+
+    // Compress a whole image (RGBA8, rows top to bottom); the result is little endian, like GL expects it
+    public static ByteBuffer compress(byte[] rgba, int width, int height, boolean withAlpha) {
+        int blocksWide = Math.max(1, (width + 3) / 4);
+        int blocksHigh = Math.max(1, (height + 3) / 4);
+
+        ByteBuffer out = ByteBuffer.allocate(compressedSize(width, height, withAlpha)).order(ByteOrder.LITTLE_ENDIAN);
+        int[] block = new int[16 * 4];
+        for(int by = 0; by < blocksHigh; by++) {
+            for(int bx = 0; bx < blocksWide; bx++) {
+                readBlock(rgba, width, height, bx * 4, by * 4, block);
+                if(withAlpha) {
+                    encodeAlphaBlock(block, out);
+                }
+                encodeColourBlock(block, out);
+            }
+        }
+        out.flip();
+        return out;
+    }
+
+    public static int compressedSize(int width, int height, boolean withAlpha) {
+        int blocks = Math.max(1, (width + 3) / 4) * Math.max(1, (height + 3) / 4);
+        return blocks * (withAlpha ? DXT5_BLOCK_SIZE : DXT1_BLOCK_SIZE);
+    }
+
+    // Whether any pixel isn't fully opaque
+    public static boolean hasAlpha(byte[] rgba) {
+        for(int i = 3; i < rgba.length; i += 4) {
+            if((rgba[i] & 0xff) != 255) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Halve an image with a 2x2 box filter, for the next level of its mip chain
+    public static byte[] downsample(byte[] rgba, int width, int height) {
+        int newWidth = Math.max(1, width / 2);
+        int newHeight = Math.max(1, height / 2);
+        byte[] out = new byte[newWidth * newHeight * 4];
+
+        for(int y = 0; y < newHeight; y++) {
+            for(int x = 0; x < newWidth; x++) {
+                int x0 = Math.min(x * 2, width - 1), x1 = Math.min(x * 2 + 1, width - 1);
+                int y0 = Math.min(y * 2, height - 1), y1 = Math.min(y * 2 + 1, height - 1);
+                for(int c = 0; c < 4; c++) {
+                    int sum = (rgba[(y0 * width + x0) * 4 + c] & 0xff) + (rgba[(y0 * width + x1) * 4 + c] & 0xff)
+                            + (rgba[(y1 * width + x0) * 4 + c] & 0xff) + (rgba[(y1 * width + x1) * 4 + c] & 0xff);
+                    out[(y * newWidth + x) * 4 + c] = (byte) ((sum + 2) / 4);
+                }
+            }
+        }
+        return out;
+    }
+
+    // Copy a 4x4 block into block (16 pixels of r, g, b, a); blocks hanging over the edge repeat the edge pixels
+    private static void readBlock(byte[] rgba, int width, int height, int startX, int startY, int[] block) {
+        for(int y = 0; y < 4; y++) {
+            for(int x = 0; x < 4; x++) {
+                int px = Math.min(startX + x, width - 1);
+                int py = Math.min(startY + y, height - 1);
+                for(int c = 0; c < 4; c++) {
+                    block[(y * 4 + x) * 4 + c] = rgba[(py * width + px) * 4 + c] & 0xff;
+                }
+            }
+        }
+    }
+
+    private static void encodeColourBlock(int[] block, ByteBuffer out) {
+        // Mean colour of the block
+        float meanR = 0, meanG = 0, meanB = 0;
+        for(int i = 0; i < 16; i++) {
+            meanR += block[i * 4];
+            meanG += block[i * 4 + 1];
+            meanB += block[i * 4 + 2];
+        }
+        meanR /= 16; meanG /= 16; meanB /= 16;
+
+        // Covariance matrix of the colours (symmetric, so only 6 entries)
+        float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+        for(int i = 0; i < 16; i++) {
+            float r = block[i * 4] - meanR, g = block[i * 4 + 1] - meanG, b = block[i * 4 + 2] - meanB;
+            rr += r * r; rg += r * g; rb += r * b;
+            gg += g * g; gb += g * b; bb += b * b;
+        }
+
+        // Principal axis by power iteration
+        float axisR = 1, axisG = 1, axisB = 1;
+        for(int i = 0; i < POWER_ITERATIONS; i++) {
+            float r = rr * axisR + rg * axisG + rb * axisB;
+            float g = rg * axisR + gg * axisG + gb * axisB;
+            float b = rb * axisR + gb * axisG + bb * axisB;
+            float length = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+            if(length < 1e-6f) {
+                break; // Every pixel has the same colour, any axis will do
+            }
+            axisR = r / length; axisG = g / length; axisB = b / length;
+        }
+
+        // The end points are the extremes of the colours projected onto the axis
+        float minT = Float.MAX_VALUE, maxT = -Float.MAX_VALUE;
+        for(int i = 0; i < 16; i++) {
+            float t = (block[i * 4] - meanR) * axisR + (block[i * 4 + 1] - meanG) * axisG + (block[i * 4 + 2] - meanB) * axisB;
+            minT = Math.min(minT, t);
+            maxT = Math.max(maxT, t);
+        }
+        float lengthSquared = axisR * axisR + axisG * axisG + axisB * axisB;
+        minT /= lengthSquared;
+        maxT /= lengthSquared;
+
+        // Pull them in slightly, the interpolated palette colours then land closer to the pixels
+        float inset = (maxT - minT) / 16;
+        minT += inset;
+        maxT -= inset;
+
+        int colour0 = toRGB565(meanR + axisR * maxT, meanG + axisG * maxT, meanB + axisB * maxT);
+        int colour1 = toRGB565(meanR + axisR * minT, meanG + axisG * minT, meanB + axisB * minT);
+
+        // colour0 must be the larger one, otherwise the block would be decoded in the 3 colour + transparent mode
+        if(colour0 < colour1) {
+            int swap = colour0;
+            colour0 = colour1;
+            colour1 = swap;
+        }
+
+        int indices = 0;
+        if(colour0 != colour1) {
+            int[] palette = new int[4 * 3];
+            fromRGB565(colour0, palette, 0);
+            fromRGB565(colour1, palette, 1);
+            for(int c = 0; c < 3; c++) {
+                palette[2 * 3 + c] = (2 * palette[c] + palette[3 + c] + 1) / 3;
+                palette[3 * 3 + c] = (palette[c] + 2 * palette[3 + c] + 1) / 3;
+            }
+
+            for(int i = 0; i < 16; i++) {
+                int best = 0, bestDistance = Integer.MAX_VALUE;
+                for(int p = 0; p < 4; p++) {
+                    int dr = block[i * 4] - palette[p * 3];
+                    int dg = block[i * 4 + 1] - palette[p * 3 + 1];
+                    int db = block[i * 4 + 2] - palette[p * 3 + 2];
+                    int distance = dr * dr + dg * dg + db * db;
+                    if(distance < bestDistance) {
+                        bestDistance = distance;
+                        best = p;
+                    }
+                }
+                indices |= best << (i * 2);
+            }
+        }
+
+        out.putShort((short) colour0);
+        out.putShort((short) colour1);
+        out.putInt(indices);
+    }
+
+    private static void encodeAlphaBlock(int[] block, ByteBuffer out) {
+        int alpha0 = 0, alpha1 = 255;
+        for(int i = 0; i < 16; i++) {
+            alpha0 = Math.max(alpha0, block[i * 4 + 3]);
+            alpha1 = Math.min(alpha1, block[i * 4 + 3]);
+        }
+
+        long indices = 0;
+        if(alpha0 != alpha1) {
+            // alpha0 > alpha1 selects the 8 value palette: both end points & 6 values evenly spaced between them
+            int[] palette = new int[8];
+            palette[0] = alpha0;
+            palette[1] = alpha1;
+            for(int p = 1; p <= 6; p++) {
+                palette[p + 1] = ((7 - p) * alpha0 + p * alpha1 + 3) / 7;
+            }
+
+            for(int i = 0; i < 16; i++) {
+                int best = 0, bestDistance = Integer.MAX_VALUE;
+                for(int p = 0; p < 8; p++) {
+                    int distance = Math.abs(block[i * 4 + 3] - palette[p]);
+                    if(distance < bestDistance) {
+                        bestDistance = distance;
+                        best = p;
+                    }
+                }
+                indices |= (long) best << (i * 3);
+            }
+        }
+
+        out.put((byte) alpha0);
+        out.put((byte) alpha1);
+        for(int i = 0; i < 6; i++) {
+            out.put((byte) (indices >>> (i * 8))); // 48 bits of indices, lowest byte first
+        }
+    }
+
+    private static int toRGB565(float r, float g, float b) {
+        int r5 = Math.round(clamp(r) * 31 / 255);
+        int g6 = Math.round(clamp(g) * 63 / 255);
+        int b5 = Math.round(clamp(b) * 31 / 255);
+        return (r5 << 11) | (g6 << 5) | b5;
+    }
+
+    // Expand an RGB565 colour back to 8 bits per channel, the way the GPU does it
+    private static void fromRGB565(int colour, int[] palette, int entry) {
+        int r5 = (colour >> 11) & 0x1f, g6 = (colour >> 5) & 0x3f, b5 = colour & 0x1f;
+        palette[entry * 3] = (r5 << 3) | (r5 >> 2);
+        palette[entry * 3 + 1] = (g6 << 2) | (g6 >> 4);
+        palette[entry * 3 + 2] = (b5 << 3) | (b5 >> 2);
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,46 @@
+package Tools;
+
+import java.util.Arrays;
+
+/* A growable array of primitive floats, so large amounts of vertex data can be collected without boxing */
+public class FloatList {
+
+    private float[] data;
+    private int size = 0;
+
+    public FloatList() {
+        this(64);
+    }
+
+    public FloatList(int initialCapacity) {
+        this.data = new float[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(float value) {
+        if(size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2); // Double the capacity so adds are amortised O(1)
+        }
+        data[size++] = value;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, float value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Copy of the contents, trimmed to the number of values that were added
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
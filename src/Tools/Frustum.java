@@ -0,0 +1,97 @@
+package Tools;
+
+import Entities.Entity;
+import Models.BoundingVolume;
+import Terrains.Terrain;
+import org.lwjgl.util.vector.Matrix4f;
+
+/*
+    The view frustum of the camera as 6 planes in world space, used to reject entities and terrain tiles that can't
+    be seen before they're ever batched for rendering.
+
+    The planes are pulled straight out of the combined projection x view matrix (Gribb & Hartmann): a world space
+    point p is inside the frustum when -w <= x, y, z <= w for (x, y, z, w) = M * p, and each of those 6 inequalities
+    is a plane built by adding or subtracting a row of M from its 4th row. Every plane is stored as (a, b, c, d) with
+    a normalised (a, b, c) pointing into the frustum, so a*x + b*y + c*z + d is the signed distance of a point.
+
+    Nothing in here touches OpenGL, so it can be used (and tested) without a GL context.
+ */
+public class Frustum {
+
+    public static final int LEFT = 0, RIGHT = 1, BOTTOM = 2, TOP = 3, NEAR = 4, FAR = 5;
+
+    private final float[][] planes = new float[6][4];
+    private final Matrix4f projectionView = new Matrix4f();
+
+    // Rebuild the planes from a projection and a view matrix
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        Matrix4f.mul(projectionMatrix, viewMatrix, projectionView);
+        update(projectionView);
+    }
+
+    // Rebuild the planes from an already combined projection x view matrix
+    public void update(Matrix4f m) {
+        // LWJGL matrices are m<column><row>, so row i of the matrix is (m0i, m1i, m2i, m3i)
+        setPlane(LEFT,   m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+        setPlane(RIGHT,  m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+        setPlane(BOTTOM, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+        setPlane(TOP,    m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+        setPlane(NEAR,   m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+        setPlane(FAR,    m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        planes[plane][0] = a / length;
+        planes[plane][1] = b / length;
+        planes[plane][2] = c / length;
+        planes[plane][3] = d / length;
+    }
+
+    // A sphere is visible unless it's entirely behind any one of the planes
+    public boolean isSphereVisible(float x, float y, float z, float radius) {
+        for(float[] plane : planes) {
+            if(plane[0] * x + plane[1] * y + plane[2] * z + plane[3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A box is visible unless, for some plane, even its corner furthest along the plane's normal is behind it
+    public boolean isBoxVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for(float[] plane : planes) {
+            float x = plane[0] >= 0 ? maxX : minX;
+            float y = plane[1] >= 0 ? maxY : minY;
+            float z = plane[2] >= 0 ? maxZ : minZ;
+            if(plane[0] * x + plane[1] * y + plane[2] * z + plane[3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+        Test an entity's bounding sphere in world space, as of the entity store's last update() (EntityStore.cull
+        tests every entity's this way in one pass).
+     */
+    public boolean isVisible(Entity entity) {
+        float[] bounds = Entity.getStore().getBounds();
+        int offset = entity.getSlot() * 4;
+        return isSphereVisible(bounds[offset], bounds[offset + 1], bounds[offset + 2], bounds[offset + 3]);
+    }
+
+    // Test a terrain tile's bounding box; tiles are only ever translated by their grid position
+    public boolean isVisible(Terrain terrain) {
+        BoundingVolume bounds = terrain.getBounds();
+        if(bounds == null) {
+            return true;
+        }
+
+        return isBoxVisible(bounds.getMinX() + terrain.getX(), bounds.getMinY(), bounds.getMinZ() + terrain.getZ(),
+                            bounds.getMaxX() + terrain.getX(), bounds.getMaxY(), bounds.getMaxZ() + terrain.getZ());
+    }
+
+    // Getters
+    public float[] getPlane(int plane) { return planes[plane]; } // (a, b, c, d), see the top of the file
+}
@@ -0,0 +1,79 @@
+package Tools;
+
+import Terrains.Terrain;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Offline converter from the PNG height maps in src/Resources to raw 16 bit height maps (.r16) next to them:
+    unsigned little endian samples, row after row, 0 standing for -Terrain.MAX_HEIGHT & 65535 for MAX_HEIGHT.
+    Terrain maps a height map's .r16 file on its own if there is one, and falls back to decoding the PNG otherwise.
+
+    Usage: HeightMapConverter [height map names...]   (converts every heightmap*.png in src/Resources if none are given)
+
+    The .r16 files have to be regenerated whenever their PNG changes.
+ */
+public class HeightMapConverter {
+
+    private static final int MAX_SAMPLE = 0xffff;
+
+    public static void main(String[] args) {
+        List<String> names = new ArrayList<>();
+        if(args.length > 0) {
+            for(String name : args) {
+                names.add(name);
+            }
+        }
+        else {
+            File[] files = new File("src/Resources").listFiles((directory, name) -> name.endsWith(".png")
+                    && name.startsWith("heightmap"));
+            if(files != null) {
+                for(File file : files) {
+                    names.add(file.getName().substring(0, file.getName().length() - ".png".length()));
+                }
+            }
+        }
+
+        for(String name : names) {
+            try {
+                convert(name);
+            }
+            catch (IOException e) {
+                System.err.println("Could not convert height map: " + name);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void convert(String name) throws IOException {
+        float[] heights = Terrain.readHeightMap(name);
+
+        ByteBuffer samples = ByteBuffer.allocate(heights.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for(float height : heights) {
+            float normalised = (height + Terrain.MAX_HEIGHT) / (2 * Terrain.MAX_HEIGHT);
+            int sample = Math.round(normalised * MAX_SAMPLE);
+            samples.putShort((short) Math.max(0, Math.min(MAX_SAMPLE, sample)));
+        }
+        samples.flip();
+
+        String path = "src/Resources/" + name + ".r16";
+        try(FileChannel out = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(samples.hasRemaining()) {
+                out.write(samples);
+            }
+        }
+
+        int vertexCount = (int) Math.round(Math.sqrt(heights.length));
+        System.out.println(String.format("%s: %dx%d, %d KB as floats -> %d KB", path, vertexCount, vertexCount,
+                heights.length * 4 / 1024, heights.length * 2 / 1024));
+    }
+}
@@ -0,0 +1,51 @@
+package Tools;
+
+import java.util.Arrays;
+
+/* A growable array of primitive ints, so indices can be collected without boxing each one into an Integer */
+public class IntList {
+
+    private int[] data;
+    private int size = 0;
+
+    public IntList() {
+        this(64);
+    }
+
+    public IntList(int initialCapacity) {
+        this.data = new int[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(int value) {
+        if(size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2); // Double the capacity so adds are amortised O(1)
+        }
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Drop every value from index size on
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    // Copy of the contents, trimmed to the number of values that were added
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,370 @@
+package Tools;
+
+import java.util.Arrays;
+
+/*
+    Index buffer reordering to make meshes cheaper to shade.
+
+    The GPU keeps the results of the last few vertex shader runs in a small post-transform cache, so a vertex that
+    is referenced again shortly after it was last used doesn't have to be shaded again. How well a mesh uses that
+    cache is measured as the ACMR (average cache miss ratio): the number of vertices shaded per triangle. It ranges
+    from 3 (every corner of every triangle is shaded) down to about 0.5 for a perfectly ordered regular grid.
+
+    optimiseVertexCache implements Tom Forsyth's "Linear-Speed Vertex Cache Optimisation": triangles are emitted
+    greedily, always picking the triangle whose vertices are scored highest for being in the (simulated LRU) cache
+    and for having few triangles left, which clears out lonely vertices before they'd fall out of the cache.
+
+    optimiseOverdraw follows Sander, Nehab & Barczak's "Fast Triangle Reordering for Vertex Locality and Reduced
+    Overdraw": the cache optimised order is cut into clusters wherever the cache would have been flushed anyway (or
+    where cutting barely costs any cache efficiency), then the clusters are sorted so the ones facing outwards from
+    the middle of the mesh are drawn first. Those tend to occlude the rest, so later fragments fail the depth test
+    instead of being shaded and overwritten.
+ */
+public class MeshOptimiser {
+
+    // Cache sizes: Forsyth's scoring assumes an LRU cache of 32, ACMR is reported for a 16 entry FIFO (like most GPUs)
+    private static final int CACHE_SIZE = 32;
+    private static final int FIFO_CACHE_SIZE = 16;
+
+    // Forsyth's scoring constants
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    // How much worse than the whole mesh's ACMR a cluster can be before it's worth cutting it for overdraw
+    public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05f;
+
+    // Average number of vertices shaded per triangle when drawing the indices through a FIFO cache
+    public static float computeACMR(int[] indices, int vertexCount) {
+        if(indices.length < 3) {
+            return 0;
+        }
+
+        int[] cacheTimestamps = new int[vertexCount]; // When each vertex entered the cache, 0 if it never did
+        int timestamp = FIFO_CACHE_SIZE + 1;
+        int misses = 0;
+
+        for(int index : indices) {
+            // A vertex is still in a FIFO cache if fewer than FIFO_CACHE_SIZE other vertices were added since
+            if(timestamp - cacheTimestamps[index] > FIFO_CACHE_SIZE) {
+                cacheTimestamps[index] = timestamp++;
+                misses++;
+            }
+        }
+
+        return (float) misses / (indices.length / 3);
+    }
+
+    // Reorder the triangles of an indexed triangle list for the post-transform vertex cache
+    public static int[] optimiseVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        if(triangleCount == 0) {
+            return indices.clone();
+        }
+
+        // Vertex -> triangle adjacency, stored as offsets into one flat array
+        int[] remainingTriangles = new int[vertexCount];
+        for(int index : indices) {
+            remainingTriangles[index]++;
+        }
+
+        int[] adjacencyOffsets = new int[vertexCount + 1];
+        for(int v = 0; v < vertexCount; v++) {
+            adjacencyOffsets[v + 1] = adjacencyOffsets[v] + remainingTriangles[v];
+        }
+
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+        for(int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        // Vertex & triangle scores
+        int[] cachePositions = new int[vertexCount];
+        Arrays.fill(cachePositions, -1);
+
+        float[] vertexScores = new float[vertexCount];
+        for(int v = 0; v < vertexCount; v++) {
+            vertexScores[v] = scoreVertex(-1, remainingTriangles[v]);
+        }
+
+        float[] triangleScores = new float[triangleCount];
+        boolean[] emitted = new boolean[triangleCount];
+        int bestTriangle = 0;
+        for(int t = 0; t < triangleCount; t++) {
+            triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+            if(triangleScores[t] > triangleScores[bestTriangle]) {
+                bestTriangle = t;
+            }
+        }
+
+        // The simulated LRU cache; it briefly holds 3 more entries while a triangle is being added
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+
+        int[] result = new int[indices.length];
+        int resultPointer = 0;
+        int scanPointer = 0; // Fallback linear scan position when nothing in the cache has triangles left
+
+        while(bestTriangle >= 0) {
+            emitted[bestTriangle] = true;
+
+            int a = indices[bestTriangle * 3], b = indices[bestTriangle * 3 + 1], c = indices[bestTriangle * 3 + 2];
+            result[resultPointer++] = a;
+            result[resultPointer++] = b;
+            result[resultPointer++] = c;
+
+            // The emitted triangle's vertices move to the front of the cache, everything else shifts back
+            int newCount = 0;
+            newCache[newCount++] = a;
+            newCache[newCount++] = b;
+            newCache[newCount++] = c;
+            for(int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if(v != a && v != b && v != c) {
+                    newCache[newCount++] = v;
+                }
+            }
+
+            // This triangle no longer counts towards its vertices' remaining triangles
+            removeTriangle(a, bestTriangle, adjacency, adjacencyOffsets, remainingTriangles);
+            removeTriangle(b, bestTriangle, adjacency, adjacencyOffsets, remainingTriangles);
+            removeTriangle(c, bestTriangle, adjacency, adjacencyOffsets, remainingTriangles);
+
+            // Rescore every vertex that was in the cache (including the ones that just fell out of it)
+            for(int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                cachePositions[v] = i < CACHE_SIZE ? i : -1;
+                vertexScores[v] = scoreVertex(cachePositions[v], remainingTriangles[v]);
+            }
+
+            int[] swap = cache; cache = newCache; newCache = swap;
+            cacheCount = Math.min(newCount, CACHE_SIZE);
+
+            // The next triangle is the best one touching the cache, as only those had their scores change
+            bestTriangle = -1;
+            float bestScore = -1;
+            for(int i = 0; i < newCount; i++) {
+                int v = cache[i];
+                for(int j = adjacencyOffsets[v]; j < adjacencyOffsets[v] + remainingTriangles[v]; j++) {
+                    int t = adjacency[j];
+                    float score = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+                    triangleScores[t] = score;
+                    if(score > bestScore) {
+                        bestScore = score;
+                        bestTriangle = t;
+                    }
+                }
+            }
+
+            // Nothing left around the cache, carry on from the next triangle that hasn't been emitted yet
+            if(bestTriangle < 0) {
+                while(scanPointer < triangleCount && emitted[scanPointer]) {
+                    scanPointer++;
+                }
+                bestTriangle = scanPointer < triangleCount ? scanPointer : -1;
+            }
+        }
+
+        return result;
+    }
+
+    // Swap the triangle to the end of the vertex's live adjacency range and shrink the range
+    private static void removeTriangle(int vertex, int triangle, int[] adjacency, int[] offsets, int[] remaining) {
+        int start = offsets[vertex];
+        int end = start + remaining[vertex] - 1;
+        for(int i = start; i <= end; i++) {
+            if(adjacency[i] == triangle) {
+                adjacency[i] = adjacency[end];
+                adjacency[end] = triangle;
+                remaining[vertex]--;
+                return;
+            }
+        }
+    }
+
+    private static float scoreVertex(int cachePosition, int remainingTriangles) {
+        if(remainingTriangles == 0) {
+            return -1; // No triangles left to draw with this vertex, it's worthless
+        }
+
+        float score = 0;
+        if(cachePosition >= 0) {
+            if(cachePosition < 3) {
+                // Used by the last triangle; a fixed score so the next triangle doesn't just reuse its exact edge
+                score = LAST_TRIANGLE_SCORE;
+            }
+            else {
+                float scaler = 1.0f / (CACHE_SIZE - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+
+        // Boost vertices with few triangles left, so they get finished off instead of lingering
+        score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+        return score;
+    }
+
+    /*
+        Reorder clusters of an already cache optimised index list to reduce overdraw. Positions are tightly packed
+        (x, y, z) per vertex. A threshold of 1.05 lets a cluster be cut where that costs at most 5% of the ACMR.
+     */
+    public static int[] optimiseOverdraw(int[] indices, float[] positions, int vertexCount, float threshold) {
+        int triangleCount = indices.length / 3;
+        if(triangleCount < 2) {
+            return indices.clone();
+        }
+
+        float meshACMR = computeACMR(indices, vertexCount);
+
+        // Hard boundaries: triangles where all 3 vertices miss, the cache was effectively flushed so a cut is free
+        IntList hardBoundaries = new IntList();
+        int[] cacheTimestamps = new int[vertexCount];
+        int timestamp = FIFO_CACHE_SIZE + 1;
+
+        for(int t = 0; t < triangleCount; t++) {
+            int misses = simulateTriangle(indices, t, cacheTimestamps, timestamp);
+            timestamp += misses;
+            if(misses == 3 || t == 0) {
+                hardBoundaries.add(t);
+            }
+        }
+
+        // Soft boundaries: within a hard cluster, start a new cluster (with a cold cache) as soon as the current one
+        // is cache efficient enough on its own, this gives the sort below more and smaller clusters to work with
+        IntList clusters = new IntList();
+        for(int h = 0; h < hardBoundaries.size(); h++) {
+            int start = hardBoundaries.get(h);
+            int end = h + 1 < hardBoundaries.size() ? hardBoundaries.get(h + 1) : triangleCount;
+
+            int clusterStart = start;
+            int clusterMisses = 0;
+            timestamp += FIFO_CACHE_SIZE + 1; // Cold cache
+
+            clusters.add(start);
+            for(int t = start; t < end; t++) {
+                int misses = simulateTriangle(indices, t, cacheTimestamps, timestamp);
+                timestamp += misses;
+                clusterMisses += misses;
+
+                if(t + 1 < end && (float) clusterMisses / (t + 1 - clusterStart) <= meshACMR * threshold) {
+                    clusters.add(t + 1);
+                    clusterStart = t + 1;
+                    clusterMisses = 0;
+                    timestamp += FIFO_CACHE_SIZE + 1;
+                }
+            }
+        }
+
+        // Centroid of the whole mesh, weighted by triangle area
+        float[] meshCentroid = new float[3];
+        float meshArea = 0;
+        float[] normal = new float[3];
+        float[] centroid = new float[3];
+        for(int t = 0; t < triangleCount; t++) {
+            float area = triangleAreaAndNormal(indices, positions, t, normal, centroid);
+            meshCentroid[0] += centroid[0] * area;
+            meshCentroid[1] += centroid[1] * area;
+            meshCentroid[2] += centroid[2] * area;
+            meshArea += area;
+        }
+        if(meshArea > 0) {
+            meshCentroid[0] /= meshArea;
+            meshCentroid[1] /= meshArea;
+            meshCentroid[2] /= meshArea;
+        }
+
+        // Sort key of every cluster: how far its centroid lies along its average normal, away from the mesh centroid
+        int clusterCount = clusters.size();
+        float[] sortKeys = new float[clusterCount];
+        Integer[] order = new Integer[clusterCount];
+
+        for(int c = 0; c < clusterCount; c++) {
+            int start = clusters.get(c);
+            int end = c + 1 < clusterCount ? clusters.get(c + 1) : triangleCount;
+
+            float[] clusterNormal = new float[3];
+            float[] clusterCentroid = new float[3];
+            float clusterArea = 0;
+
+            for(int t = start; t < end; t++) {
+                float area = triangleAreaAndNormal(indices, positions, t, normal, centroid);
+                for(int k = 0; k < 3; k++) {
+                    clusterNormal[k] += normal[k] * area;
+                    clusterCentroid[k] += centroid[k] * area;
+                }
+                clusterArea += area;
+            }
+
+            if(clusterArea > 0) {
+                for(int k = 0; k < 3; k++) {
+                    clusterCentroid[k] /= clusterArea;
+                }
+            }
+
+            float normalLength = (float) Math.sqrt(clusterNormal[0] * clusterNormal[0] + clusterNormal[1] * clusterNormal[1] + clusterNormal[2] * clusterNormal[2]);
+            if(normalLength > 0) {
+                for(int k = 0; k < 3; k++) {
+                    clusterNormal[k] /= normalLength;
+                }
+            }
+
+            sortKeys[c] = (clusterCentroid[0] - meshCentroid[0]) * clusterNormal[0]
+                        + (clusterCentroid[1] - meshCentroid[1]) * clusterNormal[1]
+                        + (clusterCentroid[2] - meshCentroid[2]) * clusterNormal[2];
+            order[c] = c;
+        }
+
+        // Outward facing clusters first, the sort is stable so equal clusters keep their cache friendly order
+        Arrays.sort(order, (x, y) -> Float.compare(sortKeys[y], sortKeys[x]));
+
+        int[] result = new int[indices.length];
+        int resultPointer = 0;
+        for(int c : order) {
+            int start = clusters.get(c);
+            int end = c + 1 < clusterCount ? clusters.get(c + 1) : triangleCount;
+            System.arraycopy(indices, start * 3, result, resultPointer, (end - start) * 3);
+            resultPointer += (end - start) * 3;
+        }
+        return result;
+    }
+
+    // Push the vertices of triangle t through a FIFO cache and return how many of them missed (each miss inserts a
+    // vertex, so the caller's timestamp has to be advanced by the same amount)
+    private static int simulateTriangle(int[] indices, int t, int[] cacheTimestamps, int timestamp) {
+        int misses = 0;
+        for(int k = 0; k < 3; k++) {
+            int v = indices[t * 3 + k];
+            if(timestamp - cacheTimestamps[v] > FIFO_CACHE_SIZE) {
+                cacheTimestamps[v] = timestamp++;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    // Writes the unit normal and centroid of triangle t, and returns its area
+    private static float triangleAreaAndNormal(int[] indices, float[] positions, int t, float[] normal, float[] centroid) {
+        int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+
+        float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+        float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+
+        float nx = e1y * e2z - e1z * e2y;
+        float ny = e1z * e2x - e1x * e2z;
+        float nz = e1x * e2y - e1y * e2x;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        normal[0] = length > 0 ? nx / length : 0;
+        normal[1] = length > 0 ? ny / length : 0;
+        normal[2] = length > 0 ? nz / length : 0;
+
+        centroid[0] = (positions[a] + positions[b] + positions[c]) / 3f;
+        centroid[1] = (positions[a + 1] + positions[b + 1] + positions[c + 1]) / 3f;
+        centroid[2] = (positions[a + 2] + positions[b + 2] + positions[c + 2]) / 3f;
+
+        return length / 2f;
+    }
+}
@@ -0,0 +1,92 @@
+package Tools;
+
+import RenderEngine.Loader;
+import Textures.KTXFile;
+import Textures.TextureData;
+import org.lwjgl.opengl.EXTTextureCompressionS3TC;
+import org.lwjgl.opengl.GL11;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Offline converter from the PNG textures in src/Resources to block compressed KTX files next to them, with their
+    whole mip chain worked out ahead of time. Textures without any transparency become DXT1, the others DXT5.
+    The Loader picks up a texture's .ktx file on its own if there is one, and falls back to the PNG otherwise.
+
+    Usage: TextureConverter [texture names...]   (converts every texture PNG in src/Resources if none are given)
+
+    The .ktx files have to be regenerated whenever their PNG changes.
+ */
+public class TextureConverter {
+
+    public static void main(String[] args) {
+        List<String> names = new ArrayList<>();
+        if(args.length > 0) {
+            for(String name : args) {
+                names.add(name);
+            }
+        }
+        else {
+            // Height maps are read straight from the PNG by Terrain, they never end up in a texture
+            File[] files = new File("src/Resources").listFiles((directory, name) -> name.endsWith(".png")
+                    && !name.startsWith("heightmap"));
+            if(files != null) {
+                for(File file : files) {
+                    names.add(file.getName().substring(0, file.getName().length() - ".png".length()));
+                }
+            }
+        }
+
+        for(String name : names) {
+            try {
+                convert(name);
+            }
+            catch (IOException e) {
+                System.err.println("Could not convert texture: " + name);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void convert(String name) throws IOException {
+        TextureData png = Loader.decodeTextureFile(Loader.getTexturePath(name));
+        int width = png.getWidth(), height = png.getHeight();
+
+        byte[] pixels = new byte[width * height * 4];
+        png.getBuffer().duplicate().get(pixels);
+
+        boolean withAlpha = DXTCompressor.hasAlpha(pixels);
+        int format = withAlpha ? EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT
+                               : EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+
+        // Compress every level of the mip chain, down to 1x1
+        List<ByteBuffer> levels = new ArrayList<>();
+        int levelWidth = width, levelHeight = height;
+        long compressedBytes = 0;
+        while(true) {
+            ByteBuffer level = DXTCompressor.compress(pixels, levelWidth, levelHeight, withAlpha);
+            compressedBytes += level.remaining();
+            levels.add(level);
+
+            if(levelWidth == 1 && levelHeight == 1) {
+                break;
+            }
+            pixels = DXTCompressor.downsample(pixels, levelWidth, levelHeight);
+            levelWidth = Math.max(1, levelWidth / 2);
+            levelHeight = Math.max(1, levelHeight / 2);
+        }
+
+        KTXFile.write(Paths.get(Loader.getCompressedTexturePath(name)), format, withAlpha ? GL11.GL_RGBA : GL11.GL_RGB,
+                width, height, levels.toArray(new ByteBuffer[0]));
+
+        long uncompressedBytes = width * height * 4L * 4 / 3;
+        System.out.println(String.format("Converted %s: %dx%d %s, %d mip levels, %d KB -> %d KB", name, width, height,
+                withAlpha ? "DXT5" : "DXT1", levels.size(), uncompressedBytes / 1024, compressedBytes / 1024));
+    }
+}
@@ -0,0 +1,18 @@
+package Tools;
+
+/*
+    Computes the world matrices of a contiguous range of entities from flat arrays, laid out as for
+    MatrixMath.computeWorldMatrices: count entities from first on, positions & rotations 3 floats each, one scale
+    each, 16 floats of column major matrix out each.
+
+    The TransformStore runs every range of slots that changed through one of these. SCALAR is the plain Java loop,
+    which is what there is on Java 8. A SIMD version (eg. on the Vector API of later JDKs, a few entities per vector
+    lane) can be dropped in with TransformStore.setWorldMatrixKernel without touching anything else: the ranges are
+    contiguous, so every input is a unit stride load & nothing has to be gathered.
+ */
+public interface WorldMatrixKernel {
+
+    WorldMatrixKernel SCALAR = MatrixMath::computeWorldMatrices;
+
+    void computeWorldMatrices(float[] positions, float[] rotations, float[] scales, float[] out, int first, int count);
+}
@@ -8,6 +8,8 @@ import org.lwjgl.opengl.GL14;
 import org.lwjgl.opengl.GL30;
 import org.lwjgl.opengl.GL32;
 
+import RenderEngine.GLState;
+
 /*
 * This Frame Buffer Container class is responsible for storing a 2d texture of the 3D Game World above and
 * below a body of water so they can be used to create reflection and refraction affects for the water body texture
@@ -43,11 +45,11 @@ public class WaterFrameBuffers {
     /* Called during game termination*/
     public void cleanUp() {
         GL30.glDeleteFramebuffers(reflectionFrameBuffer);
-        GL11.glDeleteTextures(reflectionTexture);
+        GLState.deleteTexture(reflectionTexture);
         GL30.glDeleteRenderbuffers(reflectionDepthBuffer);
         GL30.glDeleteFramebuffers(refractionFrameBuffer);
-        GL11.glDeleteTextures(refractionTexture);
-        GL11.glDeleteTextures(refractionDepthTexture);
+        GLState.deleteTexture(refractionTexture);
+        GLState.deleteTexture(refractionDepthTexture);
     }
 
     /* Following two functions bind Frame Buffers to their correct place in memory*/
@@ -67,7 +69,7 @@ public class WaterFrameBuffers {
     */
     public void unbindCurrentFrameBuffer() {
         GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
-        GL11.glViewport(0, 0, Display.getWidth(), Display.getHeight());
+        GLState.viewport(0, 0, Display.getWidth(), Display.getHeight());
     }
 
     /* Initialize a reflection frame buffer with a Depth Buffer & a pixel texture attachment*/
@@ -88,9 +90,9 @@ public class WaterFrameBuffers {
 
     /* This will bind a frame buffer into memory so it can be used */
     private void bindFrameBuffer(int frameBuffer, int width, int height){
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);//To make sure the texture isn't bound
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, 0);//To make sure the texture isn't bound
         GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, frameBuffer);
-        GL11.glViewport(0, 0, width, height);
+        GLState.viewport(0, 0, width, height);
     }
 
     /* Initialize a frame buffer object with a corresponding FBO (Frame Buffer Object) Id */
@@ -107,7 +109,7 @@ public class WaterFrameBuffers {
     /* Create a texture attachment for a generic frame buffer */
     private int createTextureAttachment( int width, int height) {
         int texture = GL11.glGenTextures();
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, texture);
         GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGB, width, height,
                 0, GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
@@ -120,7 +122,7 @@ public class WaterFrameBuffers {
     /* Create a depth texture for a generic frame buffer so renders can determine pixels to render based on their position */
     private int createDepthTextureAttachment(int width, int height){
         int texture = GL11.glGenTextures();
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, texture);
         GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL14.GL_DEPTH_COMPONENT32, width, height,
                 0, GL11.GL_DEPTH_COMPONENT, GL11.GL_FLOAT, (ByteBuffer) null);
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
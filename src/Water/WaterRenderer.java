@@ -5,12 +5,10 @@ import java.util.List;
 import Models.RawModel;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector3f;
 
+import RenderEngine.GLState;
 import RenderEngine.Loader;
 import Tools.MatrixMath;
 import Entities.Camera;
@@ -47,21 +45,18 @@ public class WaterRenderer {
     private void prepareRender(Camera camera){
         shader.start();
         shader.loadViewMatrix(camera);
-        GL30.glBindVertexArray(quad.getVaoId());
-        GL20.glEnableVertexAttribArray(0);
+        GLState.bindVertexArray(quad.getVaoId());
+        GLState.enableVertexAttribArray(0);
 
         // Activate and bind reflection texture
-        GL13.glActiveTexture(GL13.GL_TEXTURE0);
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, fbos.getReflectionTexture());
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, fbos.getReflectionTexture());
 
         // Activate and bind refraction texture
-        GL13.glActiveTexture(GL13.GL_TEXTURE1);
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, fbos.getRefractionTexture());
+        GLState.bindTexture(1, GL11.GL_TEXTURE_2D, fbos.getRefractionTexture());
     }
 
     private void unbind(){
-        GL20.glDisableVertexAttribArray(0);
-        GL30.glBindVertexArray(0);
+        GLState.bindVertexArray(0);
         shader.stop();
     }
 
@@ -19,6 +19,8 @@ public class WaterShader extends ShaderProgram {
     private int location_reflectionTexture;
     private int location_refractionTexture;
 
+    private final Matrix4f viewMatrix = new Matrix4f(); // Rebuilt every frame
+
     public WaterShader() {
         super(VERTEX_FILE, FRAGMENT_FILE);
     }
@@ -44,7 +46,7 @@ public class WaterShader extends ShaderProgram {
     }
 
     public void loadViewMatrix(Camera camera){
-        Matrix4f viewMatrix = MatrixMath.createViewMatrix(camera);
+        MatrixMath.createViewMatrix(camera, viewMatrix);
         loadMatrix(location_viewMatrix, viewMatrix);
     }
 
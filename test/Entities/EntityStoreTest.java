@@ -0,0 +1,126 @@
+package Entities;
+
+import Models.BoundingVolume;
+import Models.RawModel;
+import Models.TexturedModel;
+import Textures.ModelTexture;
+import Tools.Check;
+
+/*
+    The EntityStore is plain arrays, so it runs headless; the models only need ids, nothing is uploaded. Every model
+    here has a unit bounding sphere around its origin, so an entity's world sphere is centred on its position with
+    its scale as the radius, and is easy to write down.
+ */
+public class EntityStoreTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    public static void main(String[] args) {
+        staleHandles();
+        swapRemove();
+        incrementalBounds();
+        Check.finish("EntityStoreTest");
+    }
+
+    private static TexturedModel createModel(int id) {
+        RawModel rawModel = new RawModel(id, 3);
+        rawModel.setBounds(new BoundingVolume(-1, -1, -1, 1, 1, 1, 1));
+        return new TexturedModel(rawModel, new ModelTexture(id));
+    }
+
+    private static void staleHandles() {
+        EntityStore store = new EntityStore();
+        long first = store.create(createModel(1), 0, 0, 0, 0, 0, 0, 0, 1);
+        long second = store.create(createModel(2), 0, 5, 0, 0, 0, 0, 0, 1);
+
+        store.destroy(first);
+        Check.isTrue("destroyed handle is no longer alive", !store.isAlive(first));
+        Check.isTrue("other handle is still alive", store.isAlive(second));
+        Check.isTrue("destroyed handle is rejected", throwsOnLookup(store, first));
+
+        // The freed index is handed out again, with a new generation
+        long reused = store.create(createModel(3), 0, 0, 0, 0, 0, 0, 0, 1);
+        Check.equals("index is reused", (int) first, (int) reused);
+        Check.isTrue("reused index gets a different handle", reused != first);
+        Check.isTrue("old handle is still rejected after its index was reused", throwsOnLookup(store, first));
+        Check.equals("entities", 2, store.getEntityCount());
+    }
+
+    private static boolean throwsOnLookup(EntityStore store, long handle) {
+        try {
+            store.getSlot(handle);
+            return false;
+        }
+        catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+    // Destroying an entity moves the last one into its slot, with all of its components
+    private static void swapRemove() {
+        EntityStore store = new EntityStore();
+        TexturedModel lastModel = createModel(3);
+        long first = store.create(createModel(1), 0, 1, 2, 3, 0, 0, 0, 1);
+        long middle = store.create(createModel(2), 1, 4, 5, 6, 0, 0, 0, 1);
+        long last = store.create(lastModel, 7, 10, 20, 30, 0, 90, 0, 2);
+        store.update();
+
+        int version = store.getLayoutVersion();
+        store.destroy(first);
+
+        Check.equals("layout version goes up", version + 1, store.getLayoutVersion());
+        Check.equals("last entity is in the freed slot", 0, store.getSlot(last));
+        Check.equals("middle entity didn't move", 1, store.getSlot(middle));
+        Check.equals("entities", 2, store.getEntityCount());
+
+        Check.isTrue("model moved", store.getModelAt(0) == lastModel);
+        Check.equals("atlas index moved", 7, store.getAtlasIndexAt(0));
+        TransformStore transforms = store.getTransforms();
+        Check.equals("x moved", 10, transforms.getX(0), EPSILON);
+        Check.equals("y moved", 20, transforms.getY(0), EPSILON);
+        Check.equals("z moved", 30, transforms.getZ(0), EPSILON);
+        Check.equals("rotation moved", 90, transforms.getRotY(0), EPSILON);
+        Check.equals("scale moved", 2, transforms.getScale(0), EPSILON);
+
+        // Its bounds come along as they were, before the next update
+        float[] bounds = store.getBounds();
+        Check.equals("bounds x moved", 10, bounds[0], EPSILON);
+        Check.equals("bounds y moved", 20, bounds[1], EPSILON);
+        Check.equals("bounds z moved", 30, bounds[2], EPSILON);
+        Check.equals("bounds radius moved", 2, bounds[3], EPSILON);
+
+        store.update();
+        Check.equals("bounds x after update", 10, store.getBounds()[0], EPSILON);
+
+        // Destroying the last entity doesn't move anything, but still counts as a layout change
+        version = store.getLayoutVersion();
+        store.destroy(middle);
+        Check.equals("layout version goes up when the last is destroyed", version + 1, store.getLayoutVersion());
+        Check.equals("remaining entity stays put", 0, store.getSlot(last));
+    }
+
+    // Only moved entities have their bounds redone, but they all have to end up right
+    private static void incrementalBounds() {
+        EntityStore store = new EntityStore();
+        long[] handles = new long[200];
+        for(int i = 0; i < handles.length; i++) {
+            handles[i] = store.create(createModel(1), 0, i, 0, 0, 0, 0, 0, 1);
+        }
+        store.update();
+
+        for(int i = 0; i < handles.length; i += 7) {
+            store.getTransforms().translate(store.getSlot(handles[i]), 0, 10, 0);
+        }
+        store.setModel(handles[3], createModel(2));
+        store.update();
+
+        boolean allRight = true;
+        for(int i = 0; i < handles.length; i++) {
+            int slot = store.getSlot(handles[i]);
+            float[] bounds = store.getBounds();
+            allRight &= Math.abs(bounds[slot * 4] - i) <= EPSILON
+                    && Math.abs(bounds[slot * 4 + 1] - (i % 7 == 0 ? 10 : 0)) <= EPSILON;
+        }
+        Check.isTrue("bounds of moved & unmoved entities after update", allRight);
+    }
+}
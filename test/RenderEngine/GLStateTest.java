@@ -0,0 +1,234 @@
+package RenderEngine;
+
+import Tools.Check;
+import org.lwjgl.LWJGLException;
+import org.lwjgl.opengl.*;
+
+/*
+    Drives GLState with verification on, so every call it makes or skips is read back with glGet & compared with
+    the cache; none of the sequences below may leave it out of sync. It needs a GL context but no window: a 1x1
+    pbuffer with the same core 3.2 context the game creates (see DisplayManager), so it runs wherever the game's
+    natives load, display or not.
+ */
+public class GLStateTest {
+
+    private static final String VERTEX_SHADER = "#version 150\nin vec3 position;\n"
+            + "void main(void) { gl_Position = vec4(position, 1.0); }\n";
+    private static final String FRAGMENT_SHADER = "#version 150\nout vec4 colour;\n"
+            + "void main(void) { colour = vec4(1.0); }\n";
+
+    public static void main(String[] args) {
+        Pbuffer pbuffer = createContext();
+        if(pbuffer == null) {
+            Check.isTrue("a GL context could be created", false);
+            Check.finish("GLStateTest");
+            return;
+        }
+
+        GLState.setVerify(true);
+        GLState.invalidate();
+
+        programs();
+        vertexArrays();
+        attributesWithoutVertexArray();
+        textures();
+        fixedState();
+        invalidation();
+        bypassIsCaught();
+
+        GLState.setVerify(false);
+        pbuffer.destroy();
+        Check.finish("GLStateTest");
+    }
+
+    private static Pbuffer createContext() {
+        try {
+            ContextAttribs attribs = new ContextAttribs(3, 2).withForwardCompatible(true).withProfileCore(true);
+            Pbuffer pbuffer = new Pbuffer(1, 1, new PixelFormat(), null, null, attribs);
+            pbuffer.makeCurrent();
+            return pbuffer;
+        } catch (LWJGLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void programs() {
+        int first = createProgram();
+        int second = createProgram();
+
+        GLState.useProgram(first);
+        expect("using the program in use again", 0, 1, () -> GLState.useProgram(first));
+        GLState.useProgram(second);
+
+        // Still in use after being deleted, until another program is
+        GLState.deleteProgram(second);
+        expect("using a program after the one in use was deleted", 1, 0, () -> GLState.useProgram(first));
+
+        GLState.useProgram(0);
+        GLState.deleteProgram(first);
+        expectInSync("programs");
+    }
+
+    private static void vertexArrays() {
+        int first = GL30.glGenVertexArrays();
+        int second = GL30.glGenVertexArrays();
+
+        GLState.bindVertexArray(first);
+        GLState.enableVertexAttribArray(0);
+        GLState.enableVertexAttribArray(1);
+        GLState.bindVertexArray(second);
+        expect("enabling an attribute another VAO has enabled", 1, 0, () -> GLState.enableVertexAttribArray(0));
+        GLState.disableVertexAttribArray(0);
+
+        // Each VAO keeps its own attribute arrays
+        GLState.bindVertexArray(first);
+        expect("enabling an attribute the VAO has enabled", 0, 1, () -> GLState.enableVertexAttribArray(0));
+        expect("binding the bound VAO again", 0, 1, () -> GLState.bindVertexArray(first));
+
+        // Deleting the bound VAO binds 0, & a new VAO that gets the same id starts with nothing enabled
+        GLState.bindVertexArray(second);
+        GLState.enableVertexAttribArray(2);
+        GLState.deleteVertexArray(second);
+        expect("binding 0 after the bound VAO was deleted", 0, 1, () -> GLState.bindVertexArray(0));
+        int reused = GL30.glGenVertexArrays();
+        GLState.bindVertexArray(reused);
+        expect("enabling an attribute of a new VAO", 1, 0, () -> GLState.enableVertexAttribArray(2));
+
+        GLState.bindVertexArray(0);
+        GLState.deleteVertexArray(first);
+        GLState.deleteVertexArray(reused);
+        expectInSync("vertex arrays");
+    }
+
+    // There are no attribute arrays without a VAO in a core profile; that's reported, not read back
+    private static void attributesWithoutVertexArray() {
+        GLState.bindVertexArray(0);
+        int mismatches = GLState.getMismatches();
+        GLState.enableVertexAttribArray(0);
+        Check.equals("mismatches after enabling an attribute with no VAO bound", mismatches, GLState.getMismatches());
+        while(GL11.glGetError() != GL11.GL_NO_ERROR) {
+            // The enable itself is an error, clear it so it isn't blamed on the next sequence
+        }
+    }
+
+    private static void textures() {
+        int first = GL11.glGenTextures();
+        int second = GL11.glGenTextures();
+        int array = GL11.glGenTextures();
+
+        GLState.bindTexture(0, GL11.GL_TEXTURE_2D, first);
+        GLState.bindTexture(1, GL30.GL_TEXTURE_2D_ARRAY, array);
+        GLState.bindTexture(1, GL11.GL_TEXTURE_2D, second);
+        expect("binding the bound texture again", 1, 1, () -> GLState.bindTexture(0, GL11.GL_TEXTURE_2D, first));
+        expect("binding the bound texture array again", 1, 1,
+                () -> GLState.bindTexture(1, GL30.GL_TEXTURE_2D_ARRAY, array));
+
+        // Deleting a texture unbinds it from every unit it's bound to (switching to unit 0 is the one call made)
+        GLState.bindTexture(2, GL11.GL_TEXTURE_2D, first);
+        GLState.deleteTexture(first);
+        expect("binding 0 where a deleted texture was", 0, 2, () -> GLState.bindTexture(2, GL11.GL_TEXTURE_2D, 0));
+        expect("binding 0 on another unit the deleted texture was on", 1, 1,
+                () -> GLState.bindTexture(0, GL11.GL_TEXTURE_2D, 0));
+
+        GLState.deleteTexture(second);
+        GLState.deleteTexture(array);
+        expectInSync("textures");
+    }
+
+    private static void fixedState() {
+        GLState.enable(GL11.GL_CULL_FACE);
+        expect("enabling an enabled capability", 0, 1, () -> GLState.enable(GL11.GL_CULL_FACE));
+        GLState.disable(GL11.GL_CULL_FACE);
+        GLState.enable(GL11.GL_DEPTH_TEST);
+
+        GLState.cullFace(GL11.GL_BACK);
+        GLState.cullFace(GL11.GL_FRONT);
+        expect("setting the culled face again", 0, 1, () -> GLState.cullFace(GL11.GL_FRONT));
+        GLState.depthMask(false);
+        GLState.depthMask(true);
+        GLState.depthRange(0.25f, 0.75f);
+        expect("setting the depth range again", 0, 1, () -> GLState.depthRange(0.25f, 0.75f));
+        GLState.viewport(0, 0, 1, 1);
+        expect("setting the viewport again", 0, 1, () -> GLState.viewport(0, 0, 1, 1));
+
+        GLState.cullFace(GL11.GL_BACK);
+        GLState.depthRange(0, 1);
+        expectInSync("capabilities, culling, depth & viewport");
+    }
+
+    // State changed behind the cache's back is fine once the cache has been told with invalidate()
+    private static void invalidation() {
+        int vao = GL30.glGenVertexArrays();
+        GLState.enable(GL11.GL_BLEND);
+        GLState.bindVertexArray(vao);
+
+        GL11.glDisable(GL11.GL_BLEND);
+        GL30.glBindVertexArray(0);
+        GLState.invalidate();
+
+        expect("enabling a capability after invalidate()", 1, 0, () -> GLState.enable(GL11.GL_BLEND));
+        expect("binding a VAO after invalidate()", 1, 0, () -> GLState.bindVertexArray(vao));
+        expect("enabling an attribute after invalidate()", 1, 0, () -> GLState.enableVertexAttribArray(0));
+
+        GLState.disable(GL11.GL_BLEND);
+        GLState.bindVertexArray(0);
+        GLState.deleteVertexArray(vao);
+        expectInSync("invalidation");
+    }
+
+    // Without invalidate() the cache is wrong, which is exactly what verification is there to catch
+    private static void bypassIsCaught() {
+        GLState.enable(GL11.GL_SCISSOR_TEST);
+        GL11.glDisable(GL11.GL_SCISSOR_TEST);
+
+        int mismatches = GLState.getMismatches();
+        GLState.enable(GL11.GL_SCISSOR_TEST); // Skipped, the cache thinks it's on
+        Check.equals("mismatches found after bypassing the cache", mismatches + 1, GLState.getMismatches());
+
+        // Verification corrected the cache, so this time the call goes through
+        expect("enabling a capability the cache was corrected for", 1, 0, () -> GLState.enable(GL11.GL_SCISSOR_TEST));
+        GLState.disable(GL11.GL_SCISSOR_TEST);
+    }
+
+    // Run a call & check how many GL calls it made & how many the cache skipped
+    private static void expect(String what, int made, int skipped, Runnable call) {
+        int callsBefore = GLState.getCalls();
+        int skippedBefore = GLState.getSkippedCalls();
+        call.run();
+        Check.equals(what + ", calls made", made, GLState.getCalls() - callsBefore);
+        Check.equals(what + ", calls skipped", skipped, GLState.getSkippedCalls() - skippedBefore);
+    }
+
+    private static void expectInSync(String sequence) {
+        Check.equals("cache mismatches after " + sequence, 0, GLState.getMismatches());
+        Check.equals("GL errors after " + sequence, GL11.GL_NO_ERROR, GL11.glGetError());
+    }
+
+    private static int createProgram() {
+        int program = GL20.glCreateProgram();
+        int vertexShader = compileShader(VERTEX_SHADER, GL20.GL_VERTEX_SHADER);
+        int fragmentShader = compileShader(FRAGMENT_SHADER, GL20.GL_FRAGMENT_SHADER);
+        GL20.glAttachShader(program, vertexShader);
+        GL20.glAttachShader(program, fragmentShader);
+        GL30.glBindFragDataLocation(program, 0, "colour");
+        GL20.glLinkProgram(program);
+        Check.isTrue("test program links", GL20.glGetProgrami(program, GL20.GL_LINK_STATUS) == GL11.GL_TRUE);
+
+        GL20.glDetachShader(program, vertexShader);
+        GL20.glDetachShader(program, fragmentShader);
+        GL20.glDeleteShader(vertexShader);
+        GL20.glDeleteShader(fragmentShader);
+        return program;
+    }
+
+    private static int compileShader(String source, int type) {
+        int shader = GL20.glCreateShader(type);
+        GL20.glShaderSource(shader, source);
+        GL20.glCompileShader(shader);
+        if(GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
+            System.err.println(GL20.glGetShaderInfoLog(shader, 500));
+        }
+        return shader;
+    }
+}
@@ -0,0 +1,107 @@
+package RenderEngine;
+
+import Models.MeshData;
+import Tools.Check;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+    The OBJ parser on small files written out here, parsed from memory so nothing touches the disk, the MeshCache or
+    OpenGL. Each case checks how many vertices (after welding) & indices come out; a face that can't be used has to
+    be dropped without taking the rest of the file with it.
+ */
+public class OBJLoaderTest {
+
+    private static final String TRIANGLE = "v 0 0 0\nv 1 0 0\nv 0 1 0\n";
+    private static final String SQUARE = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n";
+
+    public static void main(String[] args) {
+        triangle();
+        facesBeforeAttributes();
+        quads();
+        missingTextureIndex();
+        negativeIndices();
+        windowsLineEndings();
+        unreadableFaces();
+        outOfRangeIndices();
+        Check.finish("OBJLoaderTest");
+    }
+
+    private static void triangle() {
+        MeshData mesh = parse("triangle", TRIANGLE + "vt 0 0\nvt 1 0\nvt 0 1\nvn 0 0 1\nf 1/1/1 2/2/1 3/3/1\n");
+        expect("triangle", mesh, 3, 3);
+        Check.equals("triangle max x", 1, mesh.getBounds().getMaxX(), 1e-6f);
+        Check.equals("triangle max y", 1, mesh.getBounds().getMaxY(), 1e-6f);
+    }
+
+    // Faces are only resolved once the whole file has been read
+    private static void facesBeforeAttributes() {
+        expect("faces before attributes", parse("faces first", "f 1 2 3\n" + TRIANGLE), 3, 3);
+    }
+
+    // A polygon becomes a fan of triangles, which share the corners they have in common
+    private static void quads() {
+        expect("quad", parse("quad", SQUARE + "f 1 2 3 4\n"), 4, 6);
+        expect("pentagon", parse("pentagon", SQUARE + "v -1 0.5 0\nf 1 2 3 4 5\n"), 5, 9);
+    }
+
+    private static void missingTextureIndex() {
+        expect("v//vn", parse("v//vn", TRIANGLE + "vn 0 0 1\nf 1//1 2//1 3//1\n"), 3, 3);
+
+        // The same positions with different normals aren't welded together
+        expect("v//vn with two normals", parse("two normals",
+                TRIANGLE + "vn 0 0 1\nvn 0 0 -1\nf 1//1 2//1 3//1\nf 1//2 3//2 2//2\n"), 6, 6);
+    }
+
+    // Negative indices count back from the last element read before the face
+    private static void negativeIndices() {
+        expect("negative indices", parse("negative", TRIANGLE + "f -3 -2 -1\n"), 3, 3);
+        expect("negative indices between blocks", parse("negative blocks",
+                TRIANGLE + "f -3 -2 -1\nv 5 5 5\nv 6 5 5\nv 5 6 5\nf -3 -2 -1\n"), 6, 6);
+        expect("negative index before the first vertex", parse("negative past start",
+                TRIANGLE + "f -4 -2 -1\nf -3 -2 -1\n"), 3, 3);
+    }
+
+    private static void windowsLineEndings() {
+        MeshData mesh = parse("crlf", "v 0 0 0\r\nv 1 0 0\r\nv 0 1 0\r\nvn 0 0 1\r\nf 1//1 2//1 3//1\r\n");
+        expect("CRLF", mesh, 3, 3);
+        Check.equals("CRLF max x", 1, mesh.getBounds().getMaxX(), 1e-6f);
+    }
+
+    private static void unreadableFaces() {
+        expect("unreadable faces", parse("unreadable", SQUARE + "f 1 2 x\nf 1 2/y 3\nf 1 2 3 4\n"), 4, 6);
+    }
+
+    private static void outOfRangeIndices() {
+        expect("vertex index 0", parse("zero", TRIANGLE + "f 0 1 2\nf 1 2 3\n"), 3, 3);
+        expect("vertex index past the end", parse("past end", TRIANGLE + "f 1 2 4\nf 1 2 3\n"), 3, 3);
+        expect("texture index 0", parse("zero texture", TRIANGLE + "vt 0 0\nf 1/0 2/1 3/1\nf 1/1 2/1 3/1\n"), 3, 3);
+        expect("normal index past the end", parse("past end normal",
+                TRIANGLE + "vn 0 0 1\nf 1//2 2//1 3//1\nf 1//1 2//1 3//1\n"), 3, 3);
+
+        // A bad corner in one triangle of a quad drops the whole quad
+        expect("quad with a bad corner", parse("bad quad", SQUARE + "f 1 2 3 9\nf 1 2 3\n"), 3, 3);
+        expect("nothing usable", parse("nothing", TRIANGLE + "f 4 5 6\n"), 0, 0);
+    }
+
+    private static MeshData parse(String name, String contents) {
+        ByteBuffer data = ByteBuffer.wrap(contents.getBytes(StandardCharsets.US_ASCII));
+        try {
+            return OBJLoader.parseObjModel(name, data);
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+            Check.isTrue(name + " parses without throwing", false);
+            return null;
+        }
+    }
+
+    private static void expect(String what, MeshData mesh, int vertices, int indices) {
+        if(mesh == null) {
+            return;
+        }
+        Check.equals(what + " vertices", vertices, mesh.getVertexCount());
+        Check.equals(what + " indices", indices, mesh.getIndexCount());
+    }
+}
@@ -0,0 +1,100 @@
+package RenderEngine;
+
+import Tools.Check;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+    RenderKeys is plain CPU code, so it runs headless. The radix sort has to order keys as unsigned numbers (the
+    pass is in the top bits, so an alpha tested key is negative as a long) & keep draws with equal keys in the order
+    they were added.
+ */
+public class RenderKeysTest {
+
+    public static void main(String[] args) {
+        passesInOrder();
+        unsigned();
+        stable();
+        randomKeys();
+        Check.finish("RenderKeysTest");
+    }
+
+    // Every opaque draw comes before every alpha tested one, whatever else is in their keys
+    private static void passesInOrder() {
+        RenderKeys keys = new RenderKeys();
+        keys.add(RenderKeys.encode(RenderKeys.PASS_ALPHA_TESTED, 0, 0, 0, 0), 0);
+        keys.add(RenderKeys.encode(RenderKeys.PASS_OPAQUE, 63, (1 << 21) - 1, (1 << 20) - 1, RenderKeys.MAX_DEPTH), 1);
+        keys.add(RenderKeys.encode(RenderKeys.PASS_ALPHA_TESTED, 1, 2, 3, 4), 2);
+        keys.add(RenderKeys.encode(RenderKeys.PASS_OPAQUE, 0, 0, 0, 0), 3);
+        keys.sort();
+
+        Check.isTrue("alpha tested key has bit 62 set",
+                (RenderKeys.encode(RenderKeys.PASS_ALPHA_TESTED, 0, 0, 0, 0) & (1L << 62)) != 0);
+        Check.equals("first draw", 3, keys.getDraw(0));
+        Check.equals("second draw", 1, keys.getDraw(1));
+        Check.equals("third draw", 0, keys.getDraw(2));
+        Check.equals("fourth draw", 2, keys.getDraw(3));
+    }
+
+    // Keys with the top bit set are the largest, not negative
+    private static void unsigned() {
+        RenderKeys keys = new RenderKeys();
+        keys.add(-1L, 0);
+        keys.add(Long.MIN_VALUE, 1);
+        keys.add(Long.MAX_VALUE, 2);
+        keys.add(0, 3);
+        keys.sort();
+
+        Check.equals("smallest unsigned key", 0, keys.getKey(0));
+        Check.equals("then the largest signed one", Long.MAX_VALUE, keys.getKey(1));
+        Check.equals("then the top bit alone", Long.MIN_VALUE, keys.getKey(2));
+        Check.equals("largest unsigned key", -1L, keys.getKey(3));
+    }
+
+    private static void stable() {
+        RenderKeys keys = new RenderKeys();
+        long low = RenderKeys.encode(RenderKeys.PASS_OPAQUE, 1, 5, 5, 100);
+        long high = RenderKeys.encode(RenderKeys.PASS_ALPHA_TESTED, 1, 5, 5, 100);
+        for(int draw = 0; draw < 1000; draw++) {
+            keys.add(draw % 2 == 0 ? high : low, draw); // More than the initial capacity, so the arrays grow too
+        }
+        keys.sort();
+
+        boolean inOrder = true;
+        for(int i = 1; i < keys.size(); i++) {
+            if(keys.getKey(i) == keys.getKey(i - 1)) {
+                inOrder &= keys.getDraw(i) > keys.getDraw(i - 1);
+            }
+        }
+        Check.isTrue("equal keys keep the order they were added in", inOrder);
+        Check.equals("low keys first", low, keys.getKey(0));
+        Check.equals("high keys last", high, keys.getKey(keys.size() - 1));
+    }
+
+    // Random keys come out in the same order as a plain unsigned sort of them
+    private static void randomKeys() {
+        Random random = new Random(1);
+        RenderKeys keys = new RenderKeys();
+        long[] expected = new long[5000];
+        for(int i = 0; i < expected.length; i++) {
+            expected[i] = random.nextLong();
+            keys.add(expected[i], i);
+        }
+        keys.sort();
+
+        // Flip the top bit, then a signed sort is an unsigned one
+        for(int i = 0; i < expected.length; i++) {
+            expected[i] ^= Long.MIN_VALUE;
+        }
+        Arrays.sort(expected);
+
+        int mismatches = 0;
+        for(int i = 0; i < expected.length; i++) {
+            if((expected[i] ^ Long.MIN_VALUE) != keys.getKey(i)) {
+                mismatches++;
+            }
+        }
+        Check.equals("keys out of unsigned order", 0, mismatches);
+    }
+}
@@ -0,0 +1,35 @@
+package Tools;
+
+/*
+    What the tests under test/ report through. There's no test framework among the project's jars, so each test is a
+    plain main: it runs its cases through these checks, which count & print the failures, then calls finish(), which
+    exits with a non zero status if anything failed (so a script or the IDE can tell).
+ */
+public class Check {
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void isTrue(String what, boolean condition) {
+        checks++;
+        if(!condition) {
+            failures++;
+            System.err.println("FAILED: " + what);
+        }
+    }
+
+    public static void equals(String what, float expected, float actual, float tolerance) {
+        isTrue(what + " (expected " + expected + ", got " + actual + ")", Math.abs(expected - actual) <= tolerance);
+    }
+
+    public static void equals(String what, long expected, long actual) {
+        isTrue(what + " (expected " + expected + ", got " + actual + ")", expected == actual);
+    }
+
+    public static void finish(String test) {
+        System.out.println(test + ": " + (checks - failures) + "/" + checks + " checks passed");
+        if(failures > 0) {
+            System.exit(1);
+        }
+    }
+}
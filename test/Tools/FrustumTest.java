@@ -0,0 +1,134 @@
+package Tools;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+/*
+    Frustum needs no GL context, so all of this runs headless. The camera has a 90 degree field of view & a square
+    aspect, so its side planes are at 45 degrees, and its near & far planes are at 1 & 100: every plane can be
+    written down by hand and compared with what's extracted from the projection x view matrix.
+ */
+public class FrustumTest {
+
+    private static final float NEAR_PLANE = 1, FAR_PLANE = 100;
+    private static final float EPSILON = 1e-4f;
+    private static final float DIAGONAL = (float) (1 / Math.sqrt(2));
+
+    public static void main(String[] args) {
+        planesAtOrigin();
+        planesOfMovedCamera();
+        planesOfTurnedCamera();
+        spheres();
+        boxes();
+        Check.finish("FrustumTest");
+    }
+
+    // Built the same way as MainRenderer's, with a 90 degree field of view
+    private static Matrix4f createProjectionMatrix() {
+        float frustumLength = FAR_PLANE - NEAR_PLANE;
+        Matrix4f projection = new Matrix4f();
+        projection.m00 = 1;
+        projection.m11 = 1;
+        projection.m22 = -((FAR_PLANE + NEAR_PLANE) / frustumLength);
+        projection.m23 = -1;
+        projection.m32 = -((2 * NEAR_PLANE * FAR_PLANE) / frustumLength);
+        projection.m33 = 0;
+        return projection;
+    }
+
+    private static Frustum createFrustum(Matrix4f view) {
+        Frustum frustum = new Frustum();
+        frustum.update(createProjectionMatrix(), view);
+        return frustum;
+    }
+
+    private static void checkPlane(String name, Frustum frustum, int plane, float a, float b, float c, float d) {
+        float[] actual = frustum.getPlane(plane);
+        Check.equals(name + " a", a, actual[0], EPSILON);
+        Check.equals(name + " b", b, actual[1], EPSILON);
+        Check.equals(name + " c", c, actual[2], EPSILON);
+        Check.equals(name + " d", d, actual[3], EPSILON * FAR_PLANE);
+    }
+
+    // Camera at the origin looking down -z: x >= z, -x >= z, y >= z, -y >= z, z <= -1 & z >= -100
+    private static void planesAtOrigin() {
+        Frustum frustum = createFrustum(new Matrix4f());
+        checkPlane("origin left", frustum, Frustum.LEFT, DIAGONAL, 0, -DIAGONAL, 0);
+        checkPlane("origin right", frustum, Frustum.RIGHT, -DIAGONAL, 0, -DIAGONAL, 0);
+        checkPlane("origin bottom", frustum, Frustum.BOTTOM, 0, DIAGONAL, -DIAGONAL, 0);
+        checkPlane("origin top", frustum, Frustum.TOP, 0, -DIAGONAL, -DIAGONAL, 0);
+        checkPlane("origin near", frustum, Frustum.NEAR, 0, 0, -1, -NEAR_PLANE);
+        checkPlane("origin far", frustum, Frustum.FAR, 0, 0, 1, FAR_PLANE);
+    }
+
+    // Camera at (0, 0, 10): the view matrix moves the world by -10 along z, so every plane moves back with it
+    private static void planesOfMovedCamera() {
+        Matrix4f view = new Matrix4f();
+        view.translate(new Vector3f(0, 0, -10));
+        Frustum frustum = createFrustum(view);
+        checkPlane("moved left", frustum, Frustum.LEFT, DIAGONAL, 0, -DIAGONAL, 10 * DIAGONAL);
+        checkPlane("moved right", frustum, Frustum.RIGHT, -DIAGONAL, 0, -DIAGONAL, 10 * DIAGONAL);
+        checkPlane("moved near", frustum, Frustum.NEAR, 0, 0, -1, 10 - NEAR_PLANE);
+        checkPlane("moved far", frustum, Frustum.FAR, 0, 0, 1, FAR_PLANE - 10);
+    }
+
+    /*
+        View turned 90 degrees about y, as MatrixMath.createViewMatrix does with the camera's yaw: a world point (x, y, z)
+        ends up at (z, y, -x) in view space, so the camera looks down +x & its near plane is x >= 1
+     */
+    private static void planesOfTurnedCamera() {
+        Matrix4f view = new Matrix4f();
+        view.rotate((float) Math.toRadians(90), new Vector3f(0, 1, 0));
+        Frustum frustum = createFrustum(view);
+        checkPlane("turned near", frustum, Frustum.NEAR, 1, 0, 0, -NEAR_PLANE);
+        checkPlane("turned far", frustum, Frustum.FAR, -1, 0, 0, FAR_PLANE);
+        checkPlane("turned left", frustum, Frustum.LEFT, DIAGONAL, 0, DIAGONAL, 0);
+        checkPlane("turned right", frustum, Frustum.RIGHT, DIAGONAL, 0, -DIAGONAL, 0);
+
+        Check.isTrue("turned: sphere ahead visible", frustum.isSphereVisible(50, 0, 0, 1));
+        Check.isTrue("turned: sphere down -z culled", !frustum.isSphereVisible(0, 0, -50, 1));
+    }
+
+    private static void spheres() {
+        Frustum frustum = createFrustum(new Matrix4f());
+
+        // Inside
+        Check.isTrue("sphere inside", frustum.isSphereVisible(0, 0, -50, 1));
+        Check.isTrue("sphere bigger than the frustum", frustum.isSphereVisible(0, 0, 0, 1000));
+
+        // Outside
+        Check.isTrue("sphere behind the camera", !frustum.isSphereVisible(0, 0, 10, 1));
+        Check.isTrue("sphere past the far plane", !frustum.isSphereVisible(0, 0, -102, 1));
+        Check.isTrue("sphere left of the frustum", !frustum.isSphereVisible(-60, 0, -50, 1)); // 7 outside
+        Check.isTrue("sphere above the frustum", !frustum.isSphereVisible(0, 60, -50, 1));
+
+        // Straddling a plane, partly inside
+        Check.isTrue("sphere across the near plane", frustum.isSphereVisible(0, 0, -0.8f, 0.5f));
+        Check.isTrue("sphere across the far plane", frustum.isSphereVisible(0, 0, -100.5f, 1));
+        Check.isTrue("sphere across the left plane", frustum.isSphereVisible(-50.5f, 0, -50, 1)); // 0.35 outside
+        Check.isTrue("sphere across the right plane", frustum.isSphereVisible(50.5f, 0, -50, 1));
+    }
+
+    private static void boxes() {
+        Frustum frustum = createFrustum(new Matrix4f());
+
+        // Inside
+        Check.isTrue("box inside", frustum.isBoxVisible(-1, -1, -51, 1, 1, -49));
+        Check.isTrue("box around the frustum", frustum.isBoxVisible(-500, -500, -500, 500, 500, 500));
+
+        // Outside
+        Check.isTrue("box behind the camera", !frustum.isBoxVisible(-1, -1, 5, 1, 1, 7));
+        Check.isTrue("box past the far plane", !frustum.isBoxVisible(-1, -1, -110, 1, 1, -101));
+        Check.isTrue("box right of the frustum", !frustum.isBoxVisible(60, -1, -51, 62, 1, -49));
+        Check.isTrue("box below the frustum", !frustum.isBoxVisible(-1, -62, -51, 1, -60, -49));
+
+        // Straddling a plane, partly inside
+        Check.isTrue("box across the near plane", frustum.isBoxVisible(-0.1f, -0.1f, -2, 0.1f, 0.1f, 0));
+        Check.isTrue("box across the far plane", frustum.isBoxVisible(-1, -1, -105, 1, 1, -95));
+        Check.isTrue("box across the left plane", frustum.isBoxVisible(-55, -1, -51, -45, 1, -49));
+        Check.isTrue("box across a corner", frustum.isBoxVisible(45, 45, -51, 55, 55, -49));
+
+        // Out past a corner: each plane alone sees part of the box, so it's kept (a safe false positive)
+        Check.isTrue("box off a corner is kept", frustum.isBoxVisible(48, 48, -51, 60, 60, -49));
+    }
+}
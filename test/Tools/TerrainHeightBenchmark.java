@@ -0,0 +1,130 @@
+package Tools;
+
+import Terrains.HeightField;
+import Terrains.Terrain;
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/*
+    Micro benchmark of terrain height queries, comparing:
+        legacy  the old lookup, into a float[][] with three Vector3f & a Vector2f per call for MatrixMath.barryCentric
+        scalar  HeightField.getHeight, one point per call
+        batch   HeightField.getHeights, all points in one call
+
+    Each variant is warmed up before it's timed, so the JIT has compiled it, and the best of several rounds is kept.
+    Allocation per query is read from the JVM's per thread allocation counter. Run from the project root:
+
+    Usage: TerrainHeightBenchmark [height map] [points]   (defaults to heightmap & 1000000)
+ */
+public class TerrainHeightBenchmark {
+
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 10;
+
+    private static float sink; // Keeps the JIT from throwing the lookups away
+
+    public static void main(String[] args) {
+        String heightMap = args.length > 0 ? args[0] : "heightmap";
+        int points = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        HeightField field = Terrain.generateTerrainData(heightMap).getHeights();
+        int vertexCount = field.getVertexCount();
+
+        // The old layout, heights[x][z]
+        float[][] legacyHeights = new float[vertexCount][vertexCount];
+        for(int x = 0; x < vertexCount; x++) {
+            for(int z = 0; z < vertexCount; z++) {
+                legacyHeights[x][z] = field.getSample(x, z);
+            }
+        }
+
+        Random random = new Random(42);
+        float[] xs = new float[points], zs = new float[points], out = new float[points];
+        for(int i = 0; i < points; i++) {
+            xs[i] = random.nextFloat() * Terrain.SIZE;
+            zs[i] = random.nextFloat() * Terrain.SIZE;
+        }
+
+        // Same results, up to rounding; except that right on a grid line the legacy floor() & % can disagree about
+        // which grid square the point is in, and it then interpolates a square next to the right one
+        int differentPoints = 0;
+        for(int i = 0; i < points; i++) {
+            if(Math.abs(legacyHeight(legacyHeights, xs[i], zs[i]) - field.getHeight(xs[i], zs[i])) > 1e-3f) {
+                differentPoints++;
+            }
+        }
+        System.out.println(String.format("%d^2 height map, %d points, %d differ from legacy by more than 0.001",
+                vertexCount, points, differentPoints));
+
+        run("legacy", points, () -> {
+            float sum = 0;
+            for(int i = 0; i < xs.length; i++) {
+                sum += legacyHeight(legacyHeights, xs[i], zs[i]);
+            }
+            sink += sum;
+        });
+        run("scalar", points, () -> {
+            float sum = 0;
+            for(int i = 0; i < xs.length; i++) {
+                sum += field.getHeight(xs[i], zs[i]);
+            }
+            sink += sum;
+        });
+        run("batch", points, () -> {
+            field.getHeights(xs, zs, 0, 0, out);
+            sink += out[out.length - 1];
+        });
+
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void run(String name, int points, Runnable round) {
+        for(int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        long allocatedBefore = allocatedBytes();
+        for(int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.println(String.format("%-7s %7.2f ns/query  %6.2f bytes/query", name, (double) best / points,
+                (double) allocated / ((long) points * ROUNDS)));
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0; // Not a HotSpot JVM, allocation isn't reported
+    }
+
+    // Terrain.getHeightOfTerrain as it used to be
+    private static float legacyHeight(float[][] heights, float terrainX, float terrainZ) {
+        float gridSquareSize = Terrain.SIZE / ((float) heights.length - 1);
+        int gridX = (int) Math.floor(terrainX / gridSquareSize);
+        int gridZ = (int) Math.floor(terrainZ / gridSquareSize);
+        if(gridX < 0 || gridX >= heights.length - 1 || gridZ < 0 || gridZ >= heights.length - 1) {
+            return 0;
+        }
+
+        float xCoordinate = (terrainX % gridSquareSize) / gridSquareSize;
+        float zCoordinate = (terrainZ % gridSquareSize) / gridSquareSize;
+        if (xCoordinate <= (1 - zCoordinate)) {
+            return MatrixMath.barryCentric(new Vector3f(0, heights[gridX][gridZ], 0), new Vector3f(1,
+                    heights[gridX + 1][gridZ], 0), new Vector3f(0,
+                    heights[gridX][gridZ + 1], 1), new Vector2f(xCoordinate, zCoordinate));
+        }
+        return MatrixMath.barryCentric(new Vector3f(1, heights[gridX + 1][gridZ], 0), new Vector3f(1,
+                heights[gridX + 1][gridZ + 1], 1), new Vector3f(0,
+                heights[gridX][gridZ + 1], 1), new Vector2f(xCoordinate, zCoordinate));
+    }
+}
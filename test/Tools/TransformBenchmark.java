@@ -0,0 +1,131 @@
+package Tools;
+
+import Entities.TransformStore;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/*
+    Micro benchmark of entity world matrices, comparing:
+        legacy  MatrixMath.createTransformationMatrix, a new Matrix4f & Vector3fs per entity
+        scalar  MatrixMath.computeTransformationMatrix, one entity per call into a float array
+        batch   MatrixMath.computeWorldMatrices, all entities in one call
+        sparse  TransformStore.updateWorldMatrices with a random quarter of the entities moved, in runs of any length
+                (timed per moved entity, including marking them)
+
+    Each variant is warmed up before it's timed, so the JIT has compiled it, and the best of several rounds is kept.
+    Allocation per matrix is read from the JVM's per thread allocation counter. Run from the project root:
+
+    Usage: TransformBenchmark [entities]   (defaults to 100000)
+ */
+public class TransformBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    private static float sink; // Keeps the JIT from throwing the matrices away
+
+    public static void main(String[] args) {
+        int entities = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Random random = new Random(42);
+        float[] positions = new float[entities * 3], rotations = new float[entities * 3];
+        float[] scales = new float[entities], out = new float[entities * 16];
+        for(int i = 0; i < entities; i++) {
+            for(int axis = 0; axis < 3; axis++) {
+                positions[i * 3 + axis] = (random.nextFloat() - 0.5f) * 2000;
+                rotations[i * 3 + axis] = (random.nextFloat() - 0.5f) * 720;
+            }
+            scales[i] = 0.5f + random.nextFloat() * 2;
+        }
+
+        // Same matrices, up to the float rounding of the sines & cosines
+        MatrixMath.computeWorldMatrices(positions, rotations, scales, out, entities);
+        float maxDifference = 0;
+        float[] legacy = new float[16];
+        for(int i = 0; i < entities; i++) {
+            Matrix4f matrix = MatrixMath.createTransformationMatrix(new Vector3f(positions[i * 3],
+                    positions[i * 3 + 1], positions[i * 3 + 2]), rotations[i * 3], rotations[i * 3 + 1],
+                    rotations[i * 3 + 2], scales[i]);
+            matrix.store(FloatBuffer.wrap(legacy));
+            for(int j = 0; j < 16; j++) {
+                // Relative to the scale for the rotation part, so it doesn't depend on how big the entity is
+                float magnitude = j < 12 ? scales[i] : Math.max(1, Math.abs(legacy[j]));
+                maxDifference = Math.max(maxDifference, Math.abs(legacy[j] - out[i * 16 + j]) / magnitude);
+            }
+        }
+        System.out.println(String.format("%d entities, batch differs from legacy by at most %.2e", entities,
+                maxDifference));
+
+        run("legacy", entities, () -> {
+            float sum = 0;
+            Vector3f position = new Vector3f();
+            for(int i = 0; i < entities; i++) {
+                position.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+                Matrix4f matrix = MatrixMath.createTransformationMatrix(position, rotations[i * 3],
+                        rotations[i * 3 + 1], rotations[i * 3 + 2], scales[i]);
+                sum += matrix.m00;
+            }
+            sink += sum;
+        });
+        run("scalar", entities, () -> {
+            for(int i = 0; i < entities; i++) {
+                MatrixMath.computeTransformationMatrix(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2],
+                        rotations[i * 3], rotations[i * 3 + 1], rotations[i * 3 + 2], scales[i], out, i * 16);
+            }
+            sink += out[out.length - 16];
+        });
+        run("batch", entities, () -> {
+            MatrixMath.computeWorldMatrices(positions, rotations, scales, out, entities);
+            sink += out[out.length - 16];
+        });
+
+        TransformStore store = new TransformStore();
+        for(int i = 0; i < entities; i++) {
+            store.allocate(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], rotations[i * 3],
+                    rotations[i * 3 + 1], rotations[i * 3 + 2], scales[i]);
+        }
+        int[] moved = new int[entities / 4];
+        for(int i = 0; i < moved.length; i++) {
+            moved[i] = random.nextInt(entities);
+        }
+        run("sparse", moved.length, () -> {
+            for(int slot : moved) {
+                store.rotate(slot, 0, 1, 0);
+            }
+            store.updateWorldMatrices();
+            sink += store.getWorldMatrices()[moved[0] * 16];
+        });
+
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void run(String name, int entities, Runnable round) {
+        for(int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        long allocatedBefore = allocatedBytes();
+        for(int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.println(String.format("%-7s %7.2f ns/matrix  %6.2f bytes/matrix", name, (double) best / entities,
+                (double) allocated / ((long) entities * ROUNDS)));
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0; // Not a HotSpot JVM, allocation isn't reported
+    }
+}